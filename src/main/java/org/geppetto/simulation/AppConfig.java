@@ -8,6 +8,26 @@ public class AppConfig
 	private int _maxBufferSize;
 	private int _updateCycle;
 	private int _simulationCapacity;
+	private int _queueMemoryCapacity;
+	private int _experimentsPerProjectCapacity;
+	private long _cancellationGracePeriod;
+	private int _simulatorThreads;
+	private int _aspectInitParallelism;
+	private long _conversionCacheMemory;
+	private String _conversionCacheFolder;
+	private long _conversionCacheDiskSpace;
+	private long _runtimeProjectsMemoryBudget;
+	private long _runtimeProjectsTimeToLive;
+	private int _resultsUploadThreads;
+	private long _checkpointInterval;
+	private long _experimentTimeout;
+	private long _simulatorTimeout;
+	private long _simulatorStallTimeout;
+	private int _simulatorWorkers;
+	private String _simulatorWorkerHeap;
+	private String _simulatorWorkerClasspath;
+	private int _typeImportParallelism;
+	private String _stateFolder;
 
 	public int getSimulationCapacity()
 	{
@@ -19,6 +39,206 @@ public class AppConfig
 		this._simulationCapacity = simulationCapacity;
 	}
 
+	public int getExperimentsPerProjectCapacity()
+	{
+		return _experimentsPerProjectCapacity;
+	}
+
+	public void setExperimentsPerProjectCapacity(int experimentsPerProjectCapacity)
+	{
+		this._experimentsPerProjectCapacity = experimentsPerProjectCapacity;
+	}
+
+	public int getSimulatorThreads()
+	{
+		return _simulatorThreads;
+	}
+
+	public void setSimulatorThreads(int simulatorThreads)
+	{
+		this._simulatorThreads = simulatorThreads;
+	}
+
+	public long getConversionCacheMemory()
+	{
+		return _conversionCacheMemory;
+	}
+
+	public void setConversionCacheMemory(long conversionCacheMemory)
+	{
+		this._conversionCacheMemory = conversionCacheMemory;
+	}
+
+	public String getConversionCacheFolder()
+	{
+		return _conversionCacheFolder;
+	}
+
+	public void setConversionCacheFolder(String conversionCacheFolder)
+	{
+		this._conversionCacheFolder = conversionCacheFolder;
+	}
+
+	public long getConversionCacheDiskSpace()
+	{
+		return _conversionCacheDiskSpace;
+	}
+
+	public void setConversionCacheDiskSpace(long conversionCacheDiskSpace)
+	{
+		this._conversionCacheDiskSpace = conversionCacheDiskSpace;
+	}
+
+	public int getAspectInitParallelism()
+	{
+		return _aspectInitParallelism;
+	}
+
+	public void setAspectInitParallelism(int aspectInitParallelism)
+	{
+		this._aspectInitParallelism = aspectInitParallelism;
+	}
+
+	public long getCancellationGracePeriod()
+	{
+		return _cancellationGracePeriod;
+	}
+
+	public void setCancellationGracePeriod(long cancellationGracePeriod)
+	{
+		this._cancellationGracePeriod = cancellationGracePeriod;
+	}
+
+	public long getRuntimeProjectsMemoryBudget()
+	{
+		return _runtimeProjectsMemoryBudget;
+	}
+
+	public void setRuntimeProjectsMemoryBudget(long runtimeProjectsMemoryBudget)
+	{
+		this._runtimeProjectsMemoryBudget = runtimeProjectsMemoryBudget;
+	}
+
+	public long getRuntimeProjectsTimeToLive()
+	{
+		return _runtimeProjectsTimeToLive;
+	}
+
+	public void setRuntimeProjectsTimeToLive(long runtimeProjectsTimeToLive)
+	{
+		this._runtimeProjectsTimeToLive = runtimeProjectsTimeToLive;
+	}
+
+	public int getResultsUploadThreads()
+	{
+		return _resultsUploadThreads;
+	}
+
+	public void setResultsUploadThreads(int resultsUploadThreads)
+	{
+		this._resultsUploadThreads = resultsUploadThreads;
+	}
+
+	public long getCheckpointInterval()
+	{
+		return _checkpointInterval;
+	}
+
+	public void setCheckpointInterval(long checkpointInterval)
+	{
+		this._checkpointInterval = checkpointInterval;
+	}
+
+	public long getExperimentTimeout()
+	{
+		return _experimentTimeout;
+	}
+
+	public void setExperimentTimeout(long experimentTimeout)
+	{
+		this._experimentTimeout = experimentTimeout;
+	}
+
+	public long getSimulatorTimeout()
+	{
+		return _simulatorTimeout;
+	}
+
+	public void setSimulatorTimeout(long simulatorTimeout)
+	{
+		this._simulatorTimeout = simulatorTimeout;
+	}
+
+	public long getSimulatorStallTimeout()
+	{
+		return _simulatorStallTimeout;
+	}
+
+	public void setSimulatorStallTimeout(long simulatorStallTimeout)
+	{
+		this._simulatorStallTimeout = simulatorStallTimeout;
+	}
+
+	public int getSimulatorWorkers()
+	{
+		return _simulatorWorkers;
+	}
+
+	public void setSimulatorWorkers(int simulatorWorkers)
+	{
+		this._simulatorWorkers = simulatorWorkers;
+	}
+
+	public String getSimulatorWorkerHeap()
+	{
+		return _simulatorWorkerHeap;
+	}
+
+	public void setSimulatorWorkerHeap(String simulatorWorkerHeap)
+	{
+		this._simulatorWorkerHeap = simulatorWorkerHeap;
+	}
+
+	public String getSimulatorWorkerClasspath()
+	{
+		return _simulatorWorkerClasspath;
+	}
+
+	public void setSimulatorWorkerClasspath(String simulatorWorkerClasspath)
+	{
+		this._simulatorWorkerClasspath = simulatorWorkerClasspath;
+	}
+
+	public int getTypeImportParallelism()
+	{
+		return _typeImportParallelism;
+	}
+
+	public void setTypeImportParallelism(int typeImportParallelism)
+	{
+		this._typeImportParallelism = typeImportParallelism;
+	}
+
+	public String getStateFolder()
+	{
+		return _stateFolder;
+	}
+
+	public void setStateFolder(String stateFolder)
+	{
+		this._stateFolder = stateFolder;
+	}
+
+	public int getQueueMemoryCapacity()
+	{
+		return _queueMemoryCapacity;
+	}
+
+	public void setQueueMemoryCapacity(int queueMemoryCapacity)
+	{
+		this._queueMemoryCapacity = queueMemoryCapacity;
+	}
+
 	public int getMaxBufferSize()
 	{
 		return _maxBufferSize;
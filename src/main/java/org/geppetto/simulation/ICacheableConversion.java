@@ -0,0 +1,20 @@
+package org.geppetto.simulation;
+
+/**
+ * Implemented by the conversion services whose converted models can be kept in the conversion cache and reused by other experiments. The
+ * conversions of the services which do not implement it are always performed.
+ * <p>
+ * IConversion in core knows nothing of the cache, the opt-in is here in the simulation bundle. A conversion service has to import
+ * org.geppetto.simulation to be cached, the ones written against core only are converted again for every run.
+ * 
+ */
+public interface ICacheableConversion
+{
+
+	/**
+	 * @return true if the models this service produces depend only on the input model and on the aspect configuration, e.g. they do not point to
+	 *         files in the temporary folder of the experiment they were converted for
+	 */
+	boolean supportsCaching();
+
+}
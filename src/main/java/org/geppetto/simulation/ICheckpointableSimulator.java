@@ -0,0 +1,41 @@
+package org.geppetto.simulation;
+
+import java.io.File;
+
+import org.geppetto.core.common.GeppettoExecutionException;
+
+/**
+ * Implemented by the simulators which can save their progress and continue from it, e.g. after the server was restarted in the middle of a long
+ * run. The checkpoints are written while the simulator is running, the simulator is responsible for capturing a consistent state.
+ * <p>
+ * This interface lives in the simulation bundle rather than next to ISimulator in core, so only the simulators built against this bundle can
+ * implement it, the ones depending on core alone are never checkpointed and always start over.
+ * 
+ */
+public interface ICheckpointableSimulator
+{
+
+	/**
+	 * @return true if this simulator, as initialized, can write and resume from checkpoints
+	 */
+	boolean supportsCheckpoints();
+
+	/**
+	 * Writes the state of the simulation and the results written so far
+	 * 
+	 * @param folder
+	 *            an empty folder
+	 * @throws GeppettoExecutionException
+	 */
+	void checkpoint(File folder) throws GeppettoExecutionException;
+
+	/**
+	 * Called after the simulator was initialized, the simulation then continues from the checkpoint
+	 * 
+	 * @param folder
+	 *            a folder previously written by checkpoint
+	 * @throws GeppettoExecutionException
+	 */
+	void resume(File folder) throws GeppettoExecutionException;
+
+}
@@ -0,0 +1,21 @@
+package org.geppetto.simulation;
+
+/**
+ * Implemented by the model interpreters whose types can be imported while the other libraries of the same model are imported on other threads.
+ * An interpreter which supports it only reads the common library through the GeppettoModelAccess it is given and only adds to the library it
+ * imports into, it never changes the rest of the model. The libraries of the other interpreters are imported one at a time on the thread opening
+ * the project.
+ * <p>
+ * IModelInterpreter in core says nothing about threads, so the promise is made here, an interpreter has to import org.geppetto.simulation to
+ * have its libraries imported concurrently.
+ * 
+ */
+public interface IConcurrentTypeImport
+{
+
+	/**
+	 * @return true if importType can run concurrently with the imports of the other libraries of the model
+	 */
+	boolean supportsConcurrentImport();
+
+}
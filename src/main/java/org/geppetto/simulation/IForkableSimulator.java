@@ -0,0 +1,35 @@
+package org.geppetto.simulation;
+
+import java.io.Serializable;
+
+import org.geppetto.core.common.GeppettoExecutionException;
+import org.geppetto.simulation.worker.ISimulationJob;
+
+/**
+ * Implemented by the simulators whose simulation can run in a separate worker process. When the worker pool is enabled the run executes the job in
+ * a worker instead of calling simulate, the simulator then completes the run with the result, e.g. notifying the end of the steps with the results
+ * the job wrote.
+ * <p>
+ * The interface belongs to this bundle and not to core, so a simulator built against core alone is always executed in the server JVM. The job runs
+ * outside OSGi, its classes and what it returns have to be on the classpath of the workers.
+ * 
+ */
+public interface IForkableSimulator
+{
+
+	/**
+	 * @return the simulation to execute in a worker, what simulate would do
+	 * @throws GeppettoExecutionException
+	 */
+	ISimulationJob createJob() throws GeppettoExecutionException;
+
+	/**
+	 * Called in the server once the job is over
+	 * 
+	 * @param result
+	 *            what the job returned
+	 * @throws GeppettoExecutionException
+	 */
+	void jobCompleted(Serializable result) throws GeppettoExecutionException;
+
+}
@@ -0,0 +1,35 @@
+package org.geppetto.simulation;
+
+/**
+ * Implemented by the experiment runs which accept the results of their simulators while they are still running. A simulator can check whether the
+ * callback listener it was initialized with is also a step listener and push the steps it processed. A simulator which reports its progress, with
+ * steps or heartbeats, is failed by the watchdog when it stops reporting it.
+ * 
+ * This interface and StepBatch are part of this bundle, not of core. A simulator bundle which only depends on core cannot push its steps, it has
+ * to import the org.geppetto.simulation package, optionally if it should also run without this bundle.
+ * 
+ */
+public interface ISimulatorStepListener
+{
+
+	/**
+	 * Can block the calling simulator while the clients consume the steps it already pushed, a simulator which wants to be held back this way has
+	 * to push its steps through this interface since the simulators which depend only on core cannot. The steps pushed once the run is over are
+	 * ignored.
+	 * 
+	 * @param batch
+	 *            consecutive steps processed by the simulator of batch.getInstancePath()
+	 */
+	void stepsProcessed(StepBatch batch);
+
+	/**
+	 * Tells the run that the simulator is still making progress, for the simulators which go long without producing steps. The stall watchdog
+	 * relies on it, and ISimulator in core has no such call: a simulator built only against core never reports progress, so it is never found
+	 * stalled and only the simulatorTimeout and experimentTimeout limits apply to it.
+	 * 
+	 * @param instancePath
+	 *            the aspect the simulator is simulating
+	 */
+	void heartbeat(String instancePath);
+
+}
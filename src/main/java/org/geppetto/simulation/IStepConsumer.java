@@ -0,0 +1,21 @@
+package org.geppetto.simulation;
+
+import java.util.List;
+
+import org.geppetto.core.data.model.IExperiment;
+
+/**
+ * Receives the steps of a running experiment as they are processed
+ * 
+ */
+public interface IStepConsumer
+{
+
+	/**
+	 * @param experiment
+	 * @param batches
+	 *            the steps processed since the last call, in the order they were processed
+	 */
+	void stepsAvailable(IExperiment experiment, List<StepBatch> batches);
+
+}
@@ -0,0 +1,60 @@
+package org.geppetto.simulation;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Consecutive steps processed by a simulator, with the values of the watched variables at each step
+ * 
+ */
+public class StepBatch
+{
+
+	private String instancePath;
+
+	private int firstStep;
+
+	private int steps;
+
+	private Map<String, double[]> values;
+
+	/**
+	 * @param instancePath
+	 *            the aspect the simulator is simulating
+	 * @param firstStep
+	 *            the index of the first step of the batch
+	 * @param values
+	 *            for each watched variable its values, one per step, all of the same length
+	 */
+	public StepBatch(String instancePath, int firstStep, Map<String, double[]> values)
+	{
+		this.instancePath = instancePath;
+		this.firstStep = firstStep;
+		this.values = Collections.unmodifiableMap(values);
+		this.steps = values.isEmpty() ? 0 : values.values().iterator().next().length;
+	}
+
+	public String getInstancePath()
+	{
+		return instancePath;
+	}
+
+	public int getFirstStep()
+	{
+		return firstStep;
+	}
+
+	/**
+	 * @return how many steps are in the batch
+	 */
+	public int getSteps()
+	{
+		return steps;
+	}
+
+	public Map<String, double[]> getValues()
+	{
+		return values;
+	}
+
+}
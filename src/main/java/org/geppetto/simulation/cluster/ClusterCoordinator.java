@@ -0,0 +1,271 @@
+package org.geppetto.simulation.cluster;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Assigns the experiments to the nodes which joined the cluster. Each run goes to the node with the most free slots, runs which cannot be
+ * placed wait in the order they were submitted. The runs of a node which leaves are given to the other nodes ahead of the waiting ones.
+ * 
+ */
+public class ClusterCoordinator implements ICoordinatorEndpoint
+{
+
+	private static Log logger = LogFactory.getLog(ClusterCoordinator.class);
+
+	private IClusterTransport transport;
+
+	private ICoordinatorListener listener;
+
+	private Map<String, NodeState> nodes = new LinkedHashMap<String, NodeState>();
+
+	private LinkedList<RunAssignment> pending = new LinkedList<RunAssignment>();
+
+	/**
+	 * @param transport
+	 */
+	public ClusterCoordinator(IClusterTransport transport)
+	{
+		this.transport = transport;
+		transport.bindCoordinator(this);
+	}
+
+	/**
+	 * @param listener
+	 */
+	public void setListener(ICoordinatorListener listener)
+	{
+		this.listener = listener;
+	}
+
+	/**
+	 * @param assignment
+	 *            a run to give to a node as soon as one has a free slot
+	 */
+	public void submit(RunAssignment assignment)
+	{
+		synchronized(this)
+		{
+			pending.add(assignment);
+		}
+		assignPending();
+	}
+
+	/**
+	 * @return true if some node can take a run which is not already waiting
+	 */
+	public synchronized boolean hasFreeCapacity()
+	{
+		return getFreeSlots() > pending.size();
+	}
+
+	/**
+	 * @return the slots free on all the nodes
+	 */
+	public synchronized int getFreeSlots()
+	{
+		int free = 0;
+		for(NodeState node : nodes.values())
+		{
+			free += node.getFreeSlots();
+		}
+		return free;
+	}
+
+	/**
+	 * @return the runs waiting for a node
+	 */
+	public synchronized int getPendingRuns()
+	{
+		return pending.size();
+	}
+
+	/**
+	 * @param nodeId
+	 * @return the runs assigned to the node and not finished, empty if the node is unknown
+	 */
+	public synchronized List<RunAssignment> getAssignedRuns(String nodeId)
+	{
+		NodeState node = nodes.get(nodeId);
+		return node == null ? new ArrayList<RunAssignment>() : new ArrayList<RunAssignment>(node.running.values());
+	}
+
+	/**
+	 * @return the nodes of the cluster
+	 */
+	public synchronized List<String> getNodes()
+	{
+		return new ArrayList<String>(nodes.keySet());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.geppetto.simulation.cluster.ICoordinatorEndpoint#nodeJoined(java.lang.String, int)
+	 */
+	@Override
+	public void nodeJoined(String nodeId, int capacity)
+	{
+		synchronized(this)
+		{
+			if(nodes.containsKey(nodeId))
+			{
+				// A node which restarted lost whatever it was running
+				requeue(nodes.remove(nodeId));
+			}
+			nodes.put(nodeId, new NodeState(nodeId, capacity));
+		}
+		logger.info("Node " + nodeId + " joined the cluster with capacity " + capacity);
+		assignPending();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.geppetto.simulation.cluster.ICoordinatorEndpoint#capacityChanged(java.lang.String, int)
+	 */
+	@Override
+	public void capacityChanged(String nodeId, int capacity)
+	{
+		synchronized(this)
+		{
+			NodeState node = nodes.get(nodeId);
+			if(node == null)
+			{
+				logger.warn("Capacity reported by unknown node " + nodeId);
+				return;
+			}
+			node.capacity = capacity;
+		}
+		assignPending();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.geppetto.simulation.cluster.ICoordinatorEndpoint#runFinished(java.lang.String, org.geppetto.simulation.cluster.RunAssignment, boolean)
+	 */
+	@Override
+	public void runFinished(String nodeId, RunAssignment assignment, boolean completed)
+	{
+		synchronized(this)
+		{
+			NodeState node = nodes.get(nodeId);
+			if(node == null || node.running.remove(assignment.getExperimentId()) == null)
+			{
+				// The run was already given to another node
+				logger.warn("Ignoring the end of " + assignment + " reported by " + nodeId);
+				return;
+			}
+		}
+		if(listener != null)
+		{
+			listener.runFinished(assignment, completed);
+		}
+		assignPending();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.geppetto.simulation.cluster.ICoordinatorEndpoint#nodeLeft(java.lang.String)
+	 */
+	@Override
+	public void nodeLeft(String nodeId)
+	{
+		synchronized(this)
+		{
+			NodeState node = nodes.remove(nodeId);
+			if(node == null)
+			{
+				return;
+			}
+			logger.warn("Node " + nodeId + " left the cluster, reassigning " + node.running.size() + " runs");
+			requeue(node);
+		}
+		assignPending();
+	}
+
+	/**
+	 * @param node
+	 */
+	private void requeue(NodeState node)
+	{
+		List<RunAssignment> lost = new ArrayList<RunAssignment>(node.running.values());
+		for(int i = lost.size() - 1; i >= 0; i--)
+		{
+			pending.addFirst(lost.get(i));
+		}
+	}
+
+	/**
+	 * Sends the waiting runs to the nodes with free slots, the messages go out once the state is updated
+	 */
+	private void assignPending()
+	{
+		Map<RunAssignment, String> assigned = new LinkedHashMap<RunAssignment, String>();
+		boolean free;
+		synchronized(this)
+		{
+			while(!pending.isEmpty())
+			{
+				NodeState target = null;
+				for(NodeState node : nodes.values())
+				{
+					if(node.getFreeSlots() > 0 && (target == null || node.getFreeSlots() > target.getFreeSlots()))
+					{
+						target = node;
+					}
+				}
+				if(target == null)
+				{
+					break;
+				}
+				RunAssignment assignment = pending.removeFirst();
+				target.running.put(assignment.getExperimentId(), assignment);
+				assigned.put(assignment, target.id);
+			}
+			free = getFreeSlots() > 0;
+		}
+		for(Map.Entry<RunAssignment, String> entry : assigned.entrySet())
+		{
+			logger.info("Assigning " + entry.getKey() + " to node " + entry.getValue());
+			transport.getNode(entry.getValue()).assign(entry.getKey());
+		}
+		if(free && listener != null)
+		{
+			listener.capacityAvailable();
+		}
+	}
+
+	/**
+	 * What the coordinator knows about a node
+	 */
+	private static class NodeState
+	{
+		private String id;
+
+		private int capacity;
+
+		private Map<Long, RunAssignment> running = new HashMap<Long, RunAssignment>();
+
+		private NodeState(String id, int capacity)
+		{
+			this.id = id;
+			this.capacity = capacity;
+		}
+
+		private int getFreeSlots()
+		{
+			return Math.max(0, capacity - running.size());
+		}
+	}
+
+}
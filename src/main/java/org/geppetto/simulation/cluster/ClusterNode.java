@@ -0,0 +1,96 @@
+package org.geppetto.simulation.cluster;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A node of the cluster, it runs the experiments the coordinator assigns to it and reports when they are over
+ * 
+ */
+public class ClusterNode implements INodeEndpoint
+{
+
+	private static Log logger = LogFactory.getLog(ClusterNode.class);
+
+	private String nodeId;
+
+	private int capacity;
+
+	private IClusterTransport transport;
+
+	private IExperimentRunner runner;
+
+	/**
+	 * @param nodeId
+	 * @param capacity
+	 *            how many experiments the node runs at the same time
+	 * @param transport
+	 * @param runner
+	 */
+	public ClusterNode(String nodeId, int capacity, IClusterTransport transport, IExperimentRunner runner)
+	{
+		this.nodeId = nodeId;
+		this.capacity = capacity;
+		this.transport = transport;
+		this.runner = runner;
+	}
+
+	/**
+	 * Makes the node reachable and tells the coordinator it can take runs
+	 */
+	public void join()
+	{
+		transport.bindNode(nodeId, this);
+		transport.getCoordinator().nodeJoined(nodeId, capacity);
+	}
+
+	/**
+	 * Tells the coordinator this node takes no more runs, the ones it was running are reassigned
+	 */
+	public void leave()
+	{
+		transport.getCoordinator().nodeLeft(nodeId);
+	}
+
+	/**
+	 * @param capacity
+	 */
+	public void setCapacity(int capacity)
+	{
+		this.capacity = capacity;
+		transport.getCoordinator().capacityChanged(nodeId, capacity);
+	}
+
+	public String getNodeId()
+	{
+		return nodeId;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.geppetto.simulation.cluster.INodeEndpoint#assign(org.geppetto.simulation.cluster.RunAssignment)
+	 */
+	@Override
+	public void assign(final RunAssignment assignment)
+	{
+		logger.info("Node " + nodeId + " running " + assignment);
+		try
+		{
+			runner.run(assignment, new IRunCallback()
+			{
+				@Override
+				public void finished(boolean completed)
+				{
+					transport.getCoordinator().runFinished(nodeId, assignment, completed);
+				}
+			});
+		}
+		catch(RuntimeException e)
+		{
+			logger.error("Node " + nodeId + " could not run " + assignment, e);
+			transport.getCoordinator().runFinished(nodeId, assignment, false);
+		}
+	}
+
+}
@@ -0,0 +1,35 @@
+package org.geppetto.simulation.cluster;
+
+/**
+ * Carries the messages between the coordinator and the nodes. The endpoints returned deliver the messages asynchronously and in order, an
+ * implementation over the network serializes them.
+ * 
+ */
+public interface IClusterTransport
+{
+
+	/**
+	 * @param coordinator
+	 *            where the messages of the nodes are delivered
+	 */
+	void bindCoordinator(ICoordinatorEndpoint coordinator);
+
+	/**
+	 * @param nodeId
+	 * @param node
+	 *            where the messages of the coordinator for this node are delivered
+	 */
+	void bindNode(String nodeId, INodeEndpoint node);
+
+	/**
+	 * @return the endpoint the nodes send their messages to
+	 */
+	ICoordinatorEndpoint getCoordinator();
+
+	/**
+	 * @param nodeId
+	 * @return the endpoint the coordinator sends the messages for the node to
+	 */
+	INodeEndpoint getNode(String nodeId);
+
+}
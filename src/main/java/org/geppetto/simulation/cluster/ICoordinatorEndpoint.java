@@ -0,0 +1,38 @@
+package org.geppetto.simulation.cluster;
+
+/**
+ * The messages the nodes send to the coordinator
+ * 
+ */
+public interface ICoordinatorEndpoint
+{
+
+	/**
+	 * @param nodeId
+	 * @param capacity
+	 *            how many experiments the node can run at the same time
+	 */
+	void nodeJoined(String nodeId, int capacity);
+
+	/**
+	 * @param nodeId
+	 * @param capacity
+	 */
+	void capacityChanged(String nodeId, int capacity);
+
+	/**
+	 * @param nodeId
+	 * @param assignment
+	 * @param completed
+	 *            false if the run failed or was cancelled
+	 */
+	void runFinished(String nodeId, RunAssignment assignment, boolean completed);
+
+	/**
+	 * The node stopped, or the transport lost it, the runs assigned to it are given to other nodes
+	 * 
+	 * @param nodeId
+	 */
+	void nodeLeft(String nodeId);
+
+}
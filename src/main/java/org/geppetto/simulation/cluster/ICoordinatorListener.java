@@ -0,0 +1,21 @@
+package org.geppetto.simulation.cluster;
+
+/**
+ * Follows the runs the coordinator assigned
+ * 
+ */
+public interface ICoordinatorListener
+{
+
+	/**
+	 * @param assignment
+	 * @param completed
+	 */
+	void runFinished(RunAssignment assignment, boolean completed);
+
+	/**
+	 * Nodes joined or finished runs, more experiments can be dispatched
+	 */
+	void capacityAvailable();
+
+}
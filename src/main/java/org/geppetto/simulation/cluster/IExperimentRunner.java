@@ -0,0 +1,19 @@
+package org.geppetto.simulation.cluster;
+
+/**
+ * Runs the experiments assigned to a node
+ * 
+ */
+public interface IExperimentRunner
+{
+
+	/**
+	 * Starts the run and returns
+	 * 
+	 * @param assignment
+	 * @param callback
+	 *            notified once the run is over
+	 */
+	void run(RunAssignment assignment, IRunCallback callback);
+
+}
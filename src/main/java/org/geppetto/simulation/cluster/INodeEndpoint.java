@@ -0,0 +1,16 @@
+package org.geppetto.simulation.cluster;
+
+/**
+ * The messages the coordinator sends to a node
+ * 
+ */
+public interface INodeEndpoint
+{
+
+	/**
+	 * @param assignment
+	 *            an experiment to run
+	 */
+	void assign(RunAssignment assignment);
+
+}
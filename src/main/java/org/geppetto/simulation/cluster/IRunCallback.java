@@ -0,0 +1,16 @@
+package org.geppetto.simulation.cluster;
+
+/**
+ * Notified when an experiment run is over
+ * 
+ */
+public interface IRunCallback
+{
+
+	/**
+	 * @param completed
+	 *            false if the run failed, was cancelled or could not start
+	 */
+	void finished(boolean completed);
+
+}
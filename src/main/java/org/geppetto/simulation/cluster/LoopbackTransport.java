@@ -0,0 +1,251 @@
+package org.geppetto.simulation.cluster;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Carries the messages between a coordinator and nodes living in the same JVM. The messages are delivered one at a time on a single thread,
+ * in the order they were sent, as a connection would.
+ * 
+ */
+public class LoopbackTransport implements IClusterTransport
+{
+
+	private static Log logger = LogFactory.getLog(LoopbackTransport.class);
+
+	private volatile ICoordinatorEndpoint coordinator;
+
+	private Map<String, INodeEndpoint> nodes = new ConcurrentHashMap<String, INodeEndpoint>();
+
+	private ExecutorService delivery = Executors.newSingleThreadExecutor(new ThreadFactory()
+	{
+		@Override
+		public Thread newThread(Runnable r)
+		{
+			Thread thread = new Thread(r, "ClusterLoopback");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private ICoordinatorEndpoint coordinatorProxy = new ICoordinatorEndpoint()
+	{
+		@Override
+		public void nodeJoined(final String nodeId, final int capacity)
+		{
+			deliver(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					coordinator.nodeJoined(nodeId, capacity);
+				}
+			});
+		}
+
+		@Override
+		public void capacityChanged(final String nodeId, final int capacity)
+		{
+			deliver(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					coordinator.capacityChanged(nodeId, capacity);
+				}
+			});
+		}
+
+		@Override
+		public void runFinished(final String nodeId, final RunAssignment assignment, final boolean completed)
+		{
+			deliver(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					coordinator.runFinished(nodeId, assignment, completed);
+				}
+			});
+		}
+
+		@Override
+		public void nodeLeft(final String nodeId)
+		{
+			deliver(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					coordinator.nodeLeft(nodeId);
+				}
+			});
+		}
+	};
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.geppetto.simulation.cluster.IClusterTransport#bindCoordinator(org.geppetto.simulation.cluster.ICoordinatorEndpoint)
+	 */
+	@Override
+	public void bindCoordinator(ICoordinatorEndpoint coordinator)
+	{
+		this.coordinator = coordinator;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.geppetto.simulation.cluster.IClusterTransport#bindNode(java.lang.String, org.geppetto.simulation.cluster.INodeEndpoint)
+	 */
+	@Override
+	public void bindNode(String nodeId, INodeEndpoint node)
+	{
+		nodes.put(nodeId, node);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.geppetto.simulation.cluster.IClusterTransport#getCoordinator()
+	 */
+	@Override
+	public ICoordinatorEndpoint getCoordinator()
+	{
+		return coordinatorProxy;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.geppetto.simulation.cluster.IClusterTransport#getNode(java.lang.String)
+	 */
+	@Override
+	public INodeEndpoint getNode(final String nodeId)
+	{
+		return new INodeEndpoint()
+		{
+			@Override
+			public void assign(final RunAssignment assignment)
+			{
+				deliver(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						INodeEndpoint node = nodes.get(nodeId);
+						if(node == null)
+						{
+							// Like a broken connection, the coordinator learns the node is gone
+							logger.warn("Node " + nodeId + " is not reachable");
+							coordinator.nodeLeft(nodeId);
+						}
+						else
+						{
+							node.assign(assignment);
+						}
+					}
+				});
+			}
+		};
+	}
+
+	/**
+	 * Disconnects a node without it saying so, as a crash would
+	 * 
+	 * @param nodeId
+	 */
+	public void disconnect(final String nodeId)
+	{
+		nodes.remove(nodeId);
+		deliver(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				coordinator.nodeLeft(nodeId);
+			}
+		});
+	}
+
+	/**
+	 * Waits for the messages sent so far to be delivered
+	 * 
+	 * @param timeout
+	 * @return false if the messages were not delivered in time
+	 * @throws InterruptedException
+	 */
+	public boolean flush(long timeout) throws InterruptedException
+	{
+		final Object done = new Object();
+		final boolean[] delivered = new boolean[1];
+		deliver(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				synchronized(done)
+				{
+					delivered[0] = true;
+					done.notifyAll();
+				}
+			}
+		});
+		long deadline = System.currentTimeMillis() + timeout;
+		synchronized(done)
+		{
+			while(!delivered[0] && System.currentTimeMillis() < deadline)
+			{
+				done.wait(Math.max(1, deadline - System.currentTimeMillis()));
+			}
+			return delivered[0];
+		}
+	}
+
+	/**
+	 * Stops delivering messages
+	 */
+	public void close()
+	{
+		delivery.shutdownNow();
+		try
+		{
+			delivery.awaitTermination(1, TimeUnit.SECONDS);
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @param message
+	 */
+	private void deliver(final Runnable message)
+	{
+		delivery.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					message.run();
+				}
+				catch(RuntimeException e)
+				{
+					logger.error("Error delivering a cluster message", e);
+				}
+			}
+		});
+	}
+
+}
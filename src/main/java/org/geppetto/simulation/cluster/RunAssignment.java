@@ -0,0 +1,59 @@
+package org.geppetto.simulation.cluster;
+
+import java.io.Serializable;
+
+/**
+ * An experiment the coordinator gives to a node to run. Only the identifiers travel, the node loads the experiment from the database.
+ * 
+ */
+public class RunAssignment implements Serializable
+{
+
+	private static final long serialVersionUID = 1L;
+
+	private long projectId;
+
+	private long experimentId;
+
+	private String login;
+
+	/**
+	 * @param projectId
+	 * @param experimentId
+	 * @param login
+	 *            the user who queued the experiment
+	 */
+	public RunAssignment(long projectId, long experimentId, String login)
+	{
+		this.projectId = projectId;
+		this.experimentId = experimentId;
+		this.login = login;
+	}
+
+	public long getProjectId()
+	{
+		return projectId;
+	}
+
+	public long getExperimentId()
+	{
+		return experimentId;
+	}
+
+	public String getLogin()
+	{
+		return login;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString()
+	{
+		return "experiment " + experimentId + " of project " + projectId;
+	}
+
+}
@@ -0,0 +1,611 @@
+package org.geppetto.simulation.conversion;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.geppetto.core.data.model.IAspectConfiguration;
+import org.geppetto.core.data.model.IParameter;
+import org.geppetto.core.data.model.ISimulatorConfiguration;
+import org.geppetto.core.services.registry.ServicesRegistry;
+import org.geppetto.model.DomainModel;
+import org.geppetto.model.ModelFormat;
+
+/**
+ * Keeps the models produced by the conversion services so that experiments converting the same model with the same configuration, e.g. the
+ * experiments of a parameter sweep, do not convert it again. The entries are addressed by a hash of the input model, of the output format and of
+ * the parts of the aspect configuration a conversion can depend on. The most recently used entries are kept in memory, and if a folder is given
+ * the models whose content is serializable are also written to disk. Both tiers are bounded in bytes and drop their least recently used entries
+ * first. The size of an entry in memory is estimated from the length of its content, i.e. two bytes per character of a String or the size of the
+ * serialized content, the Java objects themselves take somewhat more.
+ * 
+ * Only models whose content is a String or is Serializable can be cached. The content is not an EMF object, so it is copied by serializing it
+ * every time a model goes in or out of the cache, and the experiments never share it. The cache is only used for the conversion services which
+ * implement ICacheableConversion, i.e. whose output does not depend on the experiment they run for.
+ * 
+ */
+public class ConversionCache
+{
+
+	private static Log logger = LogFactory.getLog(ConversionCache.class);
+
+	private static final String DOMAIN_MODEL_FEATURE = "domainModel";
+
+	private static final String FORMAT_FEATURE = "format";
+
+	private Map<String, DomainModel> memory = new LinkedHashMap<String, DomainModel>(16, 0.75f, true);
+
+	// the estimated size of the entries in memory
+	private Map<String, Long> sizes = new HashMap<String, Long>();
+
+	private long memoryBudget;
+
+	private long memoryUsed = 0;
+
+	private File folder;
+
+	private long diskBudget;
+
+	private long diskUsed = 0;
+
+	private long hits = 0;
+
+	private long diskHits = 0;
+
+	private long misses = 0;
+
+	/**
+	 * @param memoryBudget
+	 *            the estimated bytes of the converted models kept in memory
+	 * @param folder
+	 *            where the converted models are written, null to keep them only in memory
+	 * @param diskBudget
+	 *            the bytes the converted models can take in the folder
+	 */
+	public ConversionCache(long memoryBudget, File folder, long diskBudget)
+	{
+		this.memoryBudget = memoryBudget;
+		this.folder = folder;
+		this.diskBudget = diskBudget;
+		if(folder != null)
+		{
+			folder.mkdirs();
+			File[] entries = folder.listFiles();
+			if(entries != null)
+			{
+				for(File entry : entries)
+				{
+					diskUsed += entry.length();
+				}
+			}
+			// e.g. the budget was lowered since the last start
+			evictFromDisk();
+		}
+	}
+
+	/**
+	 * @param model
+	 *            the model to convert
+	 * @param outputFormat
+	 * @param aspectConfig
+	 * @param conversion
+	 *            identifies the conversion service
+	 * @return the key of the conversion, null if the model cannot be hashed and the conversion cannot be cached
+	 */
+	public String getKey(DomainModel model, ModelFormat outputFormat, IAspectConfiguration aspectConfig, String conversion)
+	{
+		Object content = model.getDomainModel();
+		if(content == null || !(content instanceof String || content instanceof Serializable))
+		{
+			return null;
+		}
+		try
+		{
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			update(digest, conversion);
+			update(digest, outputFormat.getModelFormat());
+			update(digest, model.getFormat() != null ? model.getFormat().getModelFormat() : null);
+			update(digest, aspectConfig.getInstance());
+			ISimulatorConfiguration simulatorConfig = aspectConfig.getSimulatorConfiguration();
+			if(simulatorConfig != null)
+			{
+				update(digest, simulatorConfig.getSimulatorId());
+				update(digest, String.valueOf(simulatorConfig.getTimestep()));
+				update(digest, String.valueOf(simulatorConfig.getLength()));
+				if(simulatorConfig.getParameters() != null)
+				{
+					update(digest, new TreeMap<String, String>(simulatorConfig.getParameters()).toString());
+				}
+			}
+			Map<String, String> parameters = new TreeMap<String, String>();
+			if(aspectConfig.getModelParameter() != null)
+			{
+				for(IParameter parameter : aspectConfig.getModelParameter())
+				{
+					parameters.put(parameter.getVariable(), parameter.getValue());
+				}
+			}
+			update(digest, parameters.toString());
+			if(aspectConfig.getWatchedVariables() != null)
+			{
+				List<String> watched = new ArrayList<String>(aspectConfig.getWatchedVariables());
+				Collections.sort(watched);
+				update(digest, watched.toString());
+			}
+			if(content instanceof String)
+			{
+				update(digest, (String) content);
+			}
+			else
+			{
+				try(ObjectOutputStream out = new ObjectOutputStream(new DigestOutputStream(new NullOutputStream(), digest)))
+				{
+					out.writeObject(content);
+				}
+			}
+			StringBuilder key = new StringBuilder();
+			for(byte b : digest.digest())
+			{
+				key.append(String.format("%02x", b));
+			}
+			return key.toString();
+		}
+		catch(IOException | NoSuchAlgorithmException | RuntimeException e)
+		{
+			// e.g. something not serializable inside the model
+			logger.warn("Unable to hash the model to convert, the conversion will not be cached: " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * @param key
+	 * @return a copy of the converted model, null if it is not cached
+	 */
+	public DomainModel get(String key)
+	{
+		return get(key, null);
+	}
+
+	/**
+	 * @param key
+	 * @param classLoader
+	 *            resolves the classes of the content read from disk, e.g. the class loader of the conversion service producing it
+	 * @return a copy of the converted model, null if it is not cached
+	 */
+	public DomainModel get(String key, ClassLoader classLoader)
+	{
+		DomainModel converted;
+		synchronized(this)
+		{
+			converted = memory.get(key);
+		}
+		if(converted != null)
+		{
+			DomainModel copy = copy(key, converted);
+			synchronized(this)
+			{
+				if(copy != null)
+				{
+					hits++;
+					return copy;
+				}
+				removeFromMemory(key);
+			}
+		}
+		converted = read(key, classLoader);
+		DomainModel copy = converted != null ? copy(key, converted) : null;
+		synchronized(this)
+		{
+			if(copy != null)
+			{
+				diskHits++;
+				putInMemory(key, converted, new File(folder, key).length());
+				return copy;
+			}
+			misses++;
+			return null;
+		}
+	}
+
+	/**
+	 * @param key
+	 * @param converted
+	 */
+	public void put(String key, DomainModel converted)
+	{
+		if(converted == null)
+		{
+			return;
+		}
+		// the caller keeps using its model, the cache needs its own content
+		DomainModel copy = copy(key, converted);
+		if(copy == null)
+		{
+			return;
+		}
+		long size = estimateSize(copy);
+		if(size < 0)
+		{
+			return;
+		}
+		synchronized(this)
+		{
+			putInMemory(key, copy, size);
+		}
+		write(key, copy);
+	}
+
+	/**
+	 * @return the estimated bytes of the converted models in memory
+	 */
+	public synchronized long getMemoryUsed()
+	{
+		return memoryUsed;
+	}
+
+	/**
+	 * @return the bytes of the converted models in the folder
+	 */
+	public synchronized long getDiskUsed()
+	{
+		return diskUsed;
+	}
+
+	/**
+	 * Keeps a model in memory, dropping the least recently used ones which do not fit in the budget anymore. A model larger than the whole budget
+	 * is not kept.
+	 * 
+	 * @param key
+	 * @param converted
+	 * @param size
+	 */
+	private void putInMemory(String key, DomainModel converted, long size)
+	{
+		removeFromMemory(key);
+		if(size > memoryBudget)
+		{
+			return;
+		}
+		memory.put(key, converted);
+		sizes.put(key, size);
+		memoryUsed += size;
+		Iterator<String> eldest = memory.keySet().iterator();
+		while(memoryUsed > memoryBudget && eldest.hasNext())
+		{
+			String evicted = eldest.next();
+			eldest.remove();
+			memoryUsed -= sizes.remove(evicted);
+		}
+	}
+
+	/**
+	 * @param key
+	 */
+	private void removeFromMemory(String key)
+	{
+		if(memory.remove(key) != null)
+		{
+			memoryUsed -= sizes.remove(key);
+		}
+	}
+
+	/**
+	 * Deletes the least recently used models from the folder until they fit in the budget
+	 */
+	private synchronized void evictFromDisk()
+	{
+		if(diskUsed <= diskBudget)
+		{
+			return;
+		}
+		File[] entries = folder.listFiles();
+		if(entries == null)
+		{
+			return;
+		}
+		Arrays.sort(entries, new Comparator<File>()
+		{
+			@Override
+			public int compare(File first, File second)
+			{
+				return Long.compare(first.lastModified(), second.lastModified());
+			}
+		});
+		for(File entry : entries)
+		{
+			if(diskUsed <= diskBudget)
+			{
+				break;
+			}
+			long length = entry.length();
+			if(!entry.getName().endsWith(".tmp") && entry.delete())
+			{
+				diskUsed -= length;
+			}
+		}
+	}
+
+	/**
+	 * @param converted
+	 * @return the estimated bytes of the content of the model, -1 if it cannot be serialized
+	 */
+	private static long estimateSize(DomainModel converted)
+	{
+		Object content = converted.getDomainModel();
+		if(content == null)
+		{
+			return 0;
+		}
+		if(content instanceof String)
+		{
+			return 2L * ((String) content).length();
+		}
+		CountingOutputStream counter = new CountingOutputStream();
+		try(ObjectOutputStream out = new ObjectOutputStream(counter))
+		{
+			out.writeObject(content);
+		}
+		catch(IOException | RuntimeException e)
+		{
+			return -1;
+		}
+		return counter.count;
+	}
+
+	/**
+	 * @return how many conversions were found in memory
+	 */
+	public synchronized long getHits()
+	{
+		return hits;
+	}
+
+	/**
+	 * @return how many conversions were found on disk
+	 */
+	public synchronized long getDiskHits()
+	{
+		return diskHits;
+	}
+
+	/**
+	 * @return how many conversions had to be performed
+	 */
+	public synchronized long getMisses()
+	{
+		return misses;
+	}
+
+	/**
+	 * @param key
+	 * @param converted
+	 */
+	private void write(String key, DomainModel converted)
+	{
+		Object content = converted.getDomainModel();
+		if(folder == null || !(content instanceof Serializable))
+		{
+			return;
+		}
+		File entry = new File(folder, key);
+		File tmp = new File(folder, key + ".tmp");
+		try
+		{
+			try(ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(tmp.toPath())))
+			{
+				out.writeUTF(converted.eClass().getEPackage().getNsURI());
+				out.writeUTF(converted.eClass().getName());
+				out.writeUTF(converted.getFormat() != null ? converted.getFormat().getModelFormat() : "");
+				out.writeObject(content);
+			}
+			long replaced = entry.length();
+			Files.move(tmp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			synchronized(this)
+			{
+				diskUsed += entry.length() - replaced;
+			}
+			evictFromDisk();
+		}
+		catch(IOException | RuntimeException e)
+		{
+			logger.warn("Unable to write the converted model " + key + " to disk: " + e.getMessage());
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * @param key
+	 * @param classLoader
+	 *            resolves the classes of the content, null to use the default resolution only
+	 * @return the converted model read from disk, null if it is not there
+	 */
+	private DomainModel read(String key, ClassLoader classLoader)
+	{
+		if(folder == null)
+		{
+			return null;
+		}
+		File entry = new File(folder, key);
+		if(!entry.exists())
+		{
+			return null;
+		}
+		try(InputStream in = Files.newInputStream(entry.toPath()); ObjectInputStream objectIn = new ContentInputStream(in, classLoader))
+		{
+			EPackage ePackage = EPackage.Registry.INSTANCE.getEPackage(objectIn.readUTF());
+			EClass eClass = (EClass) ePackage.getEClassifier(objectIn.readUTF());
+			String format = objectIn.readUTF();
+			DomainModel converted = (DomainModel) EcoreUtil.create(eClass);
+			EStructuralFeature contentFeature = eClass.getEStructuralFeature(DOMAIN_MODEL_FEATURE);
+			converted.eSet(contentFeature, objectIn.readObject());
+			if(!format.isEmpty())
+			{
+				EStructuralFeature formatFeature = eClass.getEStructuralFeature(FORMAT_FEATURE);
+				converted.eSet(formatFeature, ServicesRegistry.getModelFormat(format));
+			}
+			// the entries used recently are the last to be evicted from disk
+			entry.setLastModified(System.currentTimeMillis());
+			return converted;
+		}
+		catch(IOException | ClassNotFoundException | RuntimeException e)
+		{
+			// a stale or corrupted entry is just a miss
+			logger.warn("Unable to read the converted model " + key + " from disk: " + e.getMessage());
+			long length = entry.length();
+			if(entry.delete())
+			{
+				synchronized(this)
+				{
+					// the entry might have been copied to the folder by hand
+					diskUsed = Math.max(0, diskUsed - length);
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * @param key
+	 * @param converted
+	 * @return a copy of the model which shares nothing with it, null if its content cannot be copied
+	 */
+	private DomainModel copy(String key, DomainModel converted)
+	{
+		DomainModel copy = EcoreUtil.copy(converted);
+		Object content = converted.getDomainModel();
+		if(content != null && !(content instanceof String))
+		{
+			try
+			{
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				try(ObjectOutputStream out = new ObjectOutputStream(bytes))
+				{
+					out.writeObject(content);
+				}
+				try(ObjectInputStream in = new ContentInputStream(new ByteArrayInputStream(bytes.toByteArray()), content.getClass().getClassLoader()))
+				{
+					copy.eSet(copy.eClass().getEStructuralFeature(DOMAIN_MODEL_FEATURE), in.readObject());
+				}
+			}
+			catch(IOException | ClassNotFoundException | RuntimeException e)
+			{
+				logger.warn("Unable to copy the converted model " + key + ", it is not cached: " + e.getMessage());
+				return null;
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * @param digest
+	 * @param value
+	 */
+	private static void update(MessageDigest digest, String value)
+	{
+		if(value != null)
+		{
+			digest.update(value.getBytes(StandardCharsets.UTF_8));
+		}
+		// a separator so that different splits of the same characters give different hashes
+		digest.update((byte) 0);
+	}
+
+	/**
+	 * Resolves the classes of the content with the class loader of the original content first, the services producing it may live in another
+	 * bundle
+	 */
+	private static class ContentInputStream extends ObjectInputStream
+	{
+		private ClassLoader classLoader;
+
+		private ContentInputStream(InputStream in, ClassLoader classLoader) throws IOException
+		{
+			super(in);
+			this.classLoader = classLoader;
+		}
+
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException
+		{
+			if(classLoader != null)
+			{
+				try
+				{
+					return Class.forName(desc.getName(), false, classLoader);
+				}
+				catch(ClassNotFoundException e)
+				{
+					// e.g. a class of the JDK or of another bundle
+				}
+			}
+			return super.resolveClass(desc);
+		}
+	}
+
+	/**
+	 * Discards what is written, only counting the bytes
+	 */
+	private static class CountingOutputStream extends OutputStream
+	{
+		private long count = 0;
+
+		@Override
+		public void write(int b)
+		{
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len)
+		{
+			count += len;
+		}
+	}
+
+	/**
+	 * Discards what is written, only the digest is needed
+	 */
+	private static class NullOutputStream extends OutputStream
+	{
+		@Override
+		public void write(int b)
+		{
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len)
+		{
+		}
+	}
+
+}
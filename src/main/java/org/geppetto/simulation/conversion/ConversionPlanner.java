@@ -0,0 +1,233 @@
+package org.geppetto.simulation.conversion;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geppetto.model.ModelFormat;
+
+/**
+ * Finds the cheapest sequence of conversions from one of the formats a model interpreter provides to one of the formats a simulator accepts. The
+ * cost of a conversion is the average time it took so far, conversions never timed are assumed to take DEFAULT_STEP_COST so that shorter paths are
+ * preferred until there are timings. The plans are kept per pair of format lists and computed again when the timings change noticeably or when the
+ * conversion services registered change, so a plan never uses a service which is not registered anymore.
+ * 
+ */
+public class ConversionPlanner
+{
+
+	private static Log logger = LogFactory.getLog(ConversionPlanner.class);
+
+	// milliseconds assumed for a conversion which was never timed
+	static final double DEFAULT_STEP_COST = 1000;
+
+	// weight of the last timing in the moving average
+	private static final double SMOOTHING = 0.3;
+
+	// the plans are computed again when a timing moves the average by more than this
+	private static final double REPLAN_RATIO = 0.5;
+
+	private IConversionGraph graph;
+
+	private Map<String, List<ConversionStep>> plans = new ConcurrentHashMap<String, List<ConversionStep>>();
+
+	private Map<String, Double> timings = new ConcurrentHashMap<String, Double>();
+
+	// the steps, and the instances of the services performing them, the kept plans were computed on
+	private volatile Set<String> plannedGraph = Collections.emptySet();
+
+	/**
+	 * @param graph
+	 */
+	public ConversionPlanner(IConversionGraph graph)
+	{
+		this.graph = graph;
+	}
+
+	/**
+	 * @param inputFormats
+	 *            the formats the model is available in
+	 * @param outputFormats
+	 *            the formats accepted
+	 * @return the conversions to perform in order, null if no sequence of conversions reaches an accepted format
+	 */
+	public List<ConversionStep> plan(List<ModelFormat> inputFormats, List<ModelFormat> outputFormats)
+	{
+		String key = getFormats(inputFormats) + "->" + getFormats(outputFormats);
+		Set<String> graphSteps = getGraphSteps();
+		if(!graphSteps.equals(plannedGraph))
+		{
+			// services were registered or removed since the plans were computed
+			plans.clear();
+			plannedGraph = graphSteps;
+		}
+		List<ConversionStep> plan = plans.get(key);
+		if(plan == null)
+		{
+			plan = plan(inputFormats, outputFormats, Collections.<String> emptySet());
+			if(plan == null)
+			{
+				return null;
+			}
+			plans.put(key, plan);
+		}
+		return plan;
+	}
+
+	/**
+	 * @param inputFormats
+	 * @param outputFormats
+	 * @param excludedSteps
+	 *            the keys of the steps which must not be used, e.g. because they cannot convert this particular model
+	 * @return the conversions to perform in order, null if no sequence of conversions reaches an accepted format
+	 */
+	public List<ConversionStep> plan(List<ModelFormat> inputFormats, List<ModelFormat> outputFormats, Set<String> excludedSteps)
+	{
+		Map<String, List<ConversionStep>> stepsFrom = new HashMap<String, List<ConversionStep>>();
+		for(ConversionStep step : graph.getSteps())
+		{
+			if(!excludedSteps.contains(step.getKey()))
+			{
+				String from = step.getInput().getModelFormat();
+				if(!stepsFrom.containsKey(from))
+				{
+					stepsFrom.put(from, new ArrayList<ConversionStep>());
+				}
+				stepsFrom.get(from).add(step);
+			}
+		}
+		Set<String> targets = new HashSet<String>();
+		for(ModelFormat format : outputFormats)
+		{
+			targets.add(format.getModelFormat());
+		}
+
+		// Dijkstra from all the input formats at once
+		final Map<String, Double> costs = new HashMap<String, Double>();
+		Map<String, ConversionStep> reachedBy = new HashMap<String, ConversionStep>();
+		PriorityQueue<String> frontier = new PriorityQueue<String>(11, new Comparator<String>()
+		{
+			@Override
+			public int compare(String a, String b)
+			{
+				return Double.compare(costs.get(a), costs.get(b));
+			}
+		});
+		for(ModelFormat format : inputFormats)
+		{
+			costs.put(format.getModelFormat(), 0d);
+			frontier.add(format.getModelFormat());
+		}
+		Set<String> settled = new HashSet<String>();
+		while(!frontier.isEmpty())
+		{
+			String format = frontier.poll();
+			if(!settled.add(format))
+			{
+				continue;
+			}
+			if(targets.contains(format))
+			{
+				List<ConversionStep> plan = new ArrayList<ConversionStep>();
+				for(ConversionStep step = reachedBy.get(format); step != null; step = reachedBy.get(step.getInput().getModelFormat()))
+				{
+					plan.add(0, step);
+				}
+				logger.info("Conversion plan " + plan + " estimated " + costs.get(format) + " ms");
+				return plan;
+			}
+			if(stepsFrom.containsKey(format))
+			{
+				for(ConversionStep step : stepsFrom.get(format))
+				{
+					String to = step.getOutput().getModelFormat();
+					double cost = costs.get(format) + getCost(step);
+					if(!settled.contains(to) && (!costs.containsKey(to) || cost < costs.get(to)))
+					{
+						// the queue has no decrease key, the stale entry is skipped once settled
+						costs.put(to, cost);
+						reachedBy.put(to, step);
+						frontier.add(to);
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param step
+	 * @param milliseconds
+	 *            how long the conversion took
+	 */
+	public void recordTiming(ConversionStep step, long milliseconds)
+	{
+		String key = step.getKey();
+		Double previous = timings.get(key);
+		double average = previous == null ? milliseconds : previous * (1 - SMOOTHING) + milliseconds * SMOOTHING;
+		timings.put(key, average);
+		double planned = previous == null ? DEFAULT_STEP_COST : previous;
+		if(Math.abs(average - planned) > planned * REPLAN_RATIO)
+		{
+			// a different path might be faster now
+			plans.clear();
+		}
+	}
+
+	/**
+	 * Forgets the plans, e.g. because the registered conversion services changed
+	 */
+	public void clear()
+	{
+		plans.clear();
+	}
+
+	/**
+	 * @return the keys of the steps of the graph together with the instance of the service performing each one
+	 */
+	private Set<String> getGraphSteps()
+	{
+		Set<String> steps = new HashSet<String>();
+		for(ConversionStep step : graph.getSteps())
+		{
+			steps.add(step.getKey() + "@" + System.identityHashCode(step.getService()));
+		}
+		return steps;
+	}
+
+	/**
+	 * @param step
+	 * @return the estimated milliseconds of the step
+	 */
+	private double getCost(ConversionStep step)
+	{
+		Double timing = timings.get(step.getKey());
+		// a conversion is never free, otherwise paths with pointless steps would tie with the direct one
+		return timing != null ? Math.max(timing, 1) : DEFAULT_STEP_COST;
+	}
+
+	/**
+	 * @param formats
+	 * @return
+	 */
+	private String getFormats(List<ModelFormat> formats)
+	{
+		Set<String> names = new TreeSet<String>();
+		for(ModelFormat format : formats)
+		{
+			names.add(format.getModelFormat());
+		}
+		return names.toString();
+	}
+
+}
@@ -0,0 +1,65 @@
+package org.geppetto.simulation.conversion;
+
+import org.geppetto.core.conversion.IConversion;
+import org.geppetto.model.ModelFormat;
+
+/**
+ * A single conversion of a model from one format to another performed by a conversion service
+ * 
+ */
+public class ConversionStep
+{
+
+	private IConversion service;
+
+	private ModelFormat input;
+
+	private ModelFormat output;
+
+	/**
+	 * @param service
+	 * @param input
+	 * @param output
+	 */
+	public ConversionStep(IConversion service, ModelFormat input, ModelFormat output)
+	{
+		this.service = service;
+		this.input = input;
+		this.output = output;
+	}
+
+	public IConversion getService()
+	{
+		return service;
+	}
+
+	public ModelFormat getInput()
+	{
+		return input;
+	}
+
+	public ModelFormat getOutput()
+	{
+		return output;
+	}
+
+	/**
+	 * @return identifies the step, the same service converting between the same formats always has the same key
+	 */
+	public String getKey()
+	{
+		return service.getClass().getName() + ":" + input.getModelFormat() + "->" + output.getModelFormat();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString()
+	{
+		return getKey();
+	}
+
+}
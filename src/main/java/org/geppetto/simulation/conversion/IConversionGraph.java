@@ -0,0 +1,17 @@
+package org.geppetto.simulation.conversion;
+
+import java.util.List;
+
+/**
+ * The conversions available between model formats
+ * 
+ */
+public interface IConversionGraph
+{
+
+	/**
+	 * @return every conversion a registered conversion service can perform
+	 */
+	List<ConversionStep> getSteps();
+
+}
@@ -0,0 +1,40 @@
+package org.geppetto.simulation.conversion;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.geppetto.core.conversion.IConversion;
+import org.geppetto.core.services.registry.ServicesRegistry;
+import org.geppetto.core.services.registry.ServicesRegistry.ConversionServiceKey;
+import org.geppetto.model.ModelFormat;
+
+/**
+ * The conversions of the conversion services registered in the ServicesRegistry
+ * 
+ */
+public class RegistryConversionGraph implements IConversionGraph
+{
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.geppetto.simulation.conversion.IConversionGraph#getSteps()
+	 */
+	@Override
+	public List<ConversionStep> getSteps()
+	{
+		List<ConversionStep> steps = new ArrayList<ConversionStep>();
+		List<ModelFormat> formats = ServicesRegistry.getAllModelFormats();
+		Map<ConversionServiceKey, List<IConversion>> services = ServicesRegistry.getConversionService(formats, formats);
+		for(Map.Entry<ConversionServiceKey, List<IConversion>> entry : services.entrySet())
+		{
+			for(IConversion service : entry.getValue())
+			{
+				steps.add(new ConversionStep(service, entry.getKey().getInputModelFormat(), entry.getKey().getOutputModelFormat()));
+			}
+		}
+		return steps;
+	}
+
+}
@@ -0,0 +1,142 @@
+package org.geppetto.simulation.manager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import org.geppetto.core.common.GeppettoExecutionException;
+import org.geppetto.simulation.ICheckpointableSimulator;
+
+/**
+ * The checkpoint of a simulator in a folder. A checkpoint is written next to the previous one and replaces it only once complete, so that a crash
+ * while checkpointing leaves the previous checkpoint usable.
+ * 
+ */
+public class CheckpointStore
+{
+
+	private static final String COMPLETE_MARKER = ".complete";
+
+	private File folder;
+
+	/**
+	 * @param folder
+	 *            where the checkpoint is kept
+	 */
+	public CheckpointStore(File folder)
+	{
+		this.folder = folder;
+	}
+
+	/**
+	 * @return true if there is a complete checkpoint to resume from
+	 */
+	public boolean exists()
+	{
+		return new File(folder, COMPLETE_MARKER).exists();
+	}
+
+	/**
+	 * @param simulator
+	 * @throws GeppettoExecutionException
+	 */
+	public synchronized void write(ICheckpointableSimulator simulator) throws GeppettoExecutionException
+	{
+		File next = new File(folder.getParentFile(), folder.getName() + ".next");
+		File previous = new File(folder.getParentFile(), folder.getName() + ".previous");
+		try
+		{
+			delete(next);
+			if(!next.mkdirs())
+			{
+				throw new GeppettoExecutionException("Cannot create the checkpoint folder " + next);
+			}
+			simulator.checkpoint(next);
+			Files.createFile(new File(next, COMPLETE_MARKER).toPath());
+			delete(previous);
+			if(folder.exists())
+			{
+				Files.move(folder.toPath(), previous.toPath());
+			}
+			Files.move(next.toPath(), folder.toPath());
+			delete(previous);
+		}
+		catch(IOException e)
+		{
+			throw new GeppettoExecutionException(e);
+		}
+	}
+
+	/**
+	 * @param simulator
+	 * @return true if the simulator resumed from the checkpoint, false if there is none
+	 * @throws GeppettoExecutionException
+	 */
+	public synchronized boolean resume(ICheckpointableSimulator simulator) throws GeppettoExecutionException
+	{
+		if(!exists())
+		{
+			// the server might have stopped between the two moves of write
+			File previous = new File(folder.getParentFile(), folder.getName() + ".previous");
+			if(!new File(previous, COMPLETE_MARKER).exists())
+			{
+				return false;
+			}
+			try
+			{
+				delete(folder);
+				Files.move(previous.toPath(), folder.toPath());
+			}
+			catch(IOException e)
+			{
+				throw new GeppettoExecutionException(e);
+			}
+		}
+		simulator.resume(folder);
+		return true;
+	}
+
+	/**
+	 * Removes the checkpoint, e.g. because the run completed
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void clear() throws IOException
+	{
+		delete(new File(folder.getParentFile(), folder.getName() + ".next"));
+		delete(new File(folder.getParentFile(), folder.getName() + ".previous"));
+		delete(folder);
+	}
+
+	/**
+	 * @param file
+	 * @throws IOException
+	 */
+	private void delete(File file) throws IOException
+	{
+		if(file.exists())
+		{
+			Files.walkFileTree(file.toPath(), new SimpleFileVisitor<Path>()
+			{
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException
+				{
+					Files.delete(file);
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException
+				{
+					Files.delete(dir);
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		}
+	}
+
+}
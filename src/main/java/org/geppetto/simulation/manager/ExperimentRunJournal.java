@@ -0,0 +1,293 @@
+package org.geppetto.simulation.manager;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geppetto.core.data.model.IExperiment;
+
+/**
+ * An append-only log of the experiments the ExperimentRunManager is responsible for. An experiment is written when it is queued or starts running
+ * and again when it leaves the manager, so that at startup the experiments to recover can be found without scanning every user and project.
+ * 
+ * A journal which did not exist is only written once opened, i.e. after the scan which found the experiments to recover, so that a restart in
+ * the middle of that scan does not leave a journal missing some of them.
+ * 
+ */
+public class ExperimentRunJournal
+{
+
+	private static Log logger = LogFactory.getLog(ExperimentRunJournal.class);
+
+	// after this many entries the journal is rewritten with only the active ones
+	private static final int COMPACTION_THRESHOLD = 10000;
+
+	private static final String QUEUED = "Q";
+
+	private static final String RUNNING = "R";
+
+	private static final String DONE = "D";
+
+	private File journal;
+
+	private BufferedWriter writer;
+
+	private Map<String, Entry> activeEntries = new LinkedHashMap<String, Entry>();
+
+	private int entriesWritten = 0;
+
+	private boolean existed;
+
+	/**
+	 * An experiment the manager was still responsible for
+	 */
+	public static class Entry
+	{
+		private String login;
+		private long projectId;
+		private long experimentId;
+		private boolean running;
+
+		private Entry(String login, long projectId, long experimentId, boolean running)
+		{
+			this.login = login;
+			this.projectId = projectId;
+			this.experimentId = experimentId;
+			this.running = running;
+		}
+
+		public String getLogin()
+		{
+			return login;
+		}
+
+		public long getProjectId()
+		{
+			return projectId;
+		}
+
+		public long getExperimentId()
+		{
+			return experimentId;
+		}
+
+		/**
+		 * @return true if the experiment was running, false if it was queued
+		 */
+		public boolean isRunning()
+		{
+			return running;
+		}
+	}
+
+	/**
+	 * Reads what the journal already contains, see getActiveEntries. An existing journal is compacted and written from now on, a new one only
+	 * once opened.
+	 * 
+	 * @param journal
+	 * @throws IOException
+	 */
+	public ExperimentRunJournal(File journal) throws IOException
+	{
+		this.journal = journal;
+		existed = journal.exists();
+		if(existed)
+		{
+			try(BufferedReader reader = Files.newBufferedReader(journal.toPath(), StandardCharsets.UTF_8))
+			{
+				String line;
+				while((line = reader.readLine()) != null)
+				{
+					apply(line);
+				}
+			}
+			compact();
+		}
+	}
+
+	/**
+	 * Writes the experiments recorded so far and starts appending the next ones, to be called once every experiment to recover was recorded
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void open() throws IOException
+	{
+		if(writer == null)
+		{
+			compact();
+		}
+	}
+
+	/**
+	 * @return false if there was no journal to read, in which case the active entries are unknown rather than none
+	 */
+	public boolean existed()
+	{
+		return existed;
+	}
+
+	/**
+	 * @return the experiments which were queued or running when the journal was last written, in the order they were recorded
+	 */
+	public synchronized List<Entry> getActiveEntries()
+	{
+		return new ArrayList<Entry>(activeEntries.values());
+	}
+
+	/**
+	 * @param login
+	 * @param experiment
+	 */
+	public void experimentQueued(String login, IExperiment experiment)
+	{
+		write(QUEUED, login, experiment);
+	}
+
+	/**
+	 * @param login
+	 * @param experiment
+	 */
+	public void experimentRunning(String login, IExperiment experiment)
+	{
+		write(RUNNING, login, experiment);
+	}
+
+	/**
+	 * @param experiment
+	 */
+	public void experimentDone(IExperiment experiment)
+	{
+		write(DONE, "", experiment);
+	}
+
+	/**
+	 * Drops an experiment which cannot be found anymore
+	 * 
+	 * @param projectId
+	 * @param experimentId
+	 */
+	public void experimentDone(long projectId, long experimentId)
+	{
+		write(DONE + "," + projectId + "," + experimentId + ",");
+	}
+
+	/**
+	 * 
+	 */
+	public synchronized void close()
+	{
+		try
+		{
+			if(writer != null)
+			{
+				writer.close();
+				writer = null;
+			}
+		}
+		catch(IOException e)
+		{
+			logger.error("Unable to close the experiment run journal " + journal, e);
+		}
+	}
+
+	/**
+	 * @param type
+	 * @param login
+	 * @param experiment
+	 */
+	private synchronized void write(String type, String login, IExperiment experiment)
+	{
+		if(experiment.getParentProject().isVolatile())
+		{
+			// volatile projects do not survive a restart
+			return;
+		}
+		write(type + "," + experiment.getParentProject().getId() + "," + experiment.getId() + "," + (login != null ? login : ""));
+	}
+
+	/**
+	 * @param line
+	 */
+	private synchronized void write(String line)
+	{
+		apply(line);
+		if(writer == null)
+		{
+			return;
+		}
+		try
+		{
+			writer.write(line);
+			writer.newLine();
+			writer.flush();
+			if(++entriesWritten > COMPACTION_THRESHOLD)
+			{
+				compact();
+			}
+		}
+		catch(IOException e)
+		{
+			// losing the journal only means a slower recovery, it must not stop the experiments
+			logger.error("Unable to write to the experiment run journal " + journal, e);
+		}
+	}
+
+	/**
+	 * @param line
+	 */
+	private void apply(String line)
+	{
+		String[] fields = line.split(",", 4);
+		if(fields.length < 3)
+		{
+			return;
+		}
+		String key = fields[1] + "," + fields[2];
+		if(fields[0].equals(DONE))
+		{
+			activeEntries.remove(key);
+		}
+		else
+		{
+			Entry previous = activeEntries.remove(key);
+			String login = fields.length > 3 && !fields[3].isEmpty() ? fields[3] : (previous != null ? previous.login : null);
+			activeEntries.put(key, new Entry(login, Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[0].equals(RUNNING)));
+		}
+	}
+
+	/**
+	 * Rewrites the journal with only the active entries
+	 * 
+	 * @throws IOException
+	 */
+	private synchronized void compact() throws IOException
+	{
+		close();
+		journal.getParentFile().mkdirs();
+		File compacted = new File(journal.getParentFile(), journal.getName() + ".tmp");
+		try(BufferedWriter compactedWriter = Files.newBufferedWriter(compacted.toPath(), StandardCharsets.UTF_8))
+		{
+			for(Map.Entry<String, Entry> active : activeEntries.entrySet())
+			{
+				Entry entry = active.getValue();
+				compactedWriter.write((entry.running ? RUNNING : QUEUED) + "," + active.getKey() + "," + (entry.login != null ? entry.login : ""));
+				compactedWriter.newLine();
+			}
+		}
+		Files.move(compacted.toPath(), journal.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		writer = Files.newBufferedWriter(journal.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		entriesWritten = 0;
+	}
+
+}
@@ -1,17 +1,30 @@
 
 package org.geppetto.simulation.manager;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -25,7 +38,27 @@ import org.geppetto.core.data.model.IGeppettoProject;
 import org.geppetto.core.data.model.IUser;
 import org.geppetto.core.manager.Scope;
 import org.geppetto.core.simulation.IGeppettoManagerCallbackListener;
+import org.geppetto.simulation.AppConfig;
 import org.geppetto.simulation.IExperimentListener;
+import org.geppetto.simulation.IStepConsumer;
+import org.geppetto.simulation.StepBatch;
+import org.geppetto.simulation.cluster.ClusterCoordinator;
+import org.geppetto.simulation.cluster.ICoordinatorListener;
+import org.geppetto.simulation.cluster.IRunCallback;
+import org.geppetto.simulation.cluster.RunAssignment;
+import org.geppetto.simulation.conversion.ConversionCache;
+import org.geppetto.simulation.conversion.ConversionPlanner;
+import org.geppetto.simulation.conversion.RegistryConversionGraph;
+import org.geppetto.simulation.scheduler.DataManagerExperimentResolver;
+import org.geppetto.simulation.scheduler.DeficitRoundRobinSchedulingPolicy;
+import org.geppetto.simulation.scheduler.IExperimentResolver;
+import org.geppetto.simulation.scheduler.IExperimentSchedulingPolicy;
+import org.geppetto.simulation.scheduler.IProjectAdmission;
+import org.geppetto.simulation.scheduler.SpillableExperimentQueue;
+import org.geppetto.simulation.scheduler.UserWaitStatistics;
+import org.geppetto.simulation.worker.ForkedWorkerPool;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.context.support.SpringBeanAutowiringSupport;
 
 /**
  * The ExperimentRunManager is a singleton responsible for managing a queue per each user to run the experiments.
@@ -37,19 +70,143 @@ import org.geppetto.simulation.IExperimentListener;
 public class ExperimentRunManager implements IExperimentListener
 {
 
-	private Map<IUser, BlockingQueue<IExperiment>> queue;
+	private static Log logger = LogFactory.getLog(ExperimentRunManager.class);
+
+	// used when the manager is created outside of a Spring context, e.g. in the tests
+	private static final int DEFAULT_SIMULATION_CAPACITY = 10;
+
+	private static final int DEFAULT_QUEUE_MEMORY_CAPACITY = 100;
+
+	private static final int DEFAULT_EXPERIMENTS_PER_PROJECT_CAPACITY = 1;
+
+	private static final long DEFAULT_CANCELLATION_GRACE_PERIOD = 10000;
+
+	private static final long DEFAULT_RUNTIME_PROJECTS_MEMORY_BUDGET = 512L * 1024 * 1024;
+
+	private static final long DEFAULT_RUNTIME_PROJECTS_TIME_TO_LIVE = 10 * 60 * 1000;
+
+	private static final long RUNTIME_PROJECTS_EVICTION_PERIOD = 60 * 1000;
+
+	private static final long DEFAULT_CONVERSION_CACHE_DISK_SPACE = 1024L * 1024 * 1024;
+
+	// in the home folder of the user running the server, where the state which has to survive a restart is kept
+	private static final String DEFAULT_STATE_FOLDER = ".geppetto";
+
+	private static final int DEFAULT_STEP_BUFFER_CAPACITY = 500;
+
+	private static final long DEFAULT_CHECKPOINT_INTERVAL = 15 * 60 * 1000;
+
+	private static final long DEFAULT_EXPERIMENT_TIMEOUT = 24 * 60 * 60 * 1000;
+
+	private static final long DEFAULT_SIMULATOR_STALL_TIMEOUT = 10 * 60 * 1000;
+
+	// how often the running experiments are checked against their limits
+	private static final long WATCHDOG_PERIOD = 10 * 1000;
+
+	// milliseconds between two deliveries of the steps to the consumers
+	private static final long DEFAULT_UPDATE_CYCLE = 20;
+
+	@Autowired(required = false)
+	private AppConfig appConfig;
+
+	private Map<IUser, SpillableExperimentQueue> queue;
+
+	private int queueMemoryCapacity;
+
+	private File queueJournalFolder;
+
+	private IExperimentResolver experimentResolver = new DataManagerExperimentResolver();
+
+	private File runJournalFile;
+
+	private ExperimentRunJournal runJournal;
+
+	private Thread recoveryThread;
 
 	private GeppettoManager geppettoManager;
 
 	private volatile int reqId = 0;
 
-	private Timer timer;
+	private ExperimentRunDispatcher dispatcher;
+
+	private ThreadPoolExecutor experimentRunExecutor;
+
+	private SimulatorExecutor simulatorExecutor;
+
+	private ThreadPoolExecutor resultsUploadExecutor;
+
+	// null unless the simulators which support it are executed in worker JVMs
+	private volatile ForkedWorkerPool workerPool;
+
+	private int stepBufferCapacity;
+
+	// how long the experiments about to run waited in the queue
+	private Map<String, Long> queueWaits = new ConcurrentHashMap<String, Long>();
+
+	private File runMetricsFolder;
+
+	// the checkpoints of the running experiments, outside the temporary folders of the projects which are deleted when they are closed
+	private File checkpointFolder;
+
+	// the checkpoints can take long, they don't hold up the timer
+	private ScheduledExecutorService checkpointTimer;
+
+	private long checkpointInterval;
+
+	private long experimentTimeout;
+
+	private long simulatorTimeout;
+
+	private long simulatorStallTimeout;
+
+	private Map<String, List<IStepConsumer>> stepConsumers = new ConcurrentHashMap<String, List<IStepConsumer>>();
+
+	private volatile int aspectInitParallelism;
+
+	private volatile ConversionCache conversionCache;
+
+	// shared so that the plans and the conversion timings outlive the single runs
+	private ConversionPlanner conversionPlanner = new ConversionPlanner(new RegistryConversionGraph());
+
+	// the experiments running against the simulation capacity
+	private ExperimentRunSlots slots;
+
+	private IExperimentSchedulingPolicy schedulingPolicy = new DeficitRoundRobinSchedulingPolicy();
+
+	private Map<String, Integer> experimentPriorities = new ConcurrentHashMap<>();
+
+	// the weights set so far, a new scheduling policy starts with them
+	private Map<String, Integer> userWeights = new ConcurrentHashMap<>();
+
+	private Map<String, UserWaitStatistics> waitStatistics = new ConcurrentHashMap<>();
 
 	private IGeppettoManagerCallbackListener geppettoManagerCallbackListener;
 
-	private Map<IGeppettoProject, Integer> experimentsCounter = new ConcurrentHashMap<>();
+	// by project id
+	private Map<Long, Integer> experimentsCounter = new ConcurrentHashMap<>();
+
+	private RuntimeProjectPool runtimeProjects;
+
+	private volatile int experimentsPerProjectCapacity;
+
+	private Map<String, ExperimentRunThread> experimentRuns = new ConcurrentHashMap<>();
+
+	private ScheduledExecutorService timer;
 
-	private Set<IGeppettoProject> projectsRunning = new HashSet<IGeppettoProject>();
+	// the steps are delivered every few milliseconds, a slow consumer must not delay the watchdog and the eviction on the timer
+	private ScheduledExecutorService stepDeliveryTimer;
+
+	private volatile long cancellationGracePeriod;
+
+	// set when the experiments run on the nodes of a cluster rather than in this server
+	private volatile ClusterCoordinator clusterCoordinator;
+
+	private Map<Long, IExperiment> clusterRuns = new ConcurrentHashMap<Long, IExperiment>();
+
+	private Map<String, String> clusterOwners = new ConcurrentHashMap<String, String>();
+
+	// the runs assigned to this server by a cluster coordinator
+	private Map<String, IRunCallback> runCallbacks = new ConcurrentHashMap<String, IRunCallback>();
 
 	private static ExperimentRunManager instance = null;
 
@@ -65,6 +222,18 @@ public class ExperimentRunManager implements IExperimentListener
 		return instance;
 	}
 
+	/**
+	 * Stops the manager if it was ever started, a later getInstance starts a new one
+	 */
+	public static synchronized void shutdownInstance()
+	{
+		if(instance != null)
+		{
+			instance.shutdown();
+			instance = null;
+		}
+	}
+
 	/**
 	 * 
 	 */
@@ -73,30 +242,815 @@ public class ExperimentRunManager implements IExperimentListener
 		if(instance == null)
 		{
 			instance = this;
+			SpringBeanAutowiringSupport.processInjectionBasedOnCurrentContext(this);
 			queue = new ConcurrentHashMap<>();
+			String stateFolderPath = appConfig != null ? appConfig.getStateFolder() : null;
+			File stateFolder = stateFolderPath != null && !stateFolderPath.isEmpty() ? new File(stateFolderPath) : new File(System.getProperty("user.home"), DEFAULT_STATE_FOLDER);
+			queueJournalFolder = new File(stateFolder, "queues");
+			runJournalFile = new File(stateFolder, "experimentRuns.journal");
+			runMetricsFolder = new File(stateFolder, "runMetrics");
+			checkpointFolder = new File(stateFolder, "checkpoints");
 			geppettoManager = new GeppettoManager(Scope.RUN);
+			long memoryBudget = appConfig != null && appConfig.getRuntimeProjectsMemoryBudget() > 0 ? appConfig.getRuntimeProjectsMemoryBudget() : DEFAULT_RUNTIME_PROJECTS_MEMORY_BUDGET;
+			long timeToLive = appConfig != null && appConfig.getRuntimeProjectsTimeToLive() > 0 ? appConfig.getRuntimeProjectsTimeToLive() : DEFAULT_RUNTIME_PROJECTS_TIME_TO_LIVE;
+			runtimeProjects = new RuntimeProjectPool(geppettoManager, memoryBudget, timeToLive);
+			int simulationCapacity = appConfig != null && appConfig.getSimulationCapacity() > 0 ? appConfig.getSimulationCapacity() : DEFAULT_SIMULATION_CAPACITY;
+			slots = new ExperimentRunSlots(simulationCapacity);
+			experimentsPerProjectCapacity = appConfig != null && appConfig.getExperimentsPerProjectCapacity() > 0 ? appConfig.getExperimentsPerProjectCapacity()
+					: DEFAULT_EXPERIMENTS_PER_PROJECT_CAPACITY;
+			queueMemoryCapacity = appConfig != null && appConfig.getQueueMemoryCapacity() > 0 ? appConfig.getQueueMemoryCapacity() : DEFAULT_QUEUE_MEMORY_CAPACITY;
+			cancellationGracePeriod = appConfig != null && appConfig.getCancellationGracePeriod() > 0 ? appConfig.getCancellationGracePeriod() : DEFAULT_CANCELLATION_GRACE_PERIOD;
+			experimentRunExecutor = new ThreadPoolExecutor(simulationCapacity, simulationCapacity, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+			{
+				private AtomicInteger threadCount = new AtomicInteger(0);
+
+				@Override
+				public Thread newThread(Runnable runnable)
+				{
+					Thread thread = new Thread(runnable, "ExperimentRun-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			// idle workers are released, an idle server holds no experiment threads
+			experimentRunExecutor.allowCoreThreadTimeOut(true);
+			// every running experiment can have at least one simulator executing
+			int simulatorThreads = appConfig != null && appConfig.getSimulatorThreads() > 0 ? appConfig.getSimulatorThreads() : Math.max(simulationCapacity, Runtime.getRuntime()
+					.availableProcessors());
+			simulatorExecutor = new SimulatorExecutor(simulatorThreads);
+			int resultsUploadThreads = appConfig != null && appConfig.getResultsUploadThreads() > 0 ? appConfig.getResultsUploadThreads() : 4;
+			resultsUploadExecutor = new ThreadPoolExecutor(resultsUploadThreads, resultsUploadThreads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+			{
+				private AtomicInteger threadCount = new AtomicInteger(0);
+
+				@Override
+				public Thread newThread(Runnable runnable)
+				{
+					Thread thread = new Thread(runnable, "ResultsUpload-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			resultsUploadExecutor.allowCoreThreadTimeOut(true);
+			if(appConfig != null && appConfig.getSimulatorWorkers() > 0)
+			{
+				String classpath = appConfig.getSimulatorWorkerClasspath();
+				if(classpath != null && !classpath.isEmpty())
+				{
+					workerPool = new ForkedWorkerPool(appConfig.getSimulatorWorkers(), appConfig.getSimulatorWorkerHeap(), classpath);
+				}
+				else
+				{
+					// the classpath of this JVM is the one of the OSGi launcher, the workers could not load the jobs
+					logger.error("simulatorWorkers is set but simulatorWorkerClasspath is not, the simulators are executed in the server JVM");
+				}
+			}
+			aspectInitParallelism = appConfig != null && appConfig.getAspectInitParallelism() > 0 ? appConfig.getAspectInitParallelism() : 1;
+			if(appConfig != null && appConfig.getConversionCacheMemory() > 0)
+			{
+				String folder = appConfig.getConversionCacheFolder();
+				long diskSpace = appConfig.getConversionCacheDiskSpace() > 0 ? appConfig.getConversionCacheDiskSpace() : DEFAULT_CONVERSION_CACHE_DISK_SPACE;
+				conversionCache = new ConversionCache(appConfig.getConversionCacheMemory(), folder != null && !folder.isEmpty() ? new File(folder) : null, diskSpace);
+			}
+			timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable runnable)
+				{
+					Thread thread = new Thread(runnable, "ExperimentRunTimer");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			timer.scheduleWithFixedDelay(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					runtimeProjects.evictExpired();
+				}
+			}, RUNTIME_PROJECTS_EVICTION_PERIOD, RUNTIME_PROJECTS_EVICTION_PERIOD, TimeUnit.MILLISECONDS);
+			checkpointInterval = appConfig != null && appConfig.getCheckpointInterval() > 0 ? appConfig.getCheckpointInterval() : DEFAULT_CHECKPOINT_INTERVAL;
+			checkpointTimer = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable runnable)
+				{
+					Thread thread = new Thread(runnable, "ExperimentCheckpoint");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			// negative values disable the limits, 0 in the configuration means the default for the experiment and the stall timeouts
+			experimentTimeout = appConfig != null && appConfig.getExperimentTimeout() != 0 ? appConfig.getExperimentTimeout() : DEFAULT_EXPERIMENT_TIMEOUT;
+			simulatorTimeout = appConfig != null ? appConfig.getSimulatorTimeout() : 0;
+			simulatorStallTimeout = appConfig != null && appConfig.getSimulatorStallTimeout() != 0 ? appConfig.getSimulatorStallTimeout() : DEFAULT_SIMULATOR_STALL_TIMEOUT;
+			timer.scheduleWithFixedDelay(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					abortStalledRuns();
+				}
+			}, WATCHDOG_PERIOD, WATCHDOG_PERIOD, TimeUnit.MILLISECONDS);
+			stepBufferCapacity = appConfig != null && appConfig.getMaxBufferSize() > 0 ? appConfig.getMaxBufferSize() : DEFAULT_STEP_BUFFER_CAPACITY;
+			long updateCycle = appConfig != null && appConfig.getUpdateCycle() > 0 ? appConfig.getUpdateCycle() : DEFAULT_UPDATE_CYCLE;
+			stepDeliveryTimer = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable runnable)
+				{
+					Thread thread = new Thread(runnable, "ExperimentStepDelivery");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			stepDeliveryTimer.scheduleWithFixedDelay(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					deliverSteps();
+				}
+			}, updateCycle, updateCycle, TimeUnit.MILLISECONDS);
+			boolean journalAvailable = false;
 			try
 			{
-				loadExperiments();
-				timer = new Timer("ExperimentRunChecker");
-				timer.schedule(new ExperimentRunChecker(), 0, 1000);
+				runJournal = new ExperimentRunJournal(runJournalFile);
+				journalAvailable = runJournal.existed();
 			}
-			catch(GeppettoInitializationException | GeppettoExecutionException | MalformedURLException e)
+			catch(IOException e)
 			{
-				throw new RuntimeException(e);
+				logger.error("Unable to open the experiment run journal " + runJournalFile + ", recovering from a full scan", e);
 			}
+			final List<ExperimentRunJournal.Entry> journalEntries = journalAvailable ? runJournal.getActiveEntries() : null;
+			// new experiments are accepted right away, the ones left from a previous run are queued as they are found
+			dispatcher = new ExperimentRunDispatcher(this);
+			dispatcher.start();
+			recoveryThread = new Thread("ExperimentRecovery")
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						if(journalEntries != null)
+						{
+							recoverExperiments(journalEntries);
+						}
+						else
+						{
+							loadExperiments();
+							if(runJournal != null)
+							{
+								// only now the journal knows every experiment to recover, a restart before this scans again
+								runJournal.open();
+							}
+						}
+					}
+					catch(Exception e)
+					{
+						logger.error("Error recovering the queued and running experiments", e);
+					}
+					finally
+					{
+						wakeUpDispatcher();
+					}
+				}
+			};
+			recoveryThread.setDaemon(true);
+			recoveryThread.start();
+		}
+	}
+
+	/**
+	 * @param user
+	 * @param experiment
+	 */
+	public synchronized void queueExperiment(IUser user, IExperiment experiment)
+	{
+		experiment.setStatus(ExperimentStatus.QUEUED);
+
+		addExperimentToQueue(user, experiment, ExperimentStatus.QUEUED);
+		wakeUpDispatcher();
+	}
+
+	/**
+	 * Queues the experiments all at once, the dispatcher cannot start any of them before all are queued
+	 * 
+	 * @param user
+	 * @param experiments
+	 */
+	public synchronized void queueExperiments(IUser user, List<IExperiment> experiments)
+	{
+		for(IExperiment experiment : experiments)
+		{
+			experiment.setStatus(ExperimentStatus.QUEUED);
+			addExperimentToQueue(user, experiment, ExperimentStatus.QUEUED);
+		}
+		wakeUpDispatcher();
+	}
+
+	/**
+	 * Queues an experiment the cluster coordinator assigned to this server, it runs here even if this server coordinates a cluster too
+	 * 
+	 * @param user
+	 * @param experiment
+	 * @param callback
+	 *            notified once the run is over
+	 */
+	public synchronized void runAssigned(IUser user, IExperiment experiment, IRunCallback callback)
+	{
+		runCallbacks.put(getRunKey(experiment), callback);
+		queueExperiment(user, experiment);
+	}
+
+	/**
+	 * @param experiment
+	 * @param completed
+	 */
+	private void notifyRunCallback(IExperiment experiment, boolean completed)
+	{
+		IRunCallback callback = runCallbacks.remove(getRunKey(experiment));
+		if(callback != null)
+		{
+			callback.finished(completed);
+		}
+	}
+
+	/**
+	 * The experiments are tracked by their identifiers rather than by instance, since the same experiment can be loaded more than once, e.g. the
+	 * experiments read back from the spill journal of a queue are new instances.
+	 * 
+	 * @param experiment
+	 * @return
+	 */
+	private static String getRunKey(IExperiment experiment)
+	{
+		return experiment.getParentProject().getId() + "," + experiment.getId();
+	}
+
+	/**
+	 * Signals the dispatcher that something changed which might allow a queued experiment to start, i.e. a new experiment was queued, a run
+	 * completed or an experiment was cancelled.
+	 */
+	void wakeUpDispatcher()
+	{
+		if(dispatcher != null)
+		{
+			dispatcher.wakeUp();
+		}
+	}
+
+	/**
+	 * @return true if a new experiment can be admitted without exceeding the simulation capacity
+	 */
+	boolean hasFreeCapacity()
+	{
+		ClusterCoordinator coordinator = clusterCoordinator;
+		if(coordinator != null)
+		{
+			return coordinator.hasFreeCapacity() || (!runCallbacks.isEmpty() && hasFreeLocalCapacity());
+		}
+		return hasFreeLocalCapacity();
+	}
+
+	/**
+	 * @return true if this server can start one more experiment, the runs dispatched to the cluster do not count
+	 */
+	private boolean hasFreeLocalCapacity()
+	{
+		return slots.hasFree(clusterRuns.size());
+	}
+
+	/**
+	 * @param experiment
+	 * @return true if the experiment was assigned to this server by a cluster coordinator, it never goes back to the cluster
+	 */
+	private boolean isAssigned(IExperiment experiment)
+	{
+		return runCallbacks.containsKey(getRunKey(experiment));
+	}
+
+	/**
+	 * @param experiment
+	 * @return true if there is a slot for the experiment, here or in the cluster
+	 */
+	private boolean canDispatch(IExperiment experiment)
+	{
+		ClusterCoordinator coordinator = clusterCoordinator;
+		if(coordinator == null || isAssigned(experiment))
+		{
+			return hasFreeLocalCapacity();
+		}
+		return coordinator.hasFreeCapacity();
+	}
+
+	/**
+	 * Changes the maximum number of experiments which can run concurrently. Lowering the capacity does not stop experiments already running, new
+	 * experiments are admitted only once the running ones drop below the new capacity.
+	 * 
+	 * @param capacity
+	 */
+	public synchronized void setSimulationCapacity(int capacity)
+	{
+		int previous = slots.getCapacity();
+		slots.setCapacity(capacity);
+		logger.info("Simulation capacity changed from " + previous + " to " + capacity);
+		resizeExecutor();
+		wakeUpDispatcher();
+	}
+
+	/**
+	 * Sizes the pool of workers to the simulation capacity plus the workers still held by abandoned runs
+	 */
+	private synchronized void resizeExecutor()
+	{
+		int size = slots.getWorkers();
+		// the maximum pool size can never be smaller than the core pool size
+		if(size > experimentRunExecutor.getMaximumPoolSize())
+		{
+			experimentRunExecutor.setMaximumPoolSize(size);
+			experimentRunExecutor.setCorePoolSize(size);
+		}
+		else
+		{
+			experimentRunExecutor.setCorePoolSize(size);
+			experimentRunExecutor.setMaximumPoolSize(size);
+		}
+	}
+
+	/**
+	 * @param parallelism
+	 *            how many aspects of an experiment can be converted and initialized at the same time, 1 to initialize them one after the other
+	 */
+	public void setAspectInitParallelism(int parallelism)
+	{
+		if(parallelism < 1)
+		{
+			throw new IllegalArgumentException("The aspect initialization parallelism has to be at least 1, was " + parallelism);
 		}
+		aspectInitParallelism = parallelism;
+	}
+
+	/**
+	 * @return
+	 */
+	public int getAspectInitParallelism()
+	{
+		return aspectInitParallelism;
+	}
+
+	/**
+	 * @param conversionCache
+	 *            where the converted models are kept for the next runs, null to disable the cache
+	 */
+	public void setConversionCache(ConversionCache conversionCache)
+	{
+		this.conversionCache = conversionCache;
+	}
+
+	/**
+	 * @return the cache of the converted models, null if disabled
+	 */
+	public ConversionCache getConversionCache()
+	{
+		return conversionCache;
+	}
+
+	/**
+	 * Registers a consumer of the steps of a running experiment, they are delivered every update cycle until the run is over
+	 * 
+	 * @param experiment
+	 * @param consumer
+	 */
+	public void addStepConsumer(IExperiment experiment, IStepConsumer consumer)
+	{
+		String runKey = getRunKey(experiment);
+		synchronized(stepConsumers)
+		{
+			if(!stepConsumers.containsKey(runKey))
+			{
+				stepConsumers.put(runKey, new CopyOnWriteArrayList<IStepConsumer>());
+			}
+			stepConsumers.get(runKey).add(consumer);
+		}
+	}
+
+	/**
+	 * @param experiment
+	 * @param consumer
+	 */
+	public void removeStepConsumer(IExperiment experiment, IStepConsumer consumer)
+	{
+		List<IStepConsumer> consumers = stepConsumers.get(getRunKey(experiment));
+		if(consumers != null)
+		{
+			consumers.remove(consumer);
+		}
+	}
+
+	/**
+	 * The steps returned are not delivered to the registered consumers
+	 * 
+	 * @param experiment
+	 * @return the steps of a running experiment processed since the last poll, empty if the experiment is not running
+	 */
+	public List<StepBatch> pollExperimentSteps(IExperiment experiment)
+	{
+		ExperimentRunThread experimentRun = experimentRuns.get(getRunKey(experiment));
+		if(experimentRun == null)
+		{
+			return new ArrayList<StepBatch>();
+		}
+		return experimentRun.pollSteps();
+	}
+
+	/**
+	 * Delivers the buffered steps of the running experiments to their consumers
+	 */
+	private void deliverSteps()
+	{
+		for(String runKey : stepConsumers.keySet())
+		{
+			ExperimentRunThread experimentRun = experimentRuns.get(runKey);
+			if(experimentRun != null)
+			{
+				deliverSteps(experimentRun.getExperiment(), experimentRun);
+			}
+		}
+	}
+
+	/**
+	 * @param experiment
+	 * @param experimentRun
+	 */
+	private void deliverSteps(IExperiment experiment, ExperimentRunThread experimentRun)
+	{
+		List<IStepConsumer> consumers = stepConsumers.get(getRunKey(experiment));
+		if(consumers == null || consumers.isEmpty())
+		{
+			return;
+		}
+		List<StepBatch> batches = experimentRun.pollSteps();
+		if(!batches.isEmpty())
+		{
+			for(IStepConsumer consumer : consumers)
+			{
+				try
+				{
+					consumer.stepsAvailable(experiment, batches);
+				}
+				catch(RuntimeException e)
+				{
+					// a failing client doesn't stop the delivery to the others
+					logger.error("Error delivering the steps of experiment " + experiment.getId(), e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param experiment
+	 * @return the resources used by the experiment run as JSON, while it runs or after it ran, null if it never ran on this server
+	 */
+	public String getExperimentRunMetrics(IExperiment experiment)
+	{
+		ExperimentRunThread experimentRun = experimentRuns.get(getRunKey(experiment));
+		if(experimentRun != null)
+		{
+			return experimentRun.getMetrics().toJson();
+		}
+		File metricsFile = new File(runMetricsFolder, experiment.getId() + ".json");
+		if(metricsFile.exists())
+		{
+			try
+			{
+				return new String(Files.readAllBytes(metricsFile.toPath()), StandardCharsets.UTF_8);
+			}
+			catch(IOException e)
+			{
+				logger.error("Unable to read the run metrics of experiment " + experiment.getId(), e);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Keeps the metrics of a finished run next to the run journal. They are in the state folder of this server, IExperiment has no field to
+	 * persist them with the experiment, so the other servers of a cluster don't see them.
+	 * 
+	 * @param metrics
+	 */
+	private void saveRunMetrics(ExperimentRunMetrics metrics)
+	{
+		String json = metrics.toJson();
+		logger.info("Experiment run metrics " + json);
+		try
+		{
+			Files.createDirectories(runMetricsFolder.toPath());
+			Files.write(new File(runMetricsFolder, metrics.getExperimentId() + ".json").toPath(), json.getBytes(StandardCharsets.UTF_8));
+		}
+		catch(IOException e)
+		{
+			logger.error("Unable to save the run metrics of experiment " + metrics.getExperimentId(), e);
+		}
+	}
+
+	/**
+	 * @return the pool of worker JVMs, null if all the simulators are executed in the server JVM
+	 */
+	public ForkedWorkerPool getWorkerPool()
+	{
+		return workerPool;
+	}
+
+	/**
+	 * @param workerPool
+	 *            where the simulators which support it are executed, null to execute all of them in the server JVM
+	 */
+	public void setWorkerPool(ForkedWorkerPool workerPool)
+	{
+		this.workerPool = workerPool;
+	}
+
+	/**
+	 * @return the coordinator the experiments are dispatched to, null if they run in this server
+	 */
+	public ClusterCoordinator getClusterCoordinator()
+	{
+		return clusterCoordinator;
+	}
+
+	/**
+	 * The queues and the scheduling stay in this server, the experiments chosen to start are assigned to the nodes of the cluster according to
+	 * the capacity they report rather than run here.
+	 * 
+	 * @param coordinator
+	 */
+	public void setClusterCoordinator(ClusterCoordinator coordinator)
+	{
+		coordinator.setListener(new ICoordinatorListener()
+		{
+			@Override
+			public void runFinished(RunAssignment assignment, boolean completed)
+			{
+				clusterRunFinished(assignment, completed);
+			}
+
+			@Override
+			public void capacityAvailable()
+			{
+				wakeUpDispatcher();
+			}
+		});
+		this.clusterCoordinator = coordinator;
+		wakeUpDispatcher();
+	}
+
+	/**
+	 * @return the planner of the conversions between model interpreter and simulator formats
+	 */
+	public ConversionPlanner getConversionPlanner()
+	{
+		return conversionPlanner;
+	}
+
+	/**
+	 * @return the executor the simulators of the running experiments are executed on
+	 */
+	public SimulatorExecutor getSimulatorExecutor()
+	{
+		return simulatorExecutor;
+	}
+
+	/**
+	 * @return the pool of the runtime projects used by the running experiments and kept warm for the next runs
+	 */
+	public RuntimeProjectPool getRuntimeProjectPool()
+	{
+		return runtimeProjects;
+	}
+
+	/**
+	 * @param gracePeriod
+	 *            milliseconds a cancelled experiment has to stop before its slot is given to the next experiment
+	 */
+	public void setCancellationGracePeriod(long gracePeriod)
+	{
+		if(gracePeriod < 0)
+		{
+			throw new IllegalArgumentException("The cancellation grace period cannot be negative, was " + gracePeriod);
+		}
+		cancellationGracePeriod = gracePeriod;
+	}
+
+	/**
+	 * @return
+	 */
+	public long getCancellationGracePeriod()
+	{
+		return cancellationGracePeriod;
+	}
+
+	/**
+	 * Changes how many experiments of the same project can run at the same time, each one of them holds its own copy of the project's model
+	 * 
+	 * @param capacity
+	 */
+	public void setExperimentsPerProjectCapacity(int capacity)
+	{
+		if(capacity < 1)
+		{
+			throw new IllegalArgumentException("The experiments per project capacity has to be at least 1, was " + capacity);
+		}
+		experimentsPerProjectCapacity = capacity;
+		wakeUpDispatcher();
+	}
+
+	/**
+	 * @return how many experiments of the same project can run at the same time
+	 */
+	public int getExperimentsPerProjectCapacity()
+	{
+		return experimentsPerProjectCapacity;
+	}
+
+	/**
+	 * @return the maximum number of experiments which can run concurrently
+	 */
+	public int getSimulationCapacity()
+	{
+		return slots.getCapacity();
+	}
+
+	/**
+	 * @return the number of experiments currently running
+	 */
+	public int getRunningExperimentsCount()
+	{
+		return slots.getRunning();
+	}
+
+	/**
+	 * @return the number of cancelled runs whose slot was given back while they were still terminating
+	 */
+	public int getAbandonedRunsCount()
+	{
+		return slots.getAbandoned();
+	}
+
+	/**
+	 * @return the highest number of experiments which were running at the same time since the manager was started
+	 */
+	public int getPeakRunningExperimentsCount()
+	{
+		return slots.getPeak();
+	}
+
+	/**
+	 * 
+	 */
+	private void increaseRunningExperiments()
+	{
+		int running = slots.acquire();
+		logger.info("Running experiments " + running + "/" + slots.getCapacity() + ", peak " + slots.getPeak());
+	}
+
+	/**
+	 * Removes from the queues the experiment which should start next. Every user proposes its highest priority experiment which can run, the oldest
+	 * one in case of a tie, and the scheduling policy picks among the users.
+	 * 
+	 * @return the experiment to run, null if none of the queued experiments can run
+	 */
+	synchronized IExperiment pollNextExperiment()
+	{
+		Map<String, IUser> users = new HashMap<String, IUser>();
+		Map<String, IExperiment> candidates = new LinkedHashMap<String, IExperiment>();
+		for(IUser user : queue.keySet())
+		{
+			IExperiment best = null;
+			for(IExperiment e : queue.get(user))
+			{
+				try
+				{
+					if(checkExperiment(e) && canDispatch(e) && (best == null || getExperimentPriority(e) > getExperimentPriority(best)))
+					{
+						best = e;
+					}
+				}
+				catch(GeppettoInitializationException ex)
+				{
+					logger.error(ex);
+				}
+			}
+			if(best != null)
+			{
+				users.put(user.getLogin(), user);
+				candidates.put(user.getLogin(), best);
+			}
+		}
+		String login = schedulingPolicy.selectUser(new ArrayList<String>(candidates.keySet()));
+		if(login == null)
+		{
+			return null;
+		}
+		IExperiment next = candidates.get(login);
+		SpillableExperimentQueue userExperiments = queue.get(users.get(login));
+		Long since = userExperiments.getQueuedSince(next);
+		userExperiments.remove(next);
+		experimentPriorities.remove(getRunKey(next));
+		if(clusterCoordinator != null && !isAssigned(next))
+		{
+			clusterOwners.put(getRunKey(next), login);
+		}
+		if(since != null)
+		{
+			long wait = System.currentTimeMillis() - since;
+			getWaitStatistics(login).experimentStarted(wait);
+			queueWaits.put(getRunKey(next), wait);
+		}
+		return next;
+	}
+
+	/**
+	 * @param policy
+	 *            the policy used to decide which user gets the next free slot
+	 */
+	public synchronized void setSchedulingPolicy(IExperimentSchedulingPolicy policy)
+	{
+		for(Map.Entry<String, Integer> weight : userWeights.entrySet())
+		{
+			policy.setUserWeight(weight.getKey(), weight.getValue());
+		}
+		this.schedulingPolicy = policy;
+		wakeUpDispatcher();
+	}
+
+	/**
+	 * @return
+	 */
+	public IExperimentSchedulingPolicy getSchedulingPolicy()
+	{
+		return schedulingPolicy;
+	}
+
+	/**
+	 * @param login
+	 * @param weight
+	 *            the share of the simulation slots the user is entitled to relative to the other users, kept when the scheduling policy is replaced
+	 */
+	public synchronized void setUserWeight(String login, int weight)
+	{
+		schedulingPolicy.setUserWeight(login, weight);
+		userWeights.put(login, weight);
+	}
+
+	/**
+	 * Experiments with a higher priority start before the other experiments of the same user, the default priority is 0. Only the experiments in
+	 * the memory of the queue of the user compete on their priority, the ones spilled to its journal are promoted in the order they were queued
+	 * and compete once they are back in memory.
+	 * 
+	 * @param experiment
+	 * @param priority
+	 */
+	public void setExperimentPriority(IExperiment experiment, int priority)
+	{
+		experimentPriorities.put(getRunKey(experiment), priority);
+		wakeUpDispatcher();
+	}
+
+	/**
+	 * @param experiment
+	 * @return
+	 */
+	public int getExperimentPriority(IExperiment experiment)
+	{
+		Integer priority = experimentPriorities.get(getRunKey(experiment));
+		return priority != null ? priority : 0;
 	}
 
 	/**
-	 * @param user
-	 * @param experiment
+	 * @return how long the experiments of each user waited in the queue, by user login
 	 */
-	public synchronized void queueExperiment(IUser user, IExperiment experiment)
+	public Map<String, UserWaitStatistics> getWaitStatistics()
 	{
-		experiment.setStatus(ExperimentStatus.QUEUED);
+		return waitStatistics;
+	}
 
-		addExperimentToQueue(user, experiment, ExperimentStatus.QUEUED);
+	/**
+	 * @param login
+	 * @return
+	 */
+	private UserWaitStatistics getWaitStatistics(String login)
+	{
+		UserWaitStatistics statistics = waitStatistics.get(login);
+		if(statistics == null)
+		{
+			statistics = new UserWaitStatistics();
+			waitStatistics.put(login, statistics);
+		}
+		return statistics;
 	}
 
 	/**
@@ -109,8 +1063,7 @@ public class ExperimentRunManager implements IExperimentListener
 		boolean experimentCanRun = experiment.getStatus().equals(ExperimentStatus.QUEUED);
 		if(experimentCanRun)
 		{
-			IGeppettoProject project = experiment.getParentProject();
-			if(projectsRunning.contains(project))
+			if(getRunningCount(experiment.getParentProject().getId()) >= experimentsPerProjectCapacity)
 			{
 				return false;
 			}
@@ -118,12 +1071,30 @@ public class ExperimentRunManager implements IExperimentListener
 		return experimentCanRun;
 	}
 
+	/**
+	 * @param projectId
+	 * @return the experiments of the project running on this server or dispatched to the cluster
+	 */
+	private int getRunningCount(long projectId)
+	{
+		int running = runtimeProjects.getLeasedCount(projectId);
+		for(IExperiment clusterRun : clusterRuns.values())
+		{
+			if(clusterRun.getParentProject().getId() == projectId)
+			{
+				running++;
+			}
+		}
+		return running;
+	}
+
 	/**
 	 * @param experiment
 	 */
 	private void decreaseExperimentCounter(IExperiment experiment)
 	{
-		experimentsCounter.put(experiment.getParentProject(), experimentsCounter.get(experiment.getParentProject()) - 1);
+		long projectId = experiment.getParentProject().getId();
+		experimentsCounter.put(projectId, experimentsCounter.get(projectId) - 1);
 	}
 
 	/**
@@ -131,12 +1102,12 @@ public class ExperimentRunManager implements IExperimentListener
 	 */
 	private void increaseExperimentCounter(IExperiment experimentAboutToRun)
 	{
-		IGeppettoProject project = experimentAboutToRun.getParentProject();
-		if(!experimentsCounter.containsKey(project))
+		long projectId = experimentAboutToRun.getParentProject().getId();
+		if(!experimentsCounter.containsKey(projectId))
 		{
-			experimentsCounter.put(project, 0);
+			experimentsCounter.put(projectId, 0);
 		}
-		experimentsCounter.put(project, experimentsCounter.get(project) + 1);
+		experimentsCounter.put(projectId, experimentsCounter.get(projectId) + 1);
 	}
 
 	/*
@@ -146,34 +1117,124 @@ public class ExperimentRunManager implements IExperimentListener
 	 */
 	void runExperiment(IExperiment experiment) throws GeppettoExecutionException
 	{
+		ClusterCoordinator coordinator = clusterCoordinator;
+		if(coordinator != null && !isAssigned(experiment))
+		{
+			dispatchToCluster(coordinator, experiment);
+			return;
+		}
+		RuntimeProject runtimeProject = null;
 		try
 		{
 			IGeppettoProject project = experiment.getParentProject();
-			projectsRunning.add(project);
-			if(!geppettoManager.isProjectOpen(project))
+			increaseRunningExperiments();
+			ExperimentRunMetrics metrics = new ExperimentRunMetrics(project.getId(), experiment.getId());
+			Long queueWait = queueWaits.remove(getRunKey(experiment));
+			if(queueWait != null)
 			{
-				geppettoManager.loadProject(String.valueOf(this.getReqId()), project);
+				metrics.record(ExperimentRunMetrics.Phase.QUEUE_WAIT, queueWait);
 			}
-			RuntimeProject runtimeProject = geppettoManager.getRuntimeProject(project);
+			// every running experiment works on its own runtime project
+			ExperimentRunMetrics.Measurement projectLoad = metrics.start(ExperimentRunMetrics.Phase.PROJECT_LOAD);
+			runtimeProject = runtimeProjects.acquire(project, experiment);
 			runtimeProject.openExperiment(String.valueOf(this.getReqId()), experiment);
+			projectLoad.end();
 
-			ExperimentRunThread experimentRun = new ExperimentRunThread(experiment, runtimeProject, this);
-			experimentRun.start();
+			ExperimentRunThread experimentRun = new ExperimentRunThread(experiment, runtimeProject, this, simulatorExecutor);
+			experimentRun.setMetrics(metrics);
+			experimentRun.setInitParallelism(aspectInitParallelism);
+			experimentRun.setConversionCache(conversionCache);
+			experimentRun.setConversionPlanner(conversionPlanner);
+			experimentRun.setResultsUploadExecutor(resultsUploadExecutor);
+			experimentRun.getStepBuffer().setCapacity(stepBufferCapacity);
+			experimentRun.setCheckpointing(checkpointTimer, checkpointInterval, checkpointFolder);
+			experimentRun.setWorkerPool(workerPool);
 			experiment.setStatus(ExperimentStatus.RUNNING);
 			experiment.updateStartDate();
 			DataManagerHelper.getDataManager().saveEntity(experiment);
+			journalRunning(experiment);
+			experimentRuns.put(getRunKey(experiment), experimentRun);
+			experimentRunExecutor.execute(experimentRun);
 
 		}
 		catch(Exception e)
 		{
+			// the run never started, nothing else will release the project
+			stepConsumers.remove(getRunKey(experiment));
+			experimentRuns.remove(getRunKey(experiment));
+			decreaseExperimentCounter(experiment);
+			if(runtimeProject != null)
+			{
+				runtimeProjects.release(experiment.getParentProject(), runtimeProject);
+			}
+			slots.release();
+			journalDone(experiment);
 			simulationError(experiment);
 			experiment.updateEndDate();
 			String errorMessage = "Error running experiment with name: " + experiment.getName() + " and id: " + experiment.getId();
 			this.experimentError(errorMessage, e.getMessage(), e, experiment);
+			notifyRunCallback(experiment, false);
 			throw new GeppettoExecutionException(e);
 		}
 	}
 
+	/**
+	 * The node loads the experiment and its project from the database, only the identifiers are sent
+	 * 
+	 * @param coordinator
+	 * @param experiment
+	 */
+	private void dispatchToCluster(ClusterCoordinator coordinator, IExperiment experiment)
+	{
+		increaseRunningExperiments();
+		queueWaits.remove(getRunKey(experiment));
+		String login = clusterOwners.remove(getRunKey(experiment));
+		clusterRuns.put(experiment.getId(), experiment);
+		// the experiment is running as far as the users are concerned, even while it waits for a node
+		experiment.setStatus(ExperimentStatus.RUNNING);
+		experiment.updateStartDate();
+		DataManagerHelper.getDataManager().saveEntity(experiment);
+		journalRunning(experiment);
+		coordinator.submit(new RunAssignment(experiment.getParentProject().getId(), experiment.getId(), login));
+	}
+
+	/**
+	 * @param assignment
+	 * @param completed
+	 */
+	private void clusterRunFinished(RunAssignment assignment, boolean completed)
+	{
+		IExperiment experiment = clusterRuns.remove(assignment.getExperimentId());
+		if(experiment == null)
+		{
+			return;
+		}
+		if(!completed)
+		{
+			logger.warn("The run of " + assignment + " did not complete");
+			// the node might have set the status already, e.g. a run cancelled on the node
+			if(experiment.getStatus() == ExperimentStatus.RUNNING)
+			{
+				experiment.updateEndDate();
+				simulationError(experiment);
+			}
+		}
+		try
+		{
+			decreaseExperimentCounter(experiment);
+			slots.release();
+			journalDone(experiment);
+			if(experimentsCounter.get(experiment.getParentProject().getId()) == 0)
+			{
+				experimentsCounter.remove(experiment.getParentProject().getId());
+			}
+		}
+		finally
+		{
+			wakeUpDispatcher();
+		}
+	}
+
 	/**
 	 * 
 	 */
@@ -184,6 +1245,8 @@ public class ExperimentRunManager implements IExperimentListener
 	}
 
 	/**
+	 * Scans every user and project of the data manager, used only when there is no run journal to recover from
+	 * 
 	 * @throws GeppettoInitializationException
 	 * @throws MalformedURLException
 	 * @throws GeppettoExecutionException
@@ -202,7 +1265,7 @@ public class ExperimentRunManager implements IExperimentListener
 					e.setParentProject(project);
 					if(e.getStatus().equals(ExperimentStatus.RUNNING))
 					{
-						addExperimentToQueue(user, e, e.getStatus());
+						recoverExperiment(user, e);
 					}
 				}
 				for(IExperiment e : project.getExperiments())
@@ -213,7 +1276,148 @@ public class ExperimentRunManager implements IExperimentListener
 					}
 				}
 			}
-			dataManager.saveEntity(user);
+		}
+		wakeUpDispatcher();
+	}
+
+	/**
+	 * Queues again the experiments the run journal says were queued or running, the experiments are looked up in parallel and the ones whose
+	 * persisted status has meanwhile changed are ignored. Experiments which were running are queued first.
+	 * 
+	 * @param entries
+	 * @throws InterruptedException
+	 */
+	private void recoverExperiments(List<ExperimentRunJournal.Entry> entries) throws InterruptedException
+	{
+		logger.info("Recovering " + entries.size() + " experiments from the run journal");
+		final IGeppettoDataManager dataManager = DataManagerHelper.getDataManager();
+		final Map<String, IUser> users = new ConcurrentHashMap<String, IUser>();
+		ExecutorService resolvers = Executors.newFixedThreadPool(Math.max(1, Math.min(entries.size(), Runtime.getRuntime().availableProcessors())));
+		List<Future<IExperiment>> resolved = new ArrayList<Future<IExperiment>>();
+		try
+		{
+			for(final ExperimentRunJournal.Entry entry : entries)
+			{
+				resolved.add(resolvers.submit(new Callable<IExperiment>()
+				{
+					@Override
+					public IExperiment call() throws Exception
+					{
+						if(entry.getLogin() != null && !users.containsKey(entry.getLogin()))
+						{
+							IUser user = dataManager.getUserByLogin(entry.getLogin());
+							if(user != null)
+							{
+								users.put(entry.getLogin(), user);
+							}
+						}
+						return experimentResolver.resolve(entry.getProjectId(), entry.getExperimentId());
+					}
+				}));
+			}
+			Map<IExperiment, IUser> queued = new LinkedHashMap<IExperiment, IUser>();
+			for(int i = 0; i < entries.size(); i++)
+			{
+				ExperimentRunJournal.Entry entry = entries.get(i);
+				IExperiment experiment = null;
+				try
+				{
+					experiment = resolved.get(i).get();
+				}
+				catch(ExecutionException e)
+				{
+					logger.error("Unable to recover experiment " + entry.getExperimentId() + " of project " + entry.getProjectId(), e.getCause());
+				}
+				IUser user = entry.getLogin() != null ? users.get(entry.getLogin()) : null;
+				if(experiment == null || user == null)
+				{
+					logger.warn("Experiment " + entry.getExperimentId() + " of project " + entry.getProjectId() + " not found, it will not be recovered");
+					if(runJournal != null)
+					{
+						runJournal.experimentDone(entry.getProjectId(), entry.getExperimentId());
+					}
+					continue;
+				}
+				if(experiment.getStatus().equals(ExperimentStatus.RUNNING))
+				{
+					recoverExperiment(user, experiment);
+				}
+				else if(experiment.getStatus().equals(ExperimentStatus.QUEUED))
+				{
+					queued.put(experiment, user);
+				}
+				else
+				{
+					// the experiment was completed or cancelled before the journal recorded it
+					journalDone(experiment);
+				}
+			}
+			for(Map.Entry<IExperiment, IUser> experiment : queued.entrySet())
+			{
+				addExperimentToQueue(experiment.getValue(), experiment.getKey(), ExperimentStatus.QUEUED);
+			}
+			wakeUpDispatcher();
+		}
+		finally
+		{
+			resolvers.shutdownNow();
+		}
+	}
+
+	/**
+	 * Queues again an experiment which was running when the server stopped
+	 * 
+	 * @param user
+	 * @param experiment
+	 */
+	private void recoverExperiment(IUser user, IExperiment experiment)
+	{
+		addExperimentToQueue(user, experiment, ExperimentStatus.RUNNING);
+		DataManagerHelper.getDataManager().saveEntity(experiment);
+	}
+
+	/**
+	 * @return the thread queueing the experiments left from a previous run of the server, it is done once it is not alive anymore
+	 */
+	public Thread getRecoveryThread()
+	{
+		return recoveryThread;
+	}
+
+	/**
+	 * The runs assigned by a cluster coordinator are not journaled, the coordinator assigns them again if this server stops and recovering them
+	 * here too would run them twice
+	 * 
+	 * @param login
+	 * @param experiment
+	 */
+	private void journalQueued(String login, IExperiment experiment)
+	{
+		if(runJournal != null && !isAssigned(experiment))
+		{
+			runJournal.experimentQueued(login, experiment);
+		}
+	}
+
+	/**
+	 * @param experiment
+	 */
+	private void journalRunning(IExperiment experiment)
+	{
+		if(runJournal != null && !isAssigned(experiment))
+		{
+			runJournal.experimentRunning(null, experiment);
+		}
+	}
+
+	/**
+	 * @param experiment
+	 */
+	private void journalDone(IExperiment experiment)
+	{
+		if(runJournal != null && !isAssigned(experiment))
+		{
+			runJournal.experimentDone(experiment);
 		}
 	}
 
@@ -225,16 +1429,25 @@ public class ExperimentRunManager implements IExperimentListener
 	private synchronized void addExperimentToQueue(IUser user, IExperiment experiment, ExperimentStatus status)
 	{
 		increaseExperimentCounter(experiment);
-		BlockingQueue<IExperiment> userExperiments = queue.get(user);
+		SpillableExperimentQueue userExperiments = queue.get(user);
 		if(userExperiments == null)
 		{
-			userExperiments = new ArrayBlockingQueue<IExperiment>(100);
+			File journal = new File(queueJournalFolder, user.getLogin().replaceAll("[^A-Za-z0-9._-]", "_") + ".journal");
+			userExperiments = new SpillableExperimentQueue(queueMemoryCapacity, journal, experimentResolver, new IProjectAdmission()
+			{
+				@Override
+				public boolean canStart(long projectId)
+				{
+					return getRunningCount(projectId) < experimentsPerProjectCapacity;
+				}
+			});
 			queue.put(user, userExperiments);
 		}
 		if(experiment.getStatus() == status)
 		{
 			experiment.setStatus(ExperimentStatus.QUEUED);
 			userExperiments.add(experiment);
+			journalQueued(user.getLogin(), experiment);
 		}
 	}
 
@@ -254,13 +1467,59 @@ public class ExperimentRunManager implements IExperimentListener
 		// we can use them to check that the simulation was properly executed.
 		// This is not ideal or particularly elegant but harmless at the same time until we
 		// can think of a better way.
-		experimentRun.release();
-		decreaseExperimentCounter(experiment);
-		projectsRunning.remove(experiment.getParentProject());
-		if(!DataManagerHelper.getDataManager().isDefault() && experimentsCounter.get(experiment.getParentProject()) == 0)
+		if(!experimentRun.markFinished())
+		{
+			// the run was abandoned after a cancellation, its slot was already given back, now the worker is free too
+			slots.abandonedTerminated();
+			resizeExecutor();
+			experimentRun.release();
+			project.closeExperiment(experiment);
+			project.release();
+			return;
+		}
+		if(experimentRun.isSuspended())
+		{
+			// the server is stopping, the experiment stays RUNNING in the journal and is recovered from its checkpoints on restart
+			if(isAssigned(experiment))
+			{
+				// not journaled, the coordinator runs it again from scratch on another node
+				experimentRun.clearCheckpoints();
+			}
+			stepConsumers.remove(getRunKey(experiment));
+			experimentRuns.remove(getRunKey(experiment));
+			experimentRun.release();
+			project.closeExperiment(experiment);
+			decreaseExperimentCounter(experiment);
+			runtimeProjects.discard(experiment.getParentProject());
+			project.release();
+			slots.release();
+			return;
+		}
+		try
+		{
+			// the clients get the last steps before the run goes away
+			deliverSteps(experiment, experimentRun);
+			stepConsumers.remove(getRunKey(experiment));
+			experimentRuns.remove(getRunKey(experiment));
+			experimentRun.release();
+			project.closeExperiment(experiment);
+			decreaseExperimentCounter(experiment);
+			runtimeProjects.release(experiment.getParentProject(), project);
+			slots.release();
+			journalDone(experiment);
+			saveRunMetrics(experimentRun.getMetrics());
+			notifyRunCallback(experiment, experiment.getStatus() == ExperimentStatus.COMPLETED);
+			logger.info(simulatorExecutor);
+			if(experimentsCounter.get(experiment.getParentProject().getId()) == 0)
+			{
+				// the runtime project stays warm in the pool for the next runs of the project, it is closed once evicted
+				experimentsCounter.remove(experiment.getParentProject().getId());
+			}
+		}
+		finally
 		{
-			experimentsCounter.remove(experiment.getParentProject());
-			geppettoManager.closeProject("ERM" + getReqId(), project.getGeppettoProject());
+			// the project and a slot are free again, queued experiments can now start
+			wakeUpDispatcher();
 		}
 	}
 
@@ -272,24 +1531,68 @@ public class ExperimentRunManager implements IExperimentListener
 		return ++reqId;
 	}
 
-	public Map<IUser, BlockingQueue<IExperiment>> getQueuedExperiments()
+	public Map<IUser, SpillableExperimentQueue> getQueuedExperiments()
 	{
 		return this.queue;
 	}
 
+	/**
+	 * Forgets an experiment which was deleted, if it is still queued it is removed from the queue of its user
+	 * 
+	 * @param experiment
+	 */
+	public synchronized void experimentDeleted(IExperiment experiment)
+	{
+		experimentPriorities.remove(getRunKey(experiment));
+		for(SpillableExperimentQueue queuedExperiments : queue.values())
+		{
+			if(queuedExperiments.remove(experiment))
+			{
+				decreaseExperimentCounter(experiment);
+				journalDone(experiment);
+				wakeUpDispatcher();
+				return;
+			}
+		}
+	}
+
 	/**
 	 * @param user
 	 * @param experiment
 	 * @throws GeppettoExecutionException
 	 */
-	public void cancelExperimentRun(IUser user, IExperiment experiment) throws GeppettoExecutionException
+	public void cancelExperimentRun(IUser user, final IExperiment experiment) throws GeppettoExecutionException
 	{
-		BlockingQueue<IExperiment> queuedExperiments = getQueuedExperiments().get(user);
+		final ExperimentRunThread experimentRun = experimentRuns.get(getRunKey(experiment));
+		// a run which already completed is just finishing its notifications, there is nothing to cancel
+		if(experimentRun != null && experimentRun.getExperiment().getStatus().equals(ExperimentStatus.RUNNING))
+		{
+			// the caller might hold another instance of the experiment than the one running
+			final IExperiment running = experimentRun.getExperiment();
+			experimentPriorities.remove(getRunKey(experiment));
+			experimentRun.cancelRun();
+			DataManagerHelper.getDataManager().saveEntity(running);
+			// if the run does not stop by itself its slot is taken back anyway
+			timer.schedule(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					abandonRun(experimentRun, running);
+				}
+			}, cancellationGracePeriod, TimeUnit.MILLISECONDS);
+			return;
+		}
+		SpillableExperimentQueue queuedExperiments = getQueuedExperiments().get(user);
 		if(queuedExperiments != null)
 		{
 			if(queuedExperiments.contains(experiment))
 			{
 				getQueuedExperiments().get(user).remove(experiment);
+				experimentPriorities.remove(getRunKey(experiment));
+				decreaseExperimentCounter(experiment);
+				journalDone(experiment);
+				wakeUpDispatcher();
 			}
 			else
 			{
@@ -303,6 +1606,126 @@ public class ExperimentRunManager implements IExperimentListener
 
 	}
 
+	/**
+	 * Fails the runs which exceeded their limits, so that a hung simulator cannot hold a slot and its project forever. A run which doesn't stop
+	 * once failed is abandoned after the cancellation grace period, like a cancelled one.
+	 */
+	void abortStalledRuns()
+	{
+		long now = System.currentTimeMillis();
+		for(final ExperimentRunThread experimentRun : experimentRuns.values())
+		{
+			final IExperiment experiment = experimentRun.getExperiment();
+			if(experimentRun.isCanceled() || !experiment.getStatus().equals(ExperimentStatus.RUNNING))
+			{
+				continue;
+			}
+			String reason = experimentRun.checkLimits(now, experimentTimeout, simulatorTimeout, simulatorStallTimeout);
+			if(reason != null)
+			{
+				experimentRun.abort(reason);
+				timer.schedule(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						abandonRun(experimentRun, experiment);
+					}
+				}, cancellationGracePeriod, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	/**
+	 * @param experimentTimeout
+	 *            milliseconds a run can take, 0 or less means no limit
+	 * @param simulatorTimeout
+	 *            milliseconds a simulator can be stepping, 0 or less means no limit
+	 * @param simulatorStallTimeout
+	 *            milliseconds a simulator which reports its progress can go without reporting it, 0 or less means no limit
+	 */
+	public void setRunLimits(long experimentTimeout, long simulatorTimeout, long simulatorStallTimeout)
+	{
+		this.experimentTimeout = experimentTimeout;
+		this.simulatorTimeout = simulatorTimeout;
+		this.simulatorStallTimeout = simulatorStallTimeout;
+	}
+
+	/**
+	 * Gives back the slot and the project of a cancelled run which did not stop within the grace period. The worker executing it is replaced by a
+	 * new one until the run terminates, and its runtime project is not reused since the run might still be using it.
+	 * 
+	 * @param experimentRun
+	 * @param experiment
+	 */
+	private void abandonRun(ExperimentRunThread experimentRun, IExperiment experiment)
+	{
+		if(!experimentRun.markFinished())
+		{
+			return;
+		}
+		logger.warn("Experiment " + experiment.getId() + " did not stop within " + cancellationGracePeriod + " ms from its cancellation, releasing its slot");
+		try
+		{
+			stepConsumers.remove(getRunKey(experiment));
+			experimentRuns.remove(getRunKey(experiment));
+			slots.abandon();
+			resizeExecutor();
+			decreaseExperimentCounter(experiment);
+			runtimeProjects.discard(experiment.getParentProject());
+			journalDone(experiment);
+			experimentRun.deleteTemporaryFiles();
+			experimentRun.clearCheckpoints();
+			notifyRunCallback(experiment, false);
+		}
+		finally
+		{
+			wakeUpDispatcher();
+		}
+	}
+
+	/**
+	 * Stops the dispatcher, the timers, the executors and the worker processes. The experiments running are suspended rather than cancelled, they
+	 * stay RUNNING in the journal with their checkpoints and are recovered when the server starts again, the queued ones stay in their journals.
+	 */
+	public synchronized void shutdown()
+	{
+		logger.info("Shutting down the experiment run manager");
+		dispatcher.shutdown();
+		recoveryThread.interrupt();
+		timer.shutdownNow();
+		checkpointTimer.shutdownNow();
+		stepDeliveryTimer.shutdownNow();
+		for(ExperimentRunThread experimentRun : experimentRuns.values())
+		{
+			experimentRun.suspendRun();
+		}
+		experimentRunExecutor.shutdown();
+		try
+		{
+			if(!experimentRunExecutor.awaitTermination(cancellationGracePeriod, TimeUnit.MILLISECONDS))
+			{
+				logger.warn("The experiment runs did not stop within " + cancellationGracePeriod + " ms from the shutdown");
+			}
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		experimentRunExecutor.shutdownNow();
+		simulatorExecutor.shutdownNow();
+		resultsUploadExecutor.shutdownNow();
+		if(workerPool != null)
+		{
+			workerPool.close();
+		}
+		if(runJournal != null)
+		{
+			runJournal.close();
+		}
+		ExperimentRunMetrics.stopHeapSampler();
+	}
+
 	@Override
 	public void experimentError(String titleMessage, String errorMessage, Exception exception, IExperiment experiment)
 	{
@@ -316,36 +1739,102 @@ public class ExperimentRunManager implements IExperimentListener
 
 }
 
-class ExperimentRunChecker extends TimerTask
+/**
+ * The dispatcher waits for a signal from the ExperimentRunManager and only then starts the experiments which can run. Queueing a new experiment, the
+ * completion of a run and the cancellation of an experiment all wake it up, so an idle server does not scan the queues at all.
+ *
+ */
+class ExperimentRunDispatcher extends Thread
 {
-	private static Log logger = LogFactory.getLog(ExperimentRunChecker.class);
-	private Map<IUser, BlockingQueue<IExperiment>> queuedExperiments = ExperimentRunManager.getInstance().getQueuedExperiments();
+	private static Log logger = LogFactory.getLog(ExperimentRunDispatcher.class);
+
+	private ExperimentRunManager experimentRunManager;
+
+	private boolean signalled = true;
 
-	public synchronized void run()
+	private volatile boolean running = true;
+
+	/**
+	 * @param experimentRunManager
+	 */
+	public ExperimentRunDispatcher(ExperimentRunManager experimentRunManager)
 	{
-		try
+		super("ExperimentRunDispatcher");
+		this.experimentRunManager = experimentRunManager;
+		setDaemon(true);
+	}
+
+	/**
+	 * Requests a new dispatch pass, signals arriving while a pass is in progress are coalesced into a single following pass
+	 */
+	public synchronized void wakeUp()
+	{
+		signalled = true;
+		notifyAll();
+	}
+
+	/**
+	 * Stops the dispatcher after the current pass
+	 */
+	public synchronized void shutdown()
+	{
+		running = false;
+		notifyAll();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Thread#run()
+	 */
+	@Override
+	public void run()
+	{
+		while(running)
 		{
-			for(IUser user : queuedExperiments.keySet())
+			synchronized(this)
 			{
-				List<IExperiment> ran = new ArrayList<IExperiment>();
-				for(IExperiment e : queuedExperiments.get(user))
+				while(!signalled && running)
 				{
-					if(ExperimentRunManager.getInstance().checkExperiment(e))
+					try
 					{
-						logger.info("Experiment queued found " + e.getName());
-						ExperimentRunManager.getInstance().runExperiment(e);
-						ran.add(e);
+						wait();
+					}
+					catch(InterruptedException e)
+					{
+						running = false;
 					}
 				}
-				for(IExperiment ranExperiment : ran)
-				{
-					queuedExperiments.get(user).remove(ranExperiment);
-				}
+				signalled = false;
+			}
+			if(running)
+			{
+				dispatch();
 			}
 		}
-		catch(GeppettoExecutionException | GeppettoInitializationException e)
+	}
+
+	/**
+	 * Starts the queued experiments chosen by the scheduling policy as long as there is free simulation capacity, the others are left QUEUED
+	 */
+	private void dispatch()
+	{
+		while(experimentRunManager.hasFreeCapacity())
 		{
-			logger.error(e);
+			IExperiment next = experimentRunManager.pollNextExperiment();
+			if(next == null)
+			{
+				break;
+			}
+			logger.info("Experiment queued found " + next.getName());
+			try
+			{
+				experimentRunManager.runExperiment(next);
+			}
+			catch(GeppettoExecutionException e)
+			{
+				logger.error(e);
+			}
 		}
 	}
 }
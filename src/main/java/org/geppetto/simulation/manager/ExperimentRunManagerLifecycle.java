@@ -0,0 +1,24 @@
+package org.geppetto.simulation.manager;
+
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Ties the ExperimentRunManager to the application context of the bundle, so that stopping or redeploying the bundle stops its threads and worker
+ * processes rather than leaving them running
+ * 
+ */
+public class ExperimentRunManagerLifecycle implements DisposableBean
+{
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.springframework.beans.factory.DisposableBean#destroy()
+	 */
+	@Override
+	public void destroy() throws Exception
+	{
+		ExperimentRunManager.shutdownInstance();
+	}
+
+}
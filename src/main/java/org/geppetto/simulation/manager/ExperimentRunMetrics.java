@@ -0,0 +1,323 @@
+package org.geppetto.simulation.manager;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.JsonObject;
+
+/**
+ * The resources used by an experiment run, phase by phase. The phases which run on several threads at once, e.g. the simulators of the different
+ * aspects, sum the time of all the threads. The CPU time is the one of the threads doing the work of the phase. The peak heap is the highest heap
+ * usage sampled while a measurement of the phase was open, every HEAP_SAMPLE_INTERVAL milliseconds and when the measurement starts and ends. The
+ * heap is the one of the whole JVM, so it includes what the other runs on the server use at the same time.
+ * 
+ */
+public class ExperimentRunMetrics
+{
+
+	public enum Phase
+	{
+		QUEUE_WAIT, PROJECT_LOAD, CONVERSION, SIMULATOR_INIT, SIMULATE, ZIP, UPLOAD, PERSIST
+	}
+
+	private static ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	private static MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+	// milliseconds between two samples of the heap while measurements are open
+	public static final long HEAP_SAMPLE_INTERVAL = 100;
+
+	private static Set<Measurement> open = Collections.newSetFromMap(new ConcurrentHashMap<Measurement, Boolean>());
+
+	private static ScheduledExecutorService heapSampler;
+
+	private long projectId;
+
+	private long experimentId;
+
+	private Map<Phase, PhaseMetrics> phases = new EnumMap<Phase, PhaseMetrics>(Phase.class);
+
+	/**
+	 * The resources used in a phase
+	 */
+	public static class PhaseMetrics
+	{
+		private long wallTime = 0;
+
+		private long cpuTime = 0;
+
+		private long bytesRead = 0;
+
+		private long bytesWritten = 0;
+
+		private long peakHeap = 0;
+
+		/**
+		 * @return milliseconds
+		 */
+		public synchronized long getWallTime()
+		{
+			return wallTime;
+		}
+
+		/**
+		 * @return milliseconds, -1 if the JVM doesn't measure the CPU time of the threads
+		 */
+		public synchronized long getCpuTime()
+		{
+			return cpuTime;
+		}
+
+		public synchronized long getBytesRead()
+		{
+			return bytesRead;
+		}
+
+		public synchronized long getBytesWritten()
+		{
+			return bytesWritten;
+		}
+
+		public synchronized long getPeakHeap()
+		{
+			return peakHeap;
+		}
+
+		private synchronized void add(long wallTime, long cpuTime, long heap)
+		{
+			this.wallTime += wallTime;
+			this.cpuTime = cpuTime < 0 || this.cpuTime < 0 ? -1 : this.cpuTime + cpuTime;
+			this.peakHeap = Math.max(peakHeap, heap);
+		}
+
+		private synchronized void addBytes(long read, long written)
+		{
+			bytesRead += read;
+			bytesWritten += written;
+		}
+
+		private synchronized JsonObject toJson()
+		{
+			JsonObject json = new JsonObject();
+			json.addProperty("wallTime", wallTime);
+			json.addProperty("cpuTime", cpuTime);
+			json.addProperty("bytesRead", bytesRead);
+			json.addProperty("bytesWritten", bytesWritten);
+			json.addProperty("peakHeap", peakHeap);
+			return json;
+		}
+	}
+
+	/**
+	 * A measurement of a phase on the current thread, it has to be ended on the same thread
+	 */
+	public class Measurement
+	{
+		private Phase phase;
+
+		private long start = System.currentTimeMillis();
+
+		private long cpuStart = getCurrentThreadCpuTime();
+
+		private long heapPeak = getHeapUsed();
+
+		private Measurement(Phase phase)
+		{
+			this.phase = phase;
+			open.add(this);
+			startHeapSampler();
+		}
+
+		private synchronized void sampleHeap(long heap)
+		{
+			heapPeak = Math.max(heapPeak, heap);
+		}
+
+		public void end()
+		{
+			open.remove(this);
+			sampleHeap(getHeapUsed());
+			long cpuEnd = getCurrentThreadCpuTime();
+			long cpuTime = cpuStart < 0 || cpuEnd < 0 ? -1 : (cpuEnd - cpuStart) / 1000000;
+			long heap;
+			synchronized(this)
+			{
+				heap = heapPeak;
+			}
+			getPhase(phase).add(System.currentTimeMillis() - start, cpuTime, heap);
+		}
+	}
+
+	/**
+	 * @param projectId
+	 * @param experimentId
+	 */
+	public ExperimentRunMetrics(long projectId, long experimentId)
+	{
+		this.projectId = projectId;
+		this.experimentId = experimentId;
+		for(Phase phase : Phase.values())
+		{
+			phases.put(phase, new PhaseMetrics());
+		}
+	}
+
+	/**
+	 * @param phase
+	 * @return the measurement to end once the phase is over on this thread
+	 */
+	public Measurement start(Phase phase)
+	{
+		return new Measurement(phase);
+	}
+
+	/**
+	 * Records a phase which was not spent working on any thread, e.g. the time spent in the queue
+	 * 
+	 * @param phase
+	 * @param wallTime
+	 */
+	public void record(Phase phase, long wallTime)
+	{
+		getPhase(phase).add(wallTime, 0, 0);
+	}
+
+	/**
+	 * Records the CPU time of threads which are not measured for the whole phase, e.g. the simulators, whose phase is measured by the run
+	 * 
+	 * @param phase
+	 * @param cpuTime
+	 *            milliseconds
+	 */
+	public void addCpuTime(Phase phase, long cpuTime)
+	{
+		getPhase(phase).add(0, cpuTime, 0);
+	}
+
+	/**
+	 * @param phase
+	 * @param read
+	 * @param written
+	 */
+	public void addBytes(Phase phase, long read, long written)
+	{
+		getPhase(phase).addBytes(read, written);
+	}
+
+	/**
+	 * @param phase
+	 * @return
+	 */
+	public PhaseMetrics getPhase(Phase phase)
+	{
+		return phases.get(phase);
+	}
+
+	public long getProjectId()
+	{
+		return projectId;
+	}
+
+	public long getExperimentId()
+	{
+		return experimentId;
+	}
+
+	/**
+	 * @return
+	 */
+	public String toJson()
+	{
+		JsonObject json = new JsonObject();
+		json.addProperty("projectId", projectId);
+		json.addProperty("experimentId", experimentId);
+		JsonObject phasesJson = new JsonObject();
+		for(Map.Entry<Phase, PhaseMetrics> phase : phases.entrySet())
+		{
+			phasesJson.add(phase.getKey().name().toLowerCase(), phase.getValue().toJson());
+		}
+		json.add("phases", phasesJson);
+		return json.toString();
+	}
+
+	/**
+	 * @return nanoseconds, -1 if not supported
+	 */
+	public static long getCurrentThreadCpuTime()
+	{
+		try
+		{
+			return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+		}
+		catch(UnsupportedOperationException e)
+		{
+			return -1;
+		}
+	}
+
+	/**
+	 * @return
+	 */
+	private static long getHeapUsed()
+	{
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+
+	/**
+	 * Starts sampling the heap for the open measurements, once for all the runs
+	 */
+	private static synchronized void startHeapSampler()
+	{
+		if(heapSampler == null)
+		{
+			heapSampler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable runnable)
+				{
+					Thread thread = new Thread(runnable, "ExperimentRunMetrics heap sampler");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			heapSampler.scheduleWithFixedDelay(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					if(!open.isEmpty())
+					{
+						long heap = getHeapUsed();
+						for(Measurement measurement : open)
+						{
+							measurement.sampleHeap(heap);
+						}
+					}
+				}
+			}, HEAP_SAMPLE_INTERVAL, HEAP_SAMPLE_INTERVAL, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Stops sampling the heap, e.g. when the bundle stops. The measurements opened afterwards start it again.
+	 */
+	public static synchronized void stopHeapSampler()
+	{
+		if(heapSampler != null)
+		{
+			heapSampler.shutdownNow();
+			heapSampler = null;
+		}
+	}
+
+}
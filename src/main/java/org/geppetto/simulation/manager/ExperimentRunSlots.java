@@ -0,0 +1,135 @@
+package org.geppetto.simulation.manager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the experiments running against the simulation capacity. A run takes a slot when it starts and gives it back when it ends, a cancelled
+ * run abandoned after the grace period gives back its slot but keeps its worker until it terminates.
+ *
+ */
+public class ExperimentRunSlots
+{
+
+	private volatile int capacity;
+
+	private AtomicInteger running = new AtomicInteger(0);
+
+	private AtomicInteger peak = new AtomicInteger(0);
+
+	private AtomicInteger abandoned = new AtomicInteger(0);
+
+	/**
+	 * @param capacity
+	 *            the maximum number of experiments which can run concurrently
+	 */
+	public ExperimentRunSlots(int capacity)
+	{
+		setCapacity(capacity);
+	}
+
+	/**
+	 * Lowering the capacity does not stop the experiments already running, new ones are admitted only once the running ones drop below it
+	 *
+	 * @param capacity
+	 */
+	public void setCapacity(int capacity)
+	{
+		if(capacity < 1)
+		{
+			throw new IllegalArgumentException("The simulation capacity has to be at least 1, was " + capacity);
+		}
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @return the maximum number of experiments which can run concurrently
+	 */
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * @param excluded
+	 *            the running experiments which do not take a slot of this server, e.g. the ones dispatched to a cluster
+	 * @return true if one more experiment can start
+	 */
+	public boolean hasFree(int excluded)
+	{
+		return running.get() - excluded < capacity;
+	}
+
+	/**
+	 * Takes a slot for an experiment about to start
+	 *
+	 * @return the number of experiments running
+	 */
+	public int acquire()
+	{
+		int count = running.incrementAndGet();
+		int highest = peak.get();
+		while(count > highest && !peak.compareAndSet(highest, count))
+		{
+			highest = peak.get();
+		}
+		return count;
+	}
+
+	/**
+	 * Gives back the slot of an experiment which ended, or which never started
+	 */
+	public void release()
+	{
+		running.decrementAndGet();
+	}
+
+	/**
+	 * Gives back the slot of a run which did not stop within the grace period after being cancelled, its worker stays busy until it terminates
+	 */
+	public void abandon()
+	{
+		abandoned.incrementAndGet();
+		running.decrementAndGet();
+	}
+
+	/**
+	 * An abandoned run terminated, its worker is free again
+	 */
+	public void abandonedTerminated()
+	{
+		abandoned.decrementAndGet();
+	}
+
+	/**
+	 * @return the number of workers needed, i.e. the capacity plus the workers still held by abandoned runs
+	 */
+	public int getWorkers()
+	{
+		return capacity + abandoned.get();
+	}
+
+	/**
+	 * @return the number of experiments currently running
+	 */
+	public int getRunning()
+	{
+		return running.get();
+	}
+
+	/**
+	 * @return the highest number of experiments which were running at the same time
+	 */
+	public int getPeak()
+	{
+		return peak.get();
+	}
+
+	/**
+	 * @return the number of cancelled runs whose slot was given back while they were still terminating
+	 */
+	public int getAbandoned()
+	{
+		return abandoned.get();
+	}
+
+}
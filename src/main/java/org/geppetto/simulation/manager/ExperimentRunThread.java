@@ -3,12 +3,29 @@ package org.geppetto.simulation.manager;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.URL;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -23,45 +40,62 @@ import org.geppetto.core.data.model.ExperimentStatus;
 import org.geppetto.core.data.model.IAspectConfiguration;
 import org.geppetto.core.data.model.IExperiment;
 import org.geppetto.core.data.model.IPersistedData;
-import org.geppetto.core.data.model.ISimulationResult;
 import org.geppetto.core.data.model.ISimulatorConfiguration;
 import org.geppetto.core.data.model.PersistedDataType;
 import org.geppetto.core.data.model.ResultsFormat;
 import org.geppetto.core.manager.Scope;
 import org.geppetto.core.model.GeppettoModelAccess;
 import org.geppetto.core.model.IModelInterpreter;
-import org.geppetto.core.s3.S3Manager;
 import org.geppetto.core.services.ServiceCreator;
 import org.geppetto.core.services.registry.ServicesRegistry;
-import org.geppetto.core.services.registry.ServicesRegistry.ConversionServiceKey;
 import org.geppetto.core.simulation.ISimulatorCallbackListener;
 import org.geppetto.core.simulator.ASimulator;
 import org.geppetto.core.simulator.ISimulator;
 import org.geppetto.core.utilities.URLReader;
-import org.geppetto.core.utilities.Zipper;
 import org.geppetto.model.DomainModel;
 import org.geppetto.model.ExperimentState;
 import org.geppetto.model.ModelFormat;
-import org.geppetto.model.util.GeppettoModelException;
 import org.geppetto.model.util.PointerUtility;
 import org.geppetto.model.values.Pointer;
 import org.geppetto.simulation.AppConfig;
+import org.geppetto.simulation.ICacheableConversion;
+import org.geppetto.simulation.ICheckpointableSimulator;
 import org.geppetto.simulation.IExperimentListener;
+import org.geppetto.simulation.ISimulatorStepListener;
 import org.geppetto.simulation.SimulatorRuntimeStatus;
+import org.geppetto.simulation.StepBatch;
+import org.geppetto.simulation.conversion.ConversionCache;
+import org.geppetto.simulation.conversion.ConversionPlanner;
+import org.geppetto.simulation.conversion.ConversionStep;
+import org.geppetto.simulation.conversion.RegistryConversionGraph;
+import org.geppetto.simulation.manager.ExperimentRunMetrics.Measurement;
+import org.geppetto.simulation.manager.ExperimentRunMetrics.Phase;
+import org.geppetto.simulation.storage.IResultsStorage;
+import org.geppetto.simulation.storage.LocalResultsStorage;
+import org.geppetto.simulation.storage.ResultsPipeline;
+import org.geppetto.simulation.storage.S3ResultsStorage;
+import org.geppetto.simulation.utilities.ParallelTasks;
+import org.geppetto.simulation.worker.ForkedWorkerPool;
 import org.springframework.beans.factory.annotation.Autowired;
 
 /**
- * The ExperimentRun is created when an experiment can be executed, during the init phase all the needed services are created.
+ * The ExperimentRun is created when an experiment can be executed, during the init phase all the needed services are created. The run is executed by
+ * one of the workers of the ExperimentRunManager.
  * 
  * @author dandromereschi
  * @author matteocantarelli
  * 
  */
-public class ExperimentRunThread extends Thread implements ISimulatorCallbackListener
+public class ExperimentRunThread implements Runnable, ISimulatorCallbackListener, ISimulatorStepListener
 {
 
 	private static Log logger = LogFactory.getLog(ExperimentRunThread.class);
 
+	private static final int DEFAULT_STEP_BUFFER_CAPACITY = 500;
+
+	// milliseconds a simulator waits for the consumers before it carries on regardless
+	private static final long MAX_STEP_PAUSE = 5000;
+
 	@Autowired
 	public AppConfig appConfig;
 
@@ -78,6 +112,60 @@ public class ExperimentRunThread extends Thread implements ISimulatorCallbackLis
 
 	private RuntimeProject runtimeProject;
 
+	private SimulatorExecutor simulatorExecutor;
+
+	private List<SimulatorRunThread> simulatorRunThreads = new CopyOnWriteArrayList<SimulatorRunThread>();
+
+	// the worker executing the run, interrupted when the run is cancelled
+	private volatile Thread runner;
+
+	private volatile boolean canceled = false;
+
+	// stopped because the server is stopping, the run is resumed from its checkpoints once the server is back
+	private volatile boolean suspended = false;
+
+	private AtomicBoolean finished = new AtomicBoolean(false);
+
+	// once released the simulators which are still running cannot push steps anymore
+	private volatile boolean released = false;
+
+	private volatile SimulatorsDoneSignal simulatorsDone;
+
+	private ConversionCache conversionCache;
+
+	private ConversionPlanner conversionPlanner;
+
+	private IResultsStorage resultsStorage;
+
+	private ExecutorService resultsUploadExecutor;
+
+	// the steps the clients did not consume yet
+	private StepBuffer stepBuffer = new StepBuffer(DEFAULT_STEP_BUFFER_CAPACITY);
+
+	// set once a client consumes the steps, the simulators then wait for it when they get too far ahead
+	private volatile boolean flowControlled = false;
+
+	private ScheduledExecutorService checkpointTimer;
+
+	private long checkpointInterval;
+
+	private File checkpointFolder;
+
+	private volatile ScheduledFuture<?> checkpointing;
+
+	private ExperimentRunMetrics metrics;
+
+	private volatile long startedAt = 0;
+
+	private ForkedWorkerPool workerPool;
+
+	// by default the aspects are initialized one after the other
+	private int initParallelism = 1;
+
+	private Map<String, Long> conversionTimes = new ConcurrentHashMap<String, Long>();
+
+	private Map<String, Long> initializationTimes = new ConcurrentHashMap<String, Long>();
+
 	/**
 	 * @param experiment
 	 * @param runtimeExperiment
@@ -85,14 +173,34 @@ public class ExperimentRunThread extends Thread implements ISimulatorCallbackLis
 	 * @param geppettoCallbackListener
 	 * @param listener
 	 */
-	public ExperimentRunThread(IExperiment experiment, RuntimeProject runtimeProject, IExperimentListener listener)
+	public ExperimentRunThread(IExperiment experiment, RuntimeProject runtimeProject, IExperimentListener listener, SimulatorExecutor simulatorExecutor)
 	{
 		this.experiment = experiment;
 		this.runtimeProject = runtimeProject;
 		this.listener = listener;
+		this.simulatorExecutor = simulatorExecutor;
+		this.metrics = new ExperimentRunMetrics(experiment.getParentProject().getId(), experiment.getId());
+	}
+
+	/**
+	 * What is needed to initialize the simulator of an aspect
+	 */
+	private static class AspectInitialization
+	{
+		private IAspectConfiguration aspectConfig;
+		private String instancePath;
+		private DomainModel model;
+		private ASimulator simulator;
+		private IConversion conversionService;
+		private List<ModelFormat> inputFormats;
+		private List<ModelFormat> outputFormats;
 	}
 
 	/**
+	 * Initializes the simulators of the experiment. The pointers, the services and the formats are resolved for one aspect after the other, the
+	 * conversion of the models and the initialization of the simulators, which take most of the time, are done for up to initParallelism aspects at
+	 * the same time.
+	 * 
 	 * @param experiment
 	 * @throws GeppettoInitializationException
 	 */
@@ -100,205 +208,634 @@ public class ExperimentRunThread extends Thread implements ISimulatorCallbackLis
 	{
 		try
 		{
-			GeppettoModelAccess modelAccess = new GeppettoModelAccess(runtimeProject.getGeppettoModel());
-			List<? extends IAspectConfiguration> aspectConfigs = experiment.getAspectConfigurations();
-			for(IAspectConfiguration aspectConfig : aspectConfigs)
+			final GeppettoModelAccess modelAccess = new GeppettoModelAccess(runtimeProject.getGeppettoModel());
+			final ExperimentState experimentState = runtimeProject.getRuntimeExperiment(experiment).getExperimentState();
+			List<AspectInitialization> aspects = new ArrayList<AspectInitialization>();
+			for(IAspectConfiguration aspectConfig : experiment.getAspectConfigurations())
 			{
-				ISimulatorConfiguration simConfig = aspectConfig.getSimulatorConfiguration();
-				String simulatorId = simConfig.getSimulatorId();
-				String instancePath = aspectConfig.getInstance();
-				Pointer pointer = PointerUtility.getPointer(runtimeProject.getGeppettoModel(), instancePath);
+				checkCanceled();
+				aspects.add(prepareAspect(aspectConfig));
+			}
+			List<Callable<Void>> initializations = new ArrayList<Callable<Void>>();
+			for(final AspectInitialization aspect : aspects)
+			{
+				initializations.add(new Callable<Void>()
+				{
+					@Override
+					public Void call() throws Exception
+					{
+						checkCanceled();
+						initializeAspect(aspect, experimentState, modelAccess);
+						return null;
+					}
+				});
+			}
+			ParallelTasks.runAll(initializations, initParallelism);
+		}
+		catch(Exception e)
+		{
+			throw new GeppettoInitializationException(e);
+		}
+	}
 
-				// We are taking the domain model for the last element of the pointer
-				DomainModel model = PointerUtility.getType(pointer).getDomainModel();
+	/**
+	 * @throws GeppettoInitializationException
+	 */
+	private void checkCanceled() throws GeppettoInitializationException
+	{
+		if(canceled)
+		{
+			throw new GeppettoInitializationException("The experiment " + experiment.getId() + " was cancelled");
+		}
+	}
 
-				if(simConfig.getConversionServiceId() != null && !simConfig.getConversionServiceId().isEmpty())
-				{
-					AConversion conversionService = (AConversion) ServiceCreator.getNewServiceInstance(simConfig.getConversionServiceId());
-					conversionService.setScope(Scope.RUN);
-					conversionService.setProjectId(experiment.getParentProject().getId());
-					conversionService.setExperiment(experiment);
-					conversionServices.put(instancePath, conversionService);
-				}
-				ASimulator simulator = (ASimulator) ServiceCreator.getNewServiceInstance(simulatorId);
-				simulator.setProjectId(experiment.getParentProject().getId());
-				simulator.setExperiment(experiment);
-				simulatorServices.put(instancePath, simulator);
-				simulatorRuntimes.put(instancePath, new SimulatorRuntime());
-
-				// get conversion service
-				IConversion conversionService = null;
-				if(simConfig.getConversionServiceId() != null && !simConfig.getConversionServiceId().isEmpty())
-				{
-					conversionService = this.conversionServices.get(simConfig.getConversionServiceId());
-				}
-				IModelInterpreter modelService = runtimeProject.getModelInterpreter(pointer);
+	/**
+	 * Resolves the domain model of the aspect and creates its services
+	 * 
+	 * @param aspectConfig
+	 * @return
+	 * @throws Exception
+	 */
+	private AspectInitialization prepareAspect(IAspectConfiguration aspectConfig) throws Exception
+	{
+		AspectInitialization aspect = new AspectInitialization();
+		aspect.aspectConfig = aspectConfig;
+		ISimulatorConfiguration simConfig = aspectConfig.getSimulatorConfiguration();
+		String simulatorId = simConfig.getSimulatorId();
+		String instancePath = aspectConfig.getInstance();
+		aspect.instancePath = instancePath;
+		Pointer pointer = PointerUtility.getPointer(runtimeProject.getGeppettoModel(), instancePath);
 
-				// TODO: Extract formats from model interpreters from within here somehow
-				List<ModelFormat> inputFormats = ServicesRegistry.getModelInterpreterServiceFormats(modelService);
-				List<ModelFormat> outputFormats = ServicesRegistry.getSimulatorServiceFormats(simulator);
-				if(inputFormats == null || inputFormats.isEmpty())
-				{
-					throw new GeppettoInitializationException("No supported formats for the model interpreter " + modelService.getName());
-				}
-				if(outputFormats == null || outputFormats.isEmpty())
-				{
-					throw new GeppettoInitializationException("No supported formats for the simulator " + simulator.getName());
-				}
-				DomainModel iConvertedModel = null;
+		// We are taking the domain model for the last element of the pointer
+		aspect.model = PointerUtility.getType(pointer).getDomainModel();
 
-				if(conversionService != null)
-				{
-					// Read conversion supported model formats
-					List<ModelFormat> supportedInputFormats = conversionService.getSupportedInputs();
-					// FIXME: We can pass the model and the input format so it brings back a filtered list of outputs format
-					List<ModelFormat> supportedOutputFormats = conversionService.getSupportedOutputs();
+		if(simConfig.getConversionServiceId() != null && !simConfig.getConversionServiceId().isEmpty())
+		{
+			AConversion conversionService = (AConversion) ServiceCreator.getNewServiceInstance(simConfig.getConversionServiceId());
+			conversionService.setScope(Scope.RUN);
+			conversionService.setProjectId(experiment.getParentProject().getId());
+			conversionService.setExperiment(experiment);
+			conversionServices.put(instancePath, conversionService);
+		}
+		ASimulator simulator = (ASimulator) ServiceCreator.getNewServiceInstance(simulatorId);
+		simulator.setProjectId(experiment.getParentProject().getId());
+		simulator.setExperiment(experiment);
+		simulatorServices.put(instancePath, simulator);
+		simulatorRuntimes.put(instancePath, new SimulatorRuntime());
+		aspect.simulator = simulator;
 
-					// Check if real model formats and conversion supported model formats match
-					supportedInputFormats.retainAll(inputFormats);
-					supportedOutputFormats.retainAll(outputFormats);
+		// get conversion service
+		if(simConfig.getConversionServiceId() != null && !simConfig.getConversionServiceId().isEmpty())
+		{
+			aspect.conversionService = this.conversionServices.get(simConfig.getConversionServiceId());
+		}
+		IModelInterpreter modelService = runtimeProject.getModelInterpreter(pointer);
 
-					// Try to convert until a input-output format combination works
-					for(ModelFormat inputFormat : supportedInputFormats)
-					{
-						if(iConvertedModel == null)
-						{
-							for(ModelFormat outputFormat : supportedOutputFormats)
-							{
-								try
-								{
-
-									iConvertedModel = conversionService.convert(model, outputFormat, aspectConfig, modelAccess);
-									break;
-								}
-								catch(ConversionException e)
-								{
-									throw new GeppettoInitializationException(e);
-								}
-							}
-						}
-					}
-				}
-				else
+		// TODO: Extract formats from model interpreters from within here somehow
+		aspect.inputFormats = ServicesRegistry.getModelInterpreterServiceFormats(modelService);
+		aspect.outputFormats = ServicesRegistry.getSimulatorServiceFormats(simulator);
+		if(aspect.inputFormats == null || aspect.inputFormats.isEmpty())
+		{
+			throw new GeppettoInitializationException("No supported formats for the model interpreter " + modelService.getName());
+		}
+		if(aspect.outputFormats == null || aspect.outputFormats.isEmpty())
+		{
+			throw new GeppettoInitializationException("No supported formats for the simulator " + simulator.getName());
+		}
+		return aspect;
+	}
+
+	/**
+	 * Converts the model of the aspect if the simulator needs a different format and initializes the simulator
+	 * 
+	 * @param aspect
+	 * @param experimentState
+	 * @param modelAccess
+	 * @throws Exception
+	 */
+	private void initializeAspect(AspectInitialization aspect, ExperimentState experimentState, GeppettoModelAccess modelAccess) throws Exception
+	{
+		IAspectConfiguration aspectConfig = aspect.aspectConfig;
+		DomainModel model = aspect.model;
+		IConversion conversionService = aspect.conversionService;
+		List<ModelFormat> inputFormats = aspect.inputFormats;
+		List<ModelFormat> outputFormats = aspect.outputFormats;
+		DomainModel iConvertedModel = null;
+
+		long start = System.currentTimeMillis();
+		Measurement conversion = metrics.start(Phase.CONVERSION);
+		if(conversionService != null)
+		{
+			// Read conversion supported model formats
+			List<ModelFormat> supportedInputFormats = conversionService.getSupportedInputs();
+			// FIXME: We can pass the model and the input format so it brings back a filtered list of outputs format
+			List<ModelFormat> supportedOutputFormats = conversionService.getSupportedOutputs();
+
+			// Check if real model formats and conversion supported model formats match
+			supportedInputFormats.retainAll(inputFormats);
+			supportedOutputFormats.retainAll(outputFormats);
+
+			// Try to convert until a input-output format combination works
+			for(ModelFormat inputFormat : supportedInputFormats)
+			{
+				if(iConvertedModel == null)
 				{
-					// Check format returned by the model interpreter matches with the one accepted by the simulator
-					if(Collections.disjoint(inputFormats, outputFormats) && inputFormats != null && outputFormats != null)
+					for(ModelFormat outputFormat : supportedOutputFormats)
 					{
-						Map<ConversionServiceKey, List<IConversion>> conversionServices = ServicesRegistry.getConversionService(inputFormats, outputFormats);
+						try
+						{
 
-						for(Map.Entry<ConversionServiceKey, List<IConversion>> entry : conversionServices.entrySet())
+							iConvertedModel = convert(conversionService, model, outputFormat, aspectConfig, modelAccess);
+							break;
+						}
+						catch(ConversionException e)
 						{
-							if(iConvertedModel == null)
-							{
-								// FIXME: Assuming we will only have one conversion service
-								ConversionServiceKey conversionServiceKey = entry.getKey();
-								for(ModelFormat supportedModelFormat : entry.getValue().get(0).getSupportedOutputs(model))
-								{
-									// Verify supported outputs for this model
-									if(supportedModelFormat.getModelFormat().equalsIgnoreCase(conversionServiceKey.getOutputModelFormat().getModelFormat()))
-									{
-										((AConversion) entry.getValue().get(0)).setScope(Scope.RUN);
-										((AConversion) entry.getValue().get(0)).setProjectId(experiment.getParentProject().getId());
-										((AConversion) entry.getValue().get(0)).setExperiment(experiment);
-										iConvertedModel = entry.getValue().get(0).convert(model, conversionServiceKey.getOutputModelFormat(), aspectConfig, modelAccess);
-										break;
-									}
-								}
-							}
+							throw new GeppettoInitializationException(e);
 						}
 					}
 				}
+			}
+		}
+		else
+		{
+			// Check format returned by the model interpreter matches with the one accepted by the simulator
+			if(Collections.disjoint(inputFormats, outputFormats) && inputFormats != null && outputFormats != null)
+			{
+				iConvertedModel = convertAlongPlan(model, inputFormats, outputFormats, aspectConfig, modelAccess);
+			}
+		}
+		conversion.end();
+		long converted = System.currentTimeMillis();
+		conversionTimes.put(aspect.instancePath, converted - start);
 
-				// code to initialize simulator
-				if(simulator != null)
-				{
+		// code to initialize simulator
+		ASimulator simulator = aspect.simulator;
+		if(simulator != null)
+		{
+			Measurement initialization = metrics.start(Phase.SIMULATOR_INIT);
+			if(iConvertedModel == null)
+			{
+				simulator.initialize(model, aspectConfig, experimentState, this, modelAccess);
+			}
+			else
+			{
+				simulator.initialize(iConvertedModel, aspectConfig, experimentState, this, modelAccess);
+			}
+			initialization.end();
+			long end = System.currentTimeMillis();
+			initializationTimes.put(aspect.instancePath, end - converted);
+			logger.info("Finished initializing simulator for " + aspect.instancePath + ", conversion took " + (converted - start) + " ms, initialization took " + (end - converted)
+					+ " ms");
+		}
+	}
 
+	/**
+	 * Converts the model along the cheapest sequence of conversions the planner finds from the formats of the model interpreter to the ones of the
+	 * simulator
+	 * 
+	 * @param model
+	 * @param inputFormats
+	 * @param outputFormats
+	 * @param aspectConfig
+	 * @param modelAccess
+	 * @return the converted model, null if no conversion reaches a format accepted by the simulator
+	 * @throws ConversionException
+	 */
+	private DomainModel convertAlongPlan(DomainModel model, List<ModelFormat> inputFormats, List<ModelFormat> outputFormats, IAspectConfiguration aspectConfig,
+			GeppettoModelAccess modelAccess) throws ConversionException
+	{
+		if(conversionPlanner == null)
+		{
+			conversionPlanner = new ConversionPlanner(new RegistryConversionGraph());
+		}
+		Set<String> excludedSteps = new HashSet<String>();
+		while(true)
+		{
+			List<ConversionStep> plan = excludedSteps.isEmpty() ? conversionPlanner.plan(inputFormats, outputFormats) : conversionPlanner.plan(inputFormats, outputFormats,
+					excludedSteps);
+			if(plan == null)
+			{
+				return null;
+			}
+			// only the first conversion can be checked against this model, the intermediate ones don't exist yet
+			ConversionStep first = plan.get(0);
+			if(!supportsOutput(first.getService(), model, first.getOutput()))
+			{
+				excludedSteps.add(first.getKey());
+				continue;
+			}
+			DomainModel converted = model;
+			for(ConversionStep step : plan)
+			{
+				AConversion conversionService = (AConversion) step.getService();
+				// the planned services are the instances of the registry, shared by all the runs, the experiment set on them must be this one for
+				// the whole conversion
+				synchronized(conversionService)
+				{
+					conversionService.setScope(Scope.RUN);
+					conversionService.setProjectId(experiment.getParentProject().getId());
+					conversionService.setExperiment(experiment);
 					long start = System.currentTimeMillis();
-					ExperimentState experimentState = runtimeProject.getRuntimeExperiment(experiment).getExperimentState();
-					if(iConvertedModel == null)
-					{
-						simulator.initialize(model, aspectConfig, experimentState, this, modelAccess);
-					}
-					else
-					{
-						simulator.initialize(iConvertedModel, aspectConfig, experimentState, this, modelAccess);
-					}
-					long end = System.currentTimeMillis();
-					logger.info("Finished initializing simulator, took " + (end - start) + " ms ");
+					converted = convert(conversionService, converted, step.getOutput(), aspectConfig, modelAccess);
+					conversionPlanner.recordTiming(step, System.currentTimeMillis() - start);
 				}
 			}
+			return converted;
 		}
-		catch(Exception e)
+	}
+
+	/**
+	 * @param conversionService
+	 * @param model
+	 * @param outputFormat
+	 * @return true if the conversion service can convert this model to the given format
+	 * @throws ConversionException
+	 */
+	private boolean supportsOutput(IConversion conversionService, DomainModel model, ModelFormat outputFormat) throws ConversionException
+	{
+		for(ModelFormat supportedModelFormat : conversionService.getSupportedOutputs(model))
 		{
-			throw new GeppettoInitializationException(e);
+			if(supportedModelFormat.getModelFormat().equalsIgnoreCase(outputFormat.getModelFormat()))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Converts the model, unless the same conversion is found in the conversion cache. Only the conversions of the services which declare their
+	 * output reusable are cached.
+	 * 
+	 * @param conversionService
+	 * @param model
+	 * @param outputFormat
+	 * @param aspectConfig
+	 * @param modelAccess
+	 * @return the converted model
+	 * @throws ConversionException
+	 */
+	private DomainModel convert(IConversion conversionService, DomainModel model, ModelFormat outputFormat, IAspectConfiguration aspectConfig, GeppettoModelAccess modelAccess)
+			throws ConversionException
+	{
+		ConversionCache cache = conversionCache;
+		String key = null;
+		if(cache != null && conversionService instanceof ICacheableConversion && ((ICacheableConversion) conversionService).supportsCaching())
+		{
+			key = cache.getKey(model, outputFormat, aspectConfig, conversionService.getClass().getName());
+		}
+		if(key != null)
+		{
+			DomainModel cached = cache.get(key, conversionService.getClass().getClassLoader());
+			if(cached != null)
+			{
+				logger.info("Reusing the converted model of " + aspectConfig.getInstance() + " in format " + outputFormat.getModelFormat());
+				return cached;
+			}
+		}
+		DomainModel converted = conversionService.convert(model, outputFormat, aspectConfig, modelAccess);
+		if(key != null)
+		{
+			cache.put(key, converted);
+		}
+		return converted;
+	}
+
+	/**
+	 * @param conversionCache
+	 *            where converted models are looked up before converting them, null to always convert
+	 */
+	public void setConversionCache(ConversionCache conversionCache)
+	{
+		this.conversionCache = conversionCache;
+	}
+
+	/**
+	 * @param conversionPlanner
+	 *            plans the conversions when the simulator doesn't accept the formats of the model interpreter
+	 */
+	public void setConversionPlanner(ConversionPlanner conversionPlanner)
+	{
+		this.conversionPlanner = conversionPlanner;
+	}
+
+	/**
+	 * @param resultsStorage
+	 *            where the results are persisted, by default S3 or the temporary folder of the run without a persistence bundle
+	 */
+	public void setResultsStorage(IResultsStorage resultsStorage)
+	{
+		this.resultsStorage = resultsStorage;
+	}
+
+	/**
+	 * @param resultsUploadExecutor
+	 *            where the results are uploaded in parallel, if null they are uploaded one after the other
+	 */
+	public void setResultsUploadExecutor(ExecutorService resultsUploadExecutor)
+	{
+		this.resultsUploadExecutor = resultsUploadExecutor;
+	}
+
+	/**
+	 * @return the milliseconds the conversion of the model took for each aspect, by instance path
+	 */
+	public Map<String, Long> getConversionTimes()
+	{
+		return conversionTimes;
+	}
+
+	/**
+	 * @return the milliseconds the initialization of the simulator took for each aspect, by instance path
+	 */
+	public Map<String, Long> getInitializationTimes()
+	{
+		return initializationTimes;
+	}
+
+	/**
+	 * @param workerPool
+	 *            where the simulators which support it are executed, null to execute all of them in this JVM
+	 */
+	public void setWorkerPool(ForkedWorkerPool workerPool)
+	{
+		this.workerPool = workerPool;
+	}
+
+	/**
+	 * @param metrics
+	 *            the metrics of the run, which might already contain the phases before the run started
+	 */
+	public void setMetrics(ExperimentRunMetrics metrics)
+	{
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @return the resources used by this run so far
+	 */
+	public ExperimentRunMetrics getMetrics()
+	{
+		return metrics;
+	}
+
+	/**
+	 * @return the experiment being run
+	 */
+	public IExperiment getExperiment()
+	{
+		return experiment;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.geppetto.simulation.ISimulatorStepListener#stepsProcessed(org.geppetto.simulation.StepBatch)
+	 */
+	@Override
+	public void stepsProcessed(StepBatch batch)
+	{
+		SimulatorRuntime simulatorRuntime = simulatorRuntimes.get(batch.getInstancePath());
+		if(simulatorRuntime == null || canceled || released)
+		{
+			return;
+		}
+		if(flowControlled)
+		{
+			// every simulator gets an equal share of the buffer as credit
+			int maxNonConsumedSteps = Math.max(1, stepBuffer.getCapacity() / Math.max(1, simulatorRuntimes.size()));
+			try
+			{
+				if(!simulatorRuntime.awaitCredit(batch.getSteps(), maxNonConsumedSteps, MAX_STEP_PAUSE))
+				{
+					// nobody is consuming, the simulator is not held back until a client consumes again
+					logger.warn("The steps of experiment " + experiment.getId() + " were not consumed for " + MAX_STEP_PAUSE + " ms, the oldest ones are dropped");
+					flowControlled = false;
+				}
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+		simulatorRuntime.addProcessedSteps(batch.getSteps());
+		for(StepBatch dropped : stepBuffer.offer(batch))
+		{
+			// the dropped steps will never be consumed, they don't hold back the simulator
+			SimulatorRuntime droppedRuntime = simulatorRuntimes.get(dropped.getInstancePath());
+			if(droppedRuntime != null)
+			{
+				// null once the run was released while a simulator was still pushing its steps
+				droppedRuntime.addStepsConsumed(dropped.getSteps());
+			}
 		}
 	}
 
 	/*
 	 * (non-Javadoc)
 	 * 
-	 * @see java.lang.Thread#run()
+	 * @see org.geppetto.simulation.ISimulatorStepListener#heartbeat(java.lang.String)
 	 */
-	public synchronized void run()
+	@Override
+	public void heartbeat(String instancePath)
 	{
-		try
+		SimulatorRuntime simulatorRuntime = simulatorRuntimes.get(instancePath);
+		if(simulatorRuntime != null)
 		{
-			init(experiment);
+			simulatorRuntime.heartbeat();
+		}
+	}
 
-			while(experiment.getStatus().equals(ExperimentStatus.RUNNING))
+	/**
+	 * @param now
+	 * @param experimentTimeout
+	 *            milliseconds the whole run can take, 0 means no limit
+	 * @param simulatorTimeout
+	 *            milliseconds a simulator can be stepping, 0 means no limit
+	 * @param stallTimeout
+	 *            milliseconds a simulator which reports its progress can go without reporting it, 0 means no limit
+	 * @return why the run should be stopped, null if it is within its limits
+	 */
+	public String checkLimits(long now, long experimentTimeout, long simulatorTimeout, long stallTimeout)
+	{
+		if(startedAt > 0 && experimentTimeout > 0 && now - startedAt > experimentTimeout)
+		{
+			return "The experiment did not complete within " + experimentTimeout + " ms. ";
+		}
+		for(Map.Entry<String, SimulatorRuntime> simulatorRuntime : simulatorRuntimes.entrySet())
+		{
+			if(simulatorRuntime.getValue().isOverdue(now, simulatorTimeout))
 			{
+				return "The simulator of " + simulatorRuntime.getKey() + " did not complete within " + simulatorTimeout + " ms. ";
+			}
+			if(simulatorRuntime.getValue().isStalled(now, stallTimeout))
+			{
+				return "The simulator of " + simulatorRuntime.getKey() + " made no progress for " + stallTimeout + " ms. ";
+			}
+		}
+		return null;
+	}
 
-				List<? extends IAspectConfiguration> aspectConfigs = experiment.getAspectConfigurations();
+	/**
+	 * Once the steps are polled the simulators are held back when they get too far ahead of the consumers
+	 * 
+	 * @return the steps processed since the last call, the ones dropped because the buffer was full are not returned
+	 */
+	public List<StepBatch> pollSteps()
+	{
+		flowControlled = true;
+		List<StepBatch> batches = stepBuffer.drain();
+		for(StepBatch batch : batches)
+		{
+			SimulatorRuntime simulatorRuntime = simulatorRuntimes.get(batch.getInstancePath());
+			if(simulatorRuntime != null)
+			{
+				simulatorRuntime.addStepsConsumed(batch.getSteps());
+			}
+		}
+		return batches;
+	}
 
-				for(IAspectConfiguration aspectConfig : aspectConfigs)
-				{
+	/**
+	 * @return for each simulator the steps it processed per second and the milliseconds it waited for the consumers
+	 */
+	public String getStepThroughput()
+	{
+		StringBuilder throughput = new StringBuilder();
+		for(Map.Entry<String, SimulatorRuntime> simulatorRuntime : simulatorRuntimes.entrySet())
+		{
+			SimulatorRuntime runtime = simulatorRuntime.getValue();
+			throughput.append(simulatorRuntime.getKey()).append(": ").append(runtime.getProcessedSteps()).append(" steps, ")
+					.append(String.format("%.1f", runtime.getThroughput())).append(" steps/s, ").append(runtime.getNonConsumedSteps()).append(" not consumed, paused ")
+					.append(runtime.getPausedTime()).append(" ms; ");
+		}
+		return throughput.toString();
+	}
 
-					String instancePath = aspectConfig.getInstance();
-					Pointer pointer = PointerUtility.getPointer(runtimeProject.getGeppettoModel(), instancePath);
-					SimulatorRuntime simulatorRuntime = simulatorRuntimes.get(instancePath);
-					ISimulator simulator = simulatorServices.get(instancePath);
+	/**
+	 * @return the steps of this run which were not consumed yet
+	 */
+	public StepBuffer getStepBuffer()
+	{
+		return stepBuffer;
+	}
 
-					// if it's still stepping or completed we don't step again
-					if(!simulatorRuntime.getStatus().equals(SimulatorRuntimeStatus.STEPPING) && !simulatorRuntime.getStatus().equals(SimulatorRuntimeStatus.DONE))
-					{
-						// we advance the simulation for this simulator only if we are not already stepping
-						// note that some simulators might perform more than one step at the time (i.e. NEURON
-						// so the status will be STEPPING until they are all completed)
+	/**
+	 * @param initParallelism
+	 *            how many aspects can be converted and initialized at the same time
+	 */
+	public void setInitParallelism(int initParallelism)
+	{
+		this.initParallelism = Math.max(1, initParallelism);
+	}
 
-						SimulatorRunThread simulatorRunThread = new SimulatorRunThread(experiment, simulator);
-						simulatorRunThread.start();
-						simulatorRuntime.setStatus(SimulatorRuntimeStatus.STEPPING);
-					}
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run()
+	{
+		runner = Thread.currentThread();
+		startedAt = System.currentTimeMillis();
+		try
+		{
+			init(experiment);
+			resumeFromCheckpoints();
+			checkpointing = scheduleCheckpoints();
 
+			// the simulators record their CPU time, the run records how long they took altogether
+			Measurement simulation = metrics.start(Phase.SIMULATE);
+			// every simulator signals once when it is done or failed, meanwhile this thread just waits
+			simulatorsDone = new SimulatorsDoneSignal(simulatorServices.size());
+			for(Map.Entry<String, ISimulator> simulator : simulatorServices.entrySet())
+			{
+				if(!experiment.getStatus().equals(ExperimentStatus.RUNNING))
+				{
+					break;
 				}
+				// note that some simulators might perform more than one step at the time (i.e. NEURON
+				// so the status will be STEPPING until they are all completed)
+				SimulatorRunThread simulatorRunThread = new SimulatorRunThread(experiment, simulator.getValue(), this);
+				simulatorRunThread.setMetrics(metrics);
+				simulatorRunThread.setWorkerPool(workerPool);
+				simulatorRunThreads.add(simulatorRunThread);
+				simulatorRuntimes.get(simulator.getKey()).setStatus(SimulatorRuntimeStatus.STEPPING);
+				simulatorExecutor.execute(simulatorRunThread);
+			}
+			if(experiment.getStatus().equals(ExperimentStatus.RUNNING))
+			{
+				simulatorsDone.await();
+			}
+			simulation.end();
 
+			if(!canceled && experiment.getStatus().equals(ExperimentStatus.RUNNING))
+			{
 				if(checkAllSimulatorsAreDone())
 				{
 					experiment.setStatus(ExperimentStatus.COMPLETED);
 					experiment.updateEndDate();
+					Measurement persist = metrics.start(Phase.PERSIST);
 					DataManagerHelper.getDataManager().saveEntity(experiment.getParentProject());
-					logger.info("All simulators are done, experiment " + experiment.getId() + " was completed.");
-					break;
+					persist.end();
+					logger.info("All simulators are done, experiment " + experiment.getId() + " was completed. " + getStepThroughput());
+				}
+				else
+				{
+					externalProcessFailed("Not all the simulators completed. ", new GeppettoExecutionException("Results missing"));
 				}
 			}
 		}
-		catch(GeppettoInitializationException | GeppettoModelException e)
+		catch(GeppettoInitializationException e)
 		{
-			// TODO How to make the error surface in some description?
-			externalProcessFailed("", e);
-			logger.error(e);
+			if(!canceled)
+			{
+				// TODO How to make the error surface in some description?
+				externalProcessFailed("", e);
+				logger.error(e);
+			}
 		}
-		try
+		catch(InterruptedException e)
 		{
-			Thread.sleep(500);
+			if(!canceled)
+			{
+				String errorMessage = "Error running experiment with name: (" + experiment.getName() + ") and id: " + experiment.getId();
+				externalProcessFailed(errorMessage, e);
+			}
 		}
-		catch(InterruptedException e)
+		stopCheckpoints();
+		if(!suspended)
 		{
-			String errorMessage = "Error running experiment with name: (" + experiment.getName() + ") and id: " + experiment.getId();
-			externalProcessFailed(errorMessage, e);
-			throw new RuntimeException(e);
+			// only a run interrupted by a shutdown is resumed, a completed, failed or cancelled one starts from scratch if it is run again
+			clearCheckpoints();
+		}
+		if(canceled)
+		{
+			if(!suspended)
+			{
+				// nothing produced by a cancelled run is kept
+				deleteTemporaryFiles();
+			}
+			// the interrupt was meant for this run only, not for the next one using the same worker
+			Thread.interrupted();
+		}
+		else
+		{
+			try
+			{
+				Thread.sleep(500);
+			}
+			catch(InterruptedException e)
+			{
+				String errorMessage = "Error running experiment with name: (" + experiment.getName() + ") and id: " + experiment.getId();
+				externalProcessFailed(errorMessage, e);
+				throw new RuntimeException(e);
 
+			}
 		}
+		runner = null;
 
 		// and when done, notify about it
 		try
@@ -342,16 +879,68 @@ public class ExperimentRunThread extends Thread implements ISimulatorCallbackLis
 	}
 
 	/**
+	 * Stops the run, the conversion, initialization, simulation and upload phases check for the cancellation and the threads executing them are
+	 * interrupted so that blocking calls return early. The run then terminates as usual notifying the listener.
+	 * 
 	 * @throws GeppettoExecutionException
 	 */
 	protected void cancelRun() throws GeppettoExecutionException
 	{
 
 		logger.info("Canceling ExperimentRun");
+		canceled = true;
 		experiment.setStatus(ExperimentStatus.CANCELED);
 
+		stopSimulators();
+	}
+
+	/**
+	 * Stops the run without changing the status of the experiment, which stays RUNNING together with its checkpoints so that the run is recovered
+	 * when the server starts again
+	 */
+	protected void suspendRun()
+	{
+		if(canceled)
+		{
+			return;
+		}
+		logger.info("Suspending the run of experiment " + experiment.getId());
+		suspended = true;
+		canceled = true;
+		stopSimulators();
+	}
+
+	/**
+	 * @return true if the run was stopped by a shutdown of the server
+	 */
+	public boolean isSuspended()
+	{
+		return suspended;
+	}
+
+	/**
+	 * Fails a run which exceeded its limits and stops its simulators, the results they might still produce are discarded
+	 * 
+	 * @param message
+	 */
+	protected void abort(String message)
+	{
+		if(canceled)
+		{
+			return;
+		}
+		logger.warn("Aborting experiment " + experiment.getId() + ": " + message);
+		canceled = true;
+		externalProcessFailed(message, new GeppettoExecutionException("Experiment run aborted"));
+		stopSimulators();
+	}
+
+	/**
+	 * Instructs the simulators to stop and interrupts the threads working for this run
+	 */
+	private void stopSimulators()
+	{
 		// iterate through aspects and instruct them to stop
-		// TODO Check
 		for(ISimulator simulator : simulatorServices.values())
 		{
 			if(simulator != null)
@@ -359,6 +948,212 @@ public class ExperimentRunThread extends Thread implements ISimulatorCallbackLis
 				simulator.setInitialized(false);
 			}
 		}
+		for(SimulatorRunThread simulatorRunThread : simulatorRunThreads)
+		{
+			simulatorRunThread.cancel();
+		}
+		Thread worker = runner;
+		if(worker != null)
+		{
+			worker.interrupt();
+		}
+	}
+
+	/**
+	 * @return true if the run was cancelled
+	 */
+	public boolean isCanceled()
+	{
+		return canceled;
+	}
+
+	/**
+	 * The run is finished either when it notifies the listener or when it is given up on after a cancellation, only the first of the two must
+	 * release the resources of the run.
+	 * 
+	 * @return true if the run was not already finished
+	 */
+	boolean markFinished()
+	{
+		return finished.compareAndSet(false, true);
+	}
+
+	/**
+	 * @param checkpointTimer
+	 *            where the checkpoints are written
+	 * @param checkpointInterval
+	 *            milliseconds between two checkpoints of the simulators which support them, 0 disables checkpoints
+	 * @param checkpointFolder
+	 *            where the checkpoints of all the runs are kept, it has to survive a restart of the server and the temporary folders of the project
+	 */
+	public void setCheckpointing(ScheduledExecutorService checkpointTimer, long checkpointInterval, File checkpointFolder)
+	{
+		this.checkpointTimer = checkpointTimer;
+		this.checkpointInterval = checkpointInterval;
+		this.checkpointFolder = checkpointFolder;
+	}
+
+	/**
+	 * @return the folder of the checkpoints of this run, null if checkpoints are not kept
+	 */
+	private File getCheckpointFolder()
+	{
+		if(checkpointFolder == null)
+		{
+			return null;
+		}
+		return new File(new File(checkpointFolder, String.valueOf(runtimeProject.getGeppettoProject().getId())), String.valueOf(experiment.getId()));
+	}
+
+	/**
+	 * @return the checkpoints of the simulators which support them, by instance path
+	 */
+	private Map<String, CheckpointStore> getCheckpoints()
+	{
+		Map<String, CheckpointStore> checkpoints = new HashMap<String, CheckpointStore>();
+		File runFolder = getCheckpointFolder();
+		if(runFolder == null)
+		{
+			return checkpoints;
+		}
+		for(Map.Entry<String, ISimulator> simulator : simulatorServices.entrySet())
+		{
+			if(simulator.getValue() instanceof ICheckpointableSimulator && ((ICheckpointableSimulator) simulator.getValue()).supportsCheckpoints())
+			{
+				File folder = new File(runFolder, simulator.getKey().replaceAll("[^A-Za-z0-9._-]", "_"));
+				checkpoints.put(simulator.getKey(), new CheckpointStore(folder));
+			}
+		}
+		return checkpoints;
+	}
+
+	/**
+	 * The simulators which have a checkpoint, e.g. because the server stopped while they were running, continue from it
+	 * 
+	 * @throws GeppettoInitializationException
+	 */
+	private void resumeFromCheckpoints() throws GeppettoInitializationException
+	{
+		for(Map.Entry<String, CheckpointStore> checkpoint : getCheckpoints().entrySet())
+		{
+			try
+			{
+				if(checkpoint.getValue().resume((ICheckpointableSimulator) simulatorServices.get(checkpoint.getKey())))
+				{
+					logger.info("Experiment " + experiment.getId() + " resumed " + checkpoint.getKey() + " from its last checkpoint");
+				}
+			}
+			catch(GeppettoExecutionException e)
+			{
+				throw new GeppettoInitializationException(e);
+			}
+		}
+	}
+
+	/**
+	 * @return the periodic checkpoints, null if there is nothing to checkpoint
+	 */
+	private ScheduledFuture<?> scheduleCheckpoints()
+	{
+		final Map<String, CheckpointStore> checkpoints = getCheckpoints();
+		if(checkpointTimer == null || checkpointInterval <= 0 || checkpoints.isEmpty())
+		{
+			return null;
+		}
+		return checkpointTimer.scheduleWithFixedDelay(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				for(Map.Entry<String, CheckpointStore> checkpoint : checkpoints.entrySet())
+				{
+					SimulatorRuntime simulatorRuntime = simulatorRuntimes.get(checkpoint.getKey());
+					if(!canceled && simulatorRuntime != null && simulatorRuntime.getStatus().equals(SimulatorRuntimeStatus.STEPPING))
+					{
+						try
+						{
+							checkpoint.getValue().write((ICheckpointableSimulator) simulatorServices.get(checkpoint.getKey()));
+						}
+						catch(GeppettoExecutionException | RuntimeException e)
+						{
+							// the run goes on, it will resume from the previous checkpoint if needed
+							logger.warn("Unable to checkpoint " + checkpoint.getKey() + " of experiment " + experiment.getId(), e);
+						}
+					}
+				}
+			}
+		}, checkpointInterval, checkpointInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 
+	 */
+	private void stopCheckpoints()
+	{
+		ScheduledFuture<?> scheduled = checkpointing;
+		if(scheduled != null)
+		{
+			scheduled.cancel(false);
+			checkpointing = null;
+		}
+	}
+
+	/**
+	 * Deletes the checkpoints of all the simulators of the run, even after the run was released
+	 */
+	void clearCheckpoints()
+	{
+		File runFolder = getCheckpointFolder();
+		if(runFolder == null)
+		{
+			return;
+		}
+		try
+		{
+			new CheckpointStore(runFolder).clear();
+		}
+		catch(IOException e)
+		{
+			logger.warn("Unable to delete the checkpoints of experiment " + experiment.getId(), e);
+		}
+	}
+
+	/**
+	 * Deletes the temporary files written by the simulators and by the conversions of this run
+	 */
+	void deleteTemporaryFiles()
+	{
+		for(IAspectConfiguration aspectConfig : experiment.getAspectConfigurations())
+		{
+			try
+			{
+				File aspectFolder = new File(PathConfiguration.createExperimentTmpPath(Scope.RUN, runtimeProject.getGeppettoProject().getId(), experiment.getId(),
+						aspectConfig.getInstance(), "canceled")).getParentFile();
+				if(aspectFolder.exists())
+				{
+					Files.walkFileTree(aspectFolder.toPath(), new SimpleFileVisitor<Path>()
+					{
+						@Override
+						public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException
+						{
+							Files.delete(file);
+							return FileVisitResult.CONTINUE;
+						}
+
+						@Override
+						public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException
+						{
+							Files.delete(dir);
+							return FileVisitResult.CONTINUE;
+						}
+					});
+				}
+			}
+			catch(IOException e)
+			{
+				logger.warn("Unable to delete the temporary files of experiment " + experiment.getId() + " for " + aspectConfig.getInstance(), e);
+			}
+		}
 	}
 
 	/**
@@ -366,6 +1161,7 @@ public class ExperimentRunThread extends Thread implements ISimulatorCallbackLis
 	 */
 	public void release()
 	{
+		released = true;
 		simulatorServices.clear();
 		conversionServices.clear();
 		simulatorRuntimes.clear();
@@ -381,33 +1177,61 @@ public class ExperimentRunThread extends Thread implements ISimulatorCallbackLis
 	public void endOfSteps(IAspectConfiguration aspectConfiguration, Map<File, ResultsFormat> results) throws GeppettoExecutionException
 	{
 		String instancePath = aspectConfiguration.getInstance();
+		try
+		{
+			storeResults(instancePath, results);
+		}
+		finally
+		{
+			simulatorDone(instancePath);
+		}
+	}
+
+	/**
+	 * @param instancePath
+	 * @param results
+	 * @throws GeppettoExecutionException
+	 */
+	private void storeResults(String instancePath, Map<File, ResultsFormat> results) throws GeppettoExecutionException
+	{
 		SimulatorRuntime simulatorRuntime = simulatorRuntimes.get(instancePath);
+		if(canceled)
+		{
+			// the results of a cancelled run are not uploaded
+			return;
+		}
 		
+		String folder = "projects/" + Long.toString(runtimeProject.getGeppettoProject().getId()) + "/experiment/" + experiment.getId() + "/";
+		String fileName = "rawRecording.zip";
+		IResultsStorage storage = resultsStorage;
+		if(storage == null)
+		{
+			if(!DataManagerHelper.getDataManager().isDefault())
+			{
+				storage = new S3ResultsStorage();
+			}
+			else
+			{
+				// without a persistence bundle the results stay in the temporary folder of the run
+				File zip = new File(PathConfiguration.createExperimentTmpPath(Scope.RUN, runtimeProject.getGeppettoProject().getId(), experiment.getId(), instancePath, fileName));
+				storage = new LocalResultsStorage(zip.getParentFile(), true);
+				folder = "";
+			}
+		}
+		ResultsPipeline pipeline = new ResultsPipeline(storage, resultsUploadExecutor);
 		try
 		{
 			List<File> rawToZip = new ArrayList<File>();
+			List<Future<URL>> recordings = new ArrayList<Future<URL>>();
 
-			// where we store the results in S3
+			// the recordings upload while the raw results are compressed
 			for(File result : results.keySet())
 			{
 				switch(results.get(result))
 				{
 					case GEPPETTO_RECORDING:
 					{
-						String fileName = URLReader.getFileName(result.toURI().toURL());
-						String newPath = "projects/" + Long.toString(runtimeProject.getGeppettoProject().getId()) + "/experiment/" + experiment.getId() + "/" + fileName;
-						IPersistedData recording;
-						if(!DataManagerHelper.getDataManager().isDefault())
-						{
-							S3Manager.getInstance().saveFileToS3(result, newPath);
-							recording = DataManagerHelper.getDataManager().newPersistedData(S3Manager.getInstance().getURL(newPath), PersistedDataType.RECORDING);
-						}
-						else
-						{
-							recording = DataManagerHelper.getDataManager().newPersistedData(result.toURI().toURL(), PersistedDataType.RECORDING);
-						}
-						ISimulationResult simulationResults = DataManagerHelper.getDataManager().newSimulationResult(instancePath, recording, ResultsFormat.GEPPETTO_RECORDING);
-						experiment.addSimulationResult(simulationResults);
+						recordings.add(pipeline.store(result, folder + URLReader.getFileName(result.toURI().toURL())));
 						break;
 					}
 					case RAW:
@@ -418,41 +1242,62 @@ public class ExperimentRunThread extends Thread implements ISimulatorCallbackLis
 				}
 			}
 
-			String fileName = "rawRecording.zip";
-			Zipper zipper = new Zipper(PathConfiguration.createExperimentTmpPath(Scope.RUN, runtimeProject.getGeppettoProject().getId(), experiment.getId(), instancePath, fileName));
-
-			for(File raw : rawToZip)
+			Measurement zip = metrics.start(Phase.ZIP);
+			URL rawURL = pipeline.zip(rawToZip, folder + fileName);
+			zip.end();
+			metrics.addBytes(Phase.ZIP, pipeline.getBytesZipped(), pipeline.getBytesArchived());
+			// what is left of the uploads once the archive is written
+			Measurement upload = metrics.start(Phase.UPLOAD);
+			pipeline.await();
+			upload.end();
+			metrics.addBytes(Phase.UPLOAD, pipeline.getBytesStored(), pipeline.getBytesStored());
+			if(canceled)
 			{
-				zipper.addToZip(raw.toURI().toURL());
+				return;
 			}
-			Path zipped = zipper.processAddedFilesAndZip();
-			String newPath = "projects/" + Long.toString(runtimeProject.getGeppettoProject().getId()) + "/experiment/" + experiment.getId() + "/" + fileName;
-			
-			ISimulationResult simulationResults;
-			IPersistedData rawResults;
-			if(!DataManagerHelper.getDataManager().isDefault())
+
+			for(Future<URL> recording : recordings)
 			{
-				//save results to amazon instance server
-				S3Manager.getInstance().saveFileToS3(zipped.toFile(), newPath);
-				rawResults = DataManagerHelper.getDataManager().newPersistedData(S3Manager.getInstance().getURL(newPath), PersistedDataType.RECORDING);
-			}else {
-				//create persisted data object, but don't save it to a server, just locally
-				rawResults = DataManagerHelper.getDataManager().newPersistedData(zipped.toUri().toURL(), PersistedDataType.RECORDING);
+				IPersistedData recordingData = DataManagerHelper.getDataManager().newPersistedData(recording.get(), PersistedDataType.RECORDING);
+				experiment.addSimulationResult(DataManagerHelper.getDataManager().newSimulationResult(instancePath, recordingData, ResultsFormat.GEPPETTO_RECORDING));
 			}
+			IPersistedData rawResults = DataManagerHelper.getDataManager().newPersistedData(rawURL, PersistedDataType.RECORDING);
+			experiment.addSimulationResult(DataManagerHelper.getDataManager().newSimulationResult(instancePath, rawResults, ResultsFormat.RAW));
 
-			simulationResults = DataManagerHelper.getDataManager().newSimulationResult(instancePath, rawResults, ResultsFormat.RAW);
-			experiment.addSimulationResult(simulationResults);
-
+			Measurement persist = metrics.start(Phase.PERSIST);
 			DataManagerHelper.getDataManager().saveEntity(experiment.getParentProject());
+			persist.end();
 		}
-		catch(IOException e)
+		catch(IOException | ExecutionException e)
 		{
+			pipeline.cancel();
 			throw new GeppettoExecutionException(e);
 		}
+		catch(InterruptedException e)
+		{
+			// the run was cancelled while the results were uploading
+			pipeline.cancel();
+			Thread.currentThread().interrupt();
+			return;
+		}
 
 		simulatorRuntime.setStatus(SimulatorRuntimeStatus.DONE);
 	}
 
+	/**
+	 * Counts down the simulators still working, once per simulator
+	 * 
+	 * @param instancePath
+	 */
+	private void simulatorDone(String instancePath)
+	{
+		SimulatorsDoneSignal signal = simulatorsDone;
+		if(signal != null)
+		{
+			signal.simulatorDone(instancePath);
+		}
+	}
+
 	@Override
 	public void externalProcessFailed(String message, Exception e)
 	{
@@ -461,5 +1306,11 @@ public class ExperimentRunThread extends Thread implements ISimulatorCallbackLis
 		experiment.setStatus(ExperimentStatus.ERROR);
 		this.listener.experimentError(errorMessage, message + e.getMessage(), e, experiment);
 		DataManagerHelper.getDataManager().saveEntity(experiment);
+		// the run does not wait for the other simulators of a failed experiment
+		SimulatorsDoneSignal signal = simulatorsDone;
+		if(signal != null)
+		{
+			signal.abort();
+		}
 	}
 }
@@ -8,6 +8,8 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -20,8 +22,10 @@ import org.geppetto.core.common.GeppettoExecutionException;
 import org.geppetto.core.common.GeppettoInitializationException;
 import org.geppetto.core.data.DataManagerHelper;
 import org.geppetto.core.data.model.ExperimentStatus;
+import org.geppetto.core.data.model.IAspectConfiguration;
 import org.geppetto.core.data.model.IExperiment;
 import org.geppetto.core.data.model.IGeppettoProject;
+import org.geppetto.core.data.model.IParameter;
 import org.geppetto.core.data.model.IPersistedData;
 import org.geppetto.core.data.model.ISimulationResult;
 import org.geppetto.core.data.model.IUser;
@@ -32,8 +36,10 @@ import org.geppetto.core.datasources.GeppettoDataSourceException;
 import org.geppetto.core.manager.IGeppettoManager;
 import org.geppetto.core.manager.Scope;
 import org.geppetto.core.model.GeppettoModelReader;
+import org.geppetto.core.model.IModelInterpreter;
 import org.geppetto.core.s3.S3Manager;
 import org.geppetto.core.services.DropboxUploadService;
+import org.geppetto.core.services.GeppettoFeature;
 import org.geppetto.core.simulation.IGeppettoManagerCallbackListener;
 import org.geppetto.core.utilities.URLReader;
 import org.geppetto.core.utilities.Zipper;
@@ -45,8 +51,13 @@ import org.geppetto.model.datasources.RunnableQuery;
 import org.geppetto.model.util.GeppettoModelException;
 import org.geppetto.model.util.GeppettoModelTraversal;
 import org.geppetto.model.util.GeppettoVisitingException;
+import org.geppetto.model.util.PointerUtility;
+import org.geppetto.model.values.Pointer;
 import org.geppetto.simulation.GeppettoManagerConfiguration;
+import org.geppetto.simulation.IStepConsumer;
+import org.geppetto.simulation.StepBatch;
 import org.geppetto.simulation.utilities.GeppettoProjectZipper;
+import org.geppetto.simulation.utilities.ParameterGrid;
 import org.geppetto.simulation.visitor.GeppettoModelTypesVisitor;
 import org.geppetto.simulation.visitor.PersistModelVisitor;
 import org.springframework.stereotype.Component;
@@ -67,6 +78,9 @@ public class GeppettoManager implements IGeppettoManager
 
 	private static Log logger = LogFactory.getLog(GeppettoManager.class);
 
+	// the largest number of experiments a single parameter sweep can create
+	private static final int MAX_SWEEP_SIZE = 10000;
+
 	// these are the runtime projects for a
 	private Map<IGeppettoProject, RuntimeProject> projects = new LinkedHashMap<>();
 
@@ -331,6 +345,68 @@ public class GeppettoManager implements IGeppettoManager
 		}
 	}
 
+	/**
+	 * @param requestId
+	 * @param experiment
+	 * @return the wall time, CPU time, bytes and peak heap of each phase of the run of the experiment as JSON, null if it never ran on this server
+	 * @throws GeppettoAccessException
+	 */
+	public String getExperimentRunMetrics(String requestId, IExperiment experiment) throws GeppettoAccessException
+	{
+		if(!user.getUserGroup().getPrivileges().contains(UserPrivileges.READ_PROJECT))
+		{
+			throw new GeppettoAccessException("Insufficient access rights to read the experiment.");
+		}
+		return ExperimentRunManager.getInstance().getExperimentRunMetrics(experiment);
+	}
+
+	/**
+	 * @param requestId
+	 * @param experiment
+	 *            a running experiment
+	 * @return the steps processed since the last call, while the experiment is running
+	 * @throws GeppettoAccessException
+	 */
+	public List<StepBatch> pollExperimentSteps(String requestId, IExperiment experiment) throws GeppettoAccessException
+	{
+		if(!user.getUserGroup().getPrivileges().contains(UserPrivileges.READ_PROJECT))
+		{
+			throw new GeppettoAccessException("Insufficient access rights to play experiment.");
+		}
+		return ExperimentRunManager.getInstance().pollExperimentSteps(experiment);
+	}
+
+	/**
+	 * @param requestId
+	 * @param experiment
+	 * @param consumer
+	 *            receives the steps of the experiment while it runs
+	 * @throws GeppettoAccessException
+	 */
+	public void addStepConsumer(String requestId, IExperiment experiment, IStepConsumer consumer) throws GeppettoAccessException
+	{
+		if(!user.getUserGroup().getPrivileges().contains(UserPrivileges.READ_PROJECT))
+		{
+			throw new GeppettoAccessException("Insufficient access rights to play experiment.");
+		}
+		ExperimentRunManager.getInstance().addStepConsumer(experiment, consumer);
+	}
+
+	/**
+	 * @param requestId
+	 * @param experiment
+	 * @param consumer
+	 * @throws GeppettoAccessException
+	 */
+	public void removeStepConsumer(String requestId, IExperiment experiment, IStepConsumer consumer) throws GeppettoAccessException
+	{
+		if(!user.getUserGroup().getPrivileges().contains(UserPrivileges.READ_PROJECT))
+		{
+			throw new GeppettoAccessException("Insufficient access rights to play experiment.");
+		}
+		ExperimentRunManager.getInstance().removeStepConsumer(experiment, consumer);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -504,6 +580,145 @@ public class GeppettoManager implements IGeppettoManager
 		return experiment;
 	}
 
+	/**
+	 * Runs a parameter sweep, an experiment is created from the base experiment for every point of the grid, with the parameters of the point set,
+	 * and all of them are queued together. The experiments of the sweep set the same parameters, so they reuse the runtime projects kept warm by the
+	 * ExperimentRunManager rather than loading the project once each.
+	 * 
+	 * The data manager stores every experiment it clones and has no call to create experiments without storing them, so a sweep still writes once
+	 * per experiment. The parameters of all the experiments are then saved at once.
+	 * 
+	 * @param requestId
+	 * @param baseExperiment
+	 *            the experiment the ones of the sweep are cloned from
+	 * @param parameterGrid
+	 *            the values to try for each parameter path
+	 * @return the experiments created, in the order they were queued
+	 * @throws GeppettoExecutionException
+	 * @throws GeppettoAccessException
+	 */
+	public List<IExperiment> runExperimentSweep(String requestId, IExperiment baseExperiment, Map<String, List<String>> parameterGrid) throws GeppettoExecutionException,
+			GeppettoAccessException
+	{
+		IGeppettoProject project = baseExperiment.getParentProject();
+		if(!user.getUserGroup().getPrivileges().contains(UserPrivileges.WRITE_PROJECT))
+		{
+			throw new GeppettoAccessException("Insufficient access rights to create new experiment.");
+		}
+		if(project.isVolatile() && !this.geppettoManagerConfiguration.getAllowVolatileProjectsSimulation())
+		{
+			throw new GeppettoAccessException("Insufficient access rights to run experiment, project is not persisted.");
+		}
+		if(!getScope().equals(Scope.RUN) && !user.getUserGroup().getPrivileges().contains(UserPrivileges.RUN_EXPERIMENT))
+		{
+			throw new GeppettoAccessException("Insufficient access rights to run experiment.");
+		}
+		if(ParameterGrid.size(parameterGrid) > MAX_SWEEP_SIZE)
+		{
+			throw new GeppettoExecutionException("A parameter sweep cannot create more than " + MAX_SWEEP_SIZE + " experiments");
+		}
+		List<Map<String, String>> points;
+		try
+		{
+			points = ParameterGrid.expand(parameterGrid);
+		}
+		catch(IllegalArgumentException e)
+		{
+			throw new GeppettoExecutionException(e);
+		}
+
+		// the parameters are checked once against the model already loaded rather than for every experiment
+		RuntimeProject runtimeProject = getRuntimeProject(project);
+		Map<String, Pointer> pointers = new HashMap<String, Pointer>();
+		for(String parameter : parameterGrid.keySet())
+		{
+			try
+			{
+				Pointer pointer = PointerUtility.getPointer(runtimeProject.getGeppettoModel(), parameter);
+				pointers.put(parameter, pointer);
+				IModelInterpreter modelInterpreter = runtimeProject.getModelInterpreter(pointer);
+				if(!modelInterpreter.isSupported(GeppettoFeature.SET_PARAMETERS_FEATURE))
+				{
+					throw new GeppettoExecutionException("The model interpreter for the parameter " + parameter + " does not support the setParameter Feature");
+				}
+			}
+			catch(GeppettoModelException e)
+			{
+				throw new GeppettoExecutionException(e);
+			}
+		}
+
+		List<String> names = new ArrayList<String>(points.size());
+		for(Map<String, String> point : points)
+		{
+			names.add(baseExperiment.getName() + " (" + ParameterGrid.format(point) + ")");
+		}
+		List<IExperiment> experiments = new ArrayList<IExperiment>();
+		try
+		{
+			for(int i = 0; i < points.size(); i++)
+			{
+				Map<String, String> point = points.get(i);
+				IExperiment experiment = DataManagerHelper.getDataManager().cloneExperiment(names.get(i), "", project, baseExperiment);
+				experiment.setParentProject(project);
+				experiments.add(experiment);
+				for(Map.Entry<String, String> parameter : point.entrySet())
+				{
+					setParameter(runtimeProject, experiment, pointers.get(parameter.getKey()), parameter.getKey(), parameter.getValue());
+				}
+				experiment.setStatus(ExperimentStatus.DESIGN);
+			}
+		}
+		catch(GeppettoExecutionException | RuntimeException e)
+		{
+			// the sweep is created as a whole or not at all
+			for(IExperiment experiment : experiments)
+			{
+				DataManagerHelper.getDataManager().deleteExperiment(experiment);
+				project.getExperiments().remove(experiment);
+			}
+			throw e;
+		}
+		// the parameters of the whole sweep are saved at once
+		DataManagerHelper.getDataManager().saveEntity(project);
+		ExperimentRunManager.getInstance().queueExperiments(user, experiments);
+		logger.info("Queued a parameter sweep of " + experiments.size() + " experiments for project " + project.getId());
+		return experiments;
+	}
+
+	/**
+	 * Sets the value of a parameter in the aspect configuration of an experiment, the model itself is changed only when the experiment runs
+	 * 
+	 * @param runtimeProject
+	 * @param experiment
+	 * @param pointer
+	 *            the pointer of the parameter in the model of the runtime project
+	 * @param path
+	 * @param value
+	 * @throws GeppettoExecutionException
+	 */
+	private void setParameter(RuntimeProject runtimeProject, IExperiment experiment, Pointer pointer, String path, String value) throws GeppettoExecutionException
+	{
+		IAspectConfiguration config;
+		try
+		{
+			config = RuntimeExperiment.getAspectConfiguration(experiment, pointer, runtimeProject);
+		}
+		catch(GeppettoModelException e)
+		{
+			throw new GeppettoExecutionException(e);
+		}
+		for(IParameter parameter : config.getModelParameter())
+		{
+			if(parameter.getVariable().equals(path))
+			{
+				parameter.setValue(value);
+				return;
+			}
+		}
+		config.addModelParameter(DataManagerHelper.getDataManager().newParameter(path, value));
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -523,6 +738,7 @@ public class GeppettoManager implements IGeppettoManager
 			getRuntimeProject(project).closeExperiment(experiment);
 		}
 
+		ExperimentRunManager.getInstance().experimentDeleted(experiment);
 		DataManagerHelper.getDataManager().deleteExperiment(experiment);
 		if(project.getActiveExperimentId() == experiment.getId())
 		{
@@ -806,8 +1022,12 @@ public class GeppettoManager implements IGeppettoManager
 	public void cancelExperimentRun(String requestId, IExperiment experiment) throws GeppettoExecutionException
 	{
 		ExperimentRunManager.getInstance().cancelExperimentRun(getUser(), experiment);
-		experiment.setStatus(ExperimentStatus.DESIGN);
-		DataManagerHelper.getDataManager().saveEntity(experiment);
+		if(experiment.getStatus().equals(ExperimentStatus.QUEUED))
+		{
+			// an experiment which never started goes back to design, a running one stays CANCELED
+			experiment.setStatus(ExperimentStatus.DESIGN);
+			DataManagerHelper.getDataManager().saveEntity(experiment);
+		}
 	}
 
 	/*
@@ -0,0 +1,57 @@
+package org.geppetto.simulation.manager;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geppetto.core.data.DataManagerHelper;
+import org.geppetto.core.data.model.IExperiment;
+import org.geppetto.core.data.model.IUser;
+import org.geppetto.simulation.cluster.IExperimentRunner;
+import org.geppetto.simulation.cluster.IRunCallback;
+import org.geppetto.simulation.cluster.RunAssignment;
+import org.geppetto.simulation.scheduler.IExperimentResolver;
+
+/**
+ * Runs the experiments assigned to a cluster node in the experiment run manager of the node
+ * 
+ */
+public class LocalExperimentRunner implements IExperimentRunner
+{
+
+	private static Log logger = LogFactory.getLog(LocalExperimentRunner.class);
+
+	private ExperimentRunManager experimentRunManager;
+
+	private IExperimentResolver experimentResolver;
+
+	/**
+	 * @param experimentRunManager
+	 * @param experimentResolver
+	 *            loads the assigned experiments
+	 */
+	public LocalExperimentRunner(ExperimentRunManager experimentRunManager, IExperimentResolver experimentResolver)
+	{
+		this.experimentRunManager = experimentRunManager;
+		this.experimentResolver = experimentResolver;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.geppetto.simulation.cluster.IExperimentRunner#run(org.geppetto.simulation.cluster.RunAssignment,
+	 * org.geppetto.simulation.cluster.IRunCallback)
+	 */
+	@Override
+	public void run(RunAssignment assignment, IRunCallback callback)
+	{
+		IExperiment experiment = experimentResolver.resolve(assignment.getProjectId(), assignment.getExperimentId());
+		IUser user = assignment.getLogin() != null ? DataManagerHelper.getDataManager().getUserByLogin(assignment.getLogin()) : null;
+		if(experiment == null || user == null)
+		{
+			logger.error("Unable to load " + assignment + " for user " + assignment.getLogin());
+			callback.finished(false);
+			return;
+		}
+		experimentRunManager.runAssigned(user, experiment, callback);
+	}
+
+}
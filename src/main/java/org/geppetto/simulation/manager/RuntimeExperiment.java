@@ -365,22 +365,50 @@ public class RuntimeExperiment
 	}
 
 	/**
-	 * @param experiment
-	 * @param instancePath
-	 * @return
-	 * @throws GeppettoExecutionException
+	 * @param pointer
+	 * @return the aspect configuration of the instance the pointer belongs to
+	 * @throws GeppettoModelException
 	 */
 	private IAspectConfiguration getAspectConfiguration(Pointer pointer) throws GeppettoModelException
+	{
+		return getAspectConfiguration(experiment, pointer, runtimeProject);
+	}
+
+	/**
+	 * The instance paths are compared once resolved to pointers, so that an instance is never matched by the parameters of a sibling whose name it
+	 * prefixes, e.g. cell1 and cell10
+	 * 
+	 * @param experiment
+	 * @param pointer
+	 *            the pointer of a parameter
+	 * @param runtimeProject
+	 *            the runtime project the pointer was resolved in
+	 * @return the aspect configuration of the instance the parameter belongs to, the innermost one if the instances are nested
+	 * @throws GeppettoModelException
+	 */
+	static IAspectConfiguration getAspectConfiguration(IExperiment experiment, Pointer pointer, RuntimeProject runtimeProject) throws GeppettoModelException
 	{
 		if(experiment.getAspectConfigurations().size() == 1)
 		{
 			return experiment.getAspectConfigurations().get(0);
 		}
-		else
+		String parameterPath = pointer.getInstancePath();
+		IAspectConfiguration config = null;
+		int configPathLength = -1;
+		for(IAspectConfiguration aspectConfig : experiment.getAspectConfigurations())
+		{
+			String instancePath = PointerUtility.getPointer(runtimeProject.getGeppettoModel(), aspectConfig.getInstance()).getInstancePath();
+			if((parameterPath.equals(instancePath) || parameterPath.startsWith(instancePath + ".")) && instancePath.length() > configPathLength)
+			{
+				config = aspectConfig;
+				configPathLength = instancePath.length();
+			}
+		}
+		if(config == null)
 		{
-			throw new GeppettoModelException("Multiple aspect configuration found. Not yet supported: need to implement a way to select the appropriate one. ");
+			throw new GeppettoModelException("No aspect configuration found for the parameter " + parameterPath);
 		}
-
+		return config;
 	}
 
 	/**
@@ -455,28 +483,27 @@ public class RuntimeExperiment
 				variableValue.setValue(value);
 
 				((ISetParameterFeature) modelInterpreter.getFeature(GeppettoFeature.SET_PARAMETERS_FEATURE)).setParameter(variableValue);
+				runtimeProject.parameterModified(parameter);
 
+				// with several aspects every parameter goes to the configuration of its own instance
 				IAspectConfiguration config = getAspectConfiguration(pointer);
-				for(String path : parameters.keySet())
+				IParameter existingParameter = null;
+				for(IParameter p : config.getModelParameter())
 				{
-					IParameter existingParameter = null;
-					for(IParameter p : config.getModelParameter())
-					{
-						if(p.getVariable().equals(path))
-						{
-							existingParameter = p;
-							break;
-						}
-					}
-					if(existingParameter != null)
-					{
-						existingParameter.setValue(parameters.get(path));
-					}
-					else
+					if(p.getVariable().equals(parameter))
 					{
-						config.addModelParameter(DataManagerHelper.getDataManager().newParameter(parameter, parameters.get(path)));
+						existingParameter = p;
+						break;
 					}
 				}
+				if(existingParameter != null)
+				{
+					existingParameter.setValue(parameters.get(parameter));
+				}
+				else
+				{
+					config.addModelParameter(DataManagerHelper.getDataManager().newParameter(parameter, parameters.get(parameter)));
+				}
 			}
 			catch(ModelInterpreterException | GeppettoModelException e)
 			{
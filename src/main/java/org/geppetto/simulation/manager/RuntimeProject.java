@@ -5,8 +5,10 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -85,6 +87,9 @@ public class RuntimeProject
 
 	private Map<String, IDataSourceService> dataSourceServices;
 
+	// the parameters whose value in the model was changed by an experiment
+	private Set<String> modifiedParameters = new HashSet<String>();
+
 	private static Log logger = LogFactory.getLog(RuntimeProject.class);
 
 	/**
@@ -124,8 +129,10 @@ public class RuntimeProject
 			}
 			// importing the types defined in the geppetto model using the model interpreters
 			ImportTypesVisitor importTypesVisitor = new ImportTypesVisitor(modelInterpreters, geppettoModelAccess, gatherDefaultViews, geppettoProject.getBaseURL(), false);
+			importTypesVisitor.setImportExecutor(TypeImportPool.getInstance().getExecutor());
 			GeppettoModelTraversal.apply(geppettoModel, importTypesVisitor);
-			
+			importTypesVisitor.importCollectedTypes();
+
 			if(gatherDefaultViews)
 			{
 				List<JsonObject> viewCustomisations = importTypesVisitor.getDefaultViewCustomisations();
@@ -516,4 +523,21 @@ public class RuntimeProject
 		return geppettoProject;
 	}
 
+	/**
+	 * @param path
+	 *            the path of a parameter whose value in the model was changed
+	 */
+	public void parameterModified(String path)
+	{
+		modifiedParameters.add(path);
+	}
+
+	/**
+	 * @return the parameters whose value in the model differs from the one the model was loaded with
+	 */
+	public Set<String> getModifiedParameters()
+	{
+		return modifiedParameters;
+	}
+
 }
@@ -0,0 +1,454 @@
+package org.geppetto.simulation.manager;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.eclipse.emf.common.util.TreeIterator;
+import org.eclipse.emf.ecore.EObject;
+import org.geppetto.core.beans.PathConfiguration;
+import org.geppetto.core.common.GeppettoExecutionException;
+import org.geppetto.core.common.GeppettoInitializationException;
+import org.geppetto.core.data.DataManagerHelper;
+import org.geppetto.core.data.model.IAspectConfiguration;
+import org.geppetto.core.data.model.IExperiment;
+import org.geppetto.core.data.model.IGeppettoProject;
+import org.geppetto.core.data.model.IParameter;
+import org.geppetto.core.manager.IGeppettoManager;
+
+/**
+ * Hands out the run scope RuntimeProjects used to execute experiments. Every experiment running leases its own RuntimeProject, i.e. its own copy of
+ * the GeppettoModel and of the model interpreters, so that setting the parameters or converting the model for one experiment does not affect the
+ * others running for the same project.
+ * 
+ * Instances given back are kept warm and reused by the following experiments of the same project, so back to back runs skip loading the model. The
+ * idle instances are evicted least recently used first when their estimated memory exceeds the budget, and once they have been idle for longer
+ * than the time to live. An instance whose parameters were changed by a previous experiment is reused only by an experiment which sets at least
+ * the same parameters.
+ * 
+ */
+public class RuntimeProjectPool
+{
+
+	private static Log logger = LogFactory.getLog(RuntimeProjectPool.class);
+
+	// rough footprint of an object of the geppetto model together with what the model interpreters keep for it
+	private static final long BYTES_PER_MODEL_OBJECT = 1024;
+
+	private IGeppettoManager geppettoManager;
+
+	// the idle runtime projects, least recently used first
+	private LinkedList<IdleRuntimeProject> idleProjects = new LinkedList<IdleRuntimeProject>();
+
+	// by project id, the same project can be loaded more than once
+	private Map<Long, Integer> leased = new HashMap<Long, Integer>();
+
+	private Map<RuntimeProject, Long> estimatedSizes = new HashMap<RuntimeProject, Long>();
+
+	private long idleMemory = 0;
+
+	private long memoryBudget;
+
+	private long timeToLive;
+
+	private int hits = 0;
+
+	private int misses = 0;
+
+	/**
+	 * A runtime project nobody is using
+	 */
+	private static class IdleRuntimeProject
+	{
+		private IGeppettoProject project;
+		private RuntimeProject runtimeProject;
+		private long releasedAt;
+
+		private IdleRuntimeProject(IGeppettoProject project, RuntimeProject runtimeProject)
+		{
+			this.project = project;
+			this.runtimeProject = runtimeProject;
+			this.releasedAt = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * @param geppettoManager
+	 *            the run scope manager the runtime projects belong to
+	 * @param memoryBudget
+	 *            the estimated bytes the idle runtime projects can take
+	 * @param timeToLive
+	 *            the milliseconds a runtime project is kept after it was last used
+	 */
+	public RuntimeProjectPool(IGeppettoManager geppettoManager, long memoryBudget, long timeToLive)
+	{
+		this.geppettoManager = geppettoManager;
+		this.memoryBudget = memoryBudget;
+		this.timeToLive = timeToLive;
+	}
+
+	/**
+	 * @param project
+	 * @param experiment
+	 *            the experiment which will run with the runtime project
+	 * @return a runtime project for the exclusive use of the caller until it is given back with release
+	 * @throws GeppettoInitializationException
+	 * @throws MalformedURLException
+	 */
+	public RuntimeProject acquire(IGeppettoProject project, IExperiment experiment) throws MalformedURLException, GeppettoInitializationException
+	{
+		RuntimeProject runtimeProject = null;
+		synchronized(this)
+		{
+			leased.put(project.getId(), getLeasedCount(project) + 1);
+			Set<String> parameters = getParameters(experiment);
+			// the most recently used first
+			Iterator<IdleRuntimeProject> it = idleProjects.descendingIterator();
+			while(it.hasNext())
+			{
+				IdleRuntimeProject idle = it.next();
+				if(idle.project.getId() == project.getId() && parameters.containsAll(idle.runtimeProject.getModifiedParameters()))
+				{
+					it.remove();
+					idleMemory -= getEstimatedSize(idle.runtimeProject);
+					runtimeProject = idle.runtimeProject;
+					hits++;
+					break;
+				}
+			}
+			if(runtimeProject == null)
+			{
+				misses++;
+			}
+		}
+		if(runtimeProject == null)
+		{
+			// loading the model can take a while, we don't hold the lock meanwhile
+			try
+			{
+				runtimeProject = new RuntimeProject(project, geppettoManager);
+				logger.info("Loaded a new runtime project for project " + project.getId() + ", leased instances " + getLeasedCount(project));
+			}
+			catch(MalformedURLException | GeppettoInitializationException | RuntimeException e)
+			{
+				synchronized(this)
+				{
+					decreaseLeasedCount(project);
+				}
+				throw e;
+			}
+		}
+		return runtimeProject;
+	}
+
+	/**
+	 * Gives back a runtime project obtained with acquire, it will be reused by the next experiments of the same project until it is evicted
+	 * 
+	 * @param project
+	 * @param runtimeProject
+	 */
+	public void release(IGeppettoProject project, RuntimeProject runtimeProject)
+	{
+		long size = getEstimatedSize(runtimeProject);
+		List<IdleRuntimeProject> evicted = new ArrayList<IdleRuntimeProject>();
+		synchronized(this)
+		{
+			decreaseLeasedCount(project);
+			idleProjects.addLast(new IdleRuntimeProject(project, runtimeProject));
+			idleMemory += size;
+			while(idleMemory > memoryBudget && !idleProjects.isEmpty())
+			{
+				evicted.add(removeIdle(idleProjects.getFirst()));
+			}
+		}
+		dispose(evicted);
+	}
+
+	/**
+	 * Gives back the lease of a runtime project without returning the instance, which will not be reused
+	 * 
+	 * @param project
+	 */
+	public synchronized void discard(IGeppettoProject project)
+	{
+		decreaseLeasedCount(project);
+	}
+
+	/**
+	 * Releases the runtime projects idle for longer than the time to live
+	 */
+	public void evictExpired()
+	{
+		List<IdleRuntimeProject> evicted = new ArrayList<IdleRuntimeProject>();
+		long now = System.currentTimeMillis();
+		synchronized(this)
+		{
+			while(!idleProjects.isEmpty() && now - idleProjects.getFirst().releasedAt > timeToLive)
+			{
+				evicted.add(removeIdle(idleProjects.getFirst()));
+			}
+		}
+		dispose(evicted);
+	}
+
+	/**
+	 * Releases the idle runtime projects of a project, the temporary files of the project are deleted if none of its runtime projects is leased
+	 * 
+	 * @param project
+	 * @throws GeppettoExecutionException
+	 */
+	public void close(IGeppettoProject project) throws GeppettoExecutionException
+	{
+		List<IdleRuntimeProject> evicted = new ArrayList<IdleRuntimeProject>();
+		synchronized(this)
+		{
+			for(IdleRuntimeProject idle : new ArrayList<IdleRuntimeProject>(idleProjects))
+			{
+				if(idle.project.getId() == project.getId())
+				{
+					evicted.add(removeIdle(idle));
+				}
+			}
+		}
+		for(IdleRuntimeProject idle : evicted)
+		{
+			idle.runtimeProject.release();
+		}
+		synchronized(this)
+		{
+			if(getLeasedCount(project) == 0 && !isIdle(project))
+			{
+				deleteTemporaryFiles(project);
+			}
+		}
+	}
+
+	/**
+	 * @param project
+	 * @return the number of runtime projects of this project currently leased, i.e. the number of its experiments running
+	 */
+	public synchronized int getLeasedCount(IGeppettoProject project)
+	{
+		return getLeasedCount(project.getId());
+	}
+
+	/**
+	 * @param projectId
+	 * @return the number of runtime projects of the project with this id currently leased
+	 */
+	public synchronized int getLeasedCount(long projectId)
+	{
+		Integer count = leased.get(projectId);
+		return count != null ? count : 0;
+	}
+
+	/**
+	 * @return the number of runtime projects kept warm
+	 */
+	public synchronized int getIdleCount()
+	{
+		return idleProjects.size();
+	}
+
+	/**
+	 * @return the estimated bytes taken by the runtime projects kept warm
+	 */
+	public synchronized long getIdleMemory()
+	{
+		return idleMemory;
+	}
+
+	/**
+	 * @return how many times an experiment could reuse a warm runtime project
+	 */
+	public synchronized int getHits()
+	{
+		return hits;
+	}
+
+	/**
+	 * @return how many times the model of a project had to be loaded
+	 */
+	public synchronized int getMisses()
+	{
+		return misses;
+	}
+
+	/**
+	 * @param memoryBudget
+	 */
+	public void setMemoryBudget(long memoryBudget)
+	{
+		List<IdleRuntimeProject> evicted = new ArrayList<IdleRuntimeProject>();
+		synchronized(this)
+		{
+			this.memoryBudget = memoryBudget;
+			while(idleMemory > memoryBudget && !idleProjects.isEmpty())
+			{
+				evicted.add(removeIdle(idleProjects.getFirst()));
+			}
+		}
+		dispose(evicted);
+	}
+
+	/**
+	 * @param timeToLive
+	 */
+	public synchronized void setTimeToLive(long timeToLive)
+	{
+		this.timeToLive = timeToLive;
+	}
+
+	/**
+	 * @param idle
+	 * @return
+	 */
+	private IdleRuntimeProject removeIdle(IdleRuntimeProject idle)
+	{
+		idleProjects.remove(idle);
+		idleMemory -= getEstimatedSize(idle.runtimeProject);
+		estimatedSizes.remove(idle.runtimeProject);
+		return idle;
+	}
+
+	/**
+	 * Releases the evicted runtime projects, outside of the lock since it can take a while
+	 * 
+	 * @param evicted
+	 */
+	private void dispose(List<IdleRuntimeProject> evicted)
+	{
+		for(IdleRuntimeProject idle : evicted)
+		{
+			logger.info("Evicting the runtime project of project " + idle.project.getId());
+			try
+			{
+				idle.runtimeProject.release();
+				synchronized(this)
+				{
+					// tests using the default data manager check the temporary files after the run
+					if(getLeasedCount(idle.project) == 0 && !isIdle(idle.project) && !DataManagerHelper.getDataManager().isDefault())
+					{
+						deleteTemporaryFiles(idle.project);
+					}
+				}
+			}
+			catch(GeppettoExecutionException e)
+			{
+				logger.error("Error releasing the runtime project of project " + idle.project.getId(), e);
+			}
+		}
+	}
+
+	/**
+	 * @param project
+	 * @return true if a runtime project of this project is kept warm
+	 */
+	private boolean isIdle(IGeppettoProject project)
+	{
+		for(IdleRuntimeProject idle : idleProjects)
+		{
+			if(idle.project.getId() == project.getId())
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param project
+	 * @throws GeppettoExecutionException
+	 */
+	private void deleteTemporaryFiles(IGeppettoProject project) throws GeppettoExecutionException
+	{
+		try
+		{
+			PathConfiguration.deleteProjectTmpFolder(geppettoManager.getScope(), project.getId());
+		}
+		catch(IOException e)
+		{
+			throw new GeppettoExecutionException(e);
+		}
+	}
+
+	/**
+	 * The size of a runtime project is estimated from the number of objects in its model, it is computed once
+	 * 
+	 * @param runtimeProject
+	 * @return
+	 */
+	private long getEstimatedSize(RuntimeProject runtimeProject)
+	{
+		synchronized(this)
+		{
+			Long size = estimatedSizes.get(runtimeProject);
+			if(size != null)
+			{
+				return size;
+			}
+		}
+		long objects = 0;
+		TreeIterator<EObject> it = runtimeProject.getGeppettoModel().eAllContents();
+		while(it.hasNext())
+		{
+			it.next();
+			objects++;
+		}
+		long size = objects * BYTES_PER_MODEL_OBJECT;
+		synchronized(this)
+		{
+			estimatedSizes.put(runtimeProject, size);
+		}
+		return size;
+	}
+
+	/**
+	 * @param experiment
+	 * @return the paths of the parameters the experiment sets
+	 */
+	private Set<String> getParameters(IExperiment experiment)
+	{
+		Set<String> parameters = new HashSet<String>();
+		if(experiment != null)
+		{
+			for(IAspectConfiguration aspectConfiguration : experiment.getAspectConfigurations())
+			{
+				if(aspectConfiguration.getModelParameter() != null)
+				{
+					for(IParameter parameter : aspectConfiguration.getModelParameter())
+					{
+						parameters.add(parameter.getVariable());
+					}
+				}
+			}
+		}
+		return parameters;
+	}
+
+	/**
+	 * @param project
+	 */
+	private void decreaseLeasedCount(IGeppettoProject project)
+	{
+		int count = getLeasedCount(project) - 1;
+		if(count > 0)
+		{
+			leased.put(project.getId(), count);
+		}
+		else
+		{
+			leased.remove(project.getId());
+		}
+	}
+
+}
@@ -0,0 +1,153 @@
+package org.geppetto.simulation.manager;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * The pool of threads the simulators of all the running experiments are executed on. The pool is bounded, simulators submitted while all the
+ * threads are busy wait in the queue. Failures are reported to the experiment by the SimulatorRunThread itself, the executor only counts them.
+ * 
+ */
+public class SimulatorExecutor extends ThreadPoolExecutor
+{
+
+	private static Log logger = LogFactory.getLog(SimulatorExecutor.class);
+
+	private AtomicLong failedCount = new AtomicLong(0);
+
+	private AtomicLong totalWaitTime = new AtomicLong(0);
+
+	private AtomicLong startedCount = new AtomicLong(0);
+
+	/**
+	 * @param threads
+	 *            the maximum number of simulators executing at the same time
+	 */
+	public SimulatorExecutor(int threads)
+	{
+		super(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+		{
+			private AtomicInteger threadCount = new AtomicInteger(0);
+
+			@Override
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "SimulatorRun-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * @param simulatorRun
+	 */
+	public void execute(SimulatorRunThread simulatorRun)
+	{
+		super.execute(simulatorRun);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.concurrent.ThreadPoolExecutor#beforeExecute(java.lang.Thread, java.lang.Runnable)
+	 */
+	@Override
+	protected void beforeExecute(Thread thread, Runnable runnable)
+	{
+		super.beforeExecute(thread, runnable);
+		if(runnable instanceof SimulatorRunThread)
+		{
+			startedCount.incrementAndGet();
+			totalWaitTime.addAndGet(System.currentTimeMillis() - ((SimulatorRunThread) runnable).getSubmittedAt());
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.concurrent.ThreadPoolExecutor#afterExecute(java.lang.Runnable, java.lang.Throwable)
+	 */
+	@Override
+	protected void afterExecute(Runnable runnable, Throwable throwable)
+	{
+		super.afterExecute(runnable, throwable);
+		if(throwable != null || (runnable instanceof SimulatorRunThread && ((SimulatorRunThread) runnable).hasFailed()))
+		{
+			failedCount.incrementAndGet();
+			if(throwable != null)
+			{
+				logger.error("Simulator run terminated abruptly", throwable);
+			}
+		}
+	}
+
+	/**
+	 * @param threads
+	 *            the maximum number of simulators executing at the same time
+	 */
+	public synchronized void setThreads(int threads)
+	{
+		if(threads < 1)
+		{
+			throw new IllegalArgumentException("The simulator threads have to be at least 1, were " + threads);
+		}
+		// the maximum pool size can never be smaller than the core pool size
+		if(threads > getMaximumPoolSize())
+		{
+			setMaximumPoolSize(threads);
+			setCorePoolSize(threads);
+		}
+		else
+		{
+			setCorePoolSize(threads);
+			setMaximumPoolSize(threads);
+		}
+	}
+
+	/**
+	 * @return the number of simulators waiting for a thread
+	 */
+	public int getQueueDepth()
+	{
+		return getQueue().size();
+	}
+
+	/**
+	 * @return the number of simulators which failed
+	 */
+	public long getFailedCount()
+	{
+		return failedCount.get();
+	}
+
+	/**
+	 * @return the average milliseconds a simulator waited for a thread
+	 */
+	public long getAverageWaitTime()
+	{
+		long started = startedCount.get();
+		return started > 0 ? totalWaitTime.get() / started : 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString()
+	{
+		return "SimulatorExecutor [threads=" + getMaximumPoolSize() + ", active=" + getActiveCount() + ", queued=" + getQueueDepth() + ", completed=" + getCompletedTaskCount()
+				+ ", failed=" + getFailedCount() + ", averageWait=" + getAverageWaitTime() + "ms]";
+	}
+
+}
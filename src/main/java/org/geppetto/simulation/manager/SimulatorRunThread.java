@@ -1,27 +1,49 @@
-
 package org.geppetto.simulation.manager;
 
+import java.io.IOException;
+import java.io.Serializable;
+
 import org.geppetto.core.common.GeppettoExecutionException;
-import org.geppetto.core.data.model.ExperimentStatus;
 import org.geppetto.core.data.model.IExperiment;
+import org.geppetto.core.simulation.ISimulatorCallbackListener;
 import org.geppetto.core.simulator.ISimulator;
+import org.geppetto.simulation.IForkableSimulator;
+import org.geppetto.simulation.worker.ForkedWorker;
+import org.geppetto.simulation.worker.ForkedWorkerPool;
+import org.geppetto.simulation.worker.IWorkerExecution;
+import org.geppetto.simulation.worker.WorkerJobException;
 
 /**
- * This class helps incapsulating the execution of a simulator in a separate thread
+ * This class helps incapsulating the execution of a simulator, it is run by the SimulatorExecutor shared by all the experiments
  * 
  * @author matteocantarelli
  *
  */
-public class SimulatorRunThread extends Thread
+public class SimulatorRunThread implements Runnable
 {
 
 	private ISimulator simulator;
 	private IExperiment experiment;
+	private ISimulatorCallbackListener listener;
+	private volatile boolean canceled = false;
+	private volatile boolean failed = false;
+	private volatile Thread worker;
+	private long submittedAt = System.currentTimeMillis();
+	private ExperimentRunMetrics metrics;
+	private ForkedWorkerPool workerPool;
+	private volatile ForkedWorker forkedWorker;
 
-	public SimulatorRunThread(IExperiment experiment, ISimulator simulator)
+	/**
+	 * @param experiment
+	 * @param simulator
+	 * @param listener
+	 *            notified if the simulator fails
+	 */
+	public SimulatorRunThread(IExperiment experiment, ISimulator simulator, ISimulatorCallbackListener listener)
 	{
 		this.experiment = experiment;
 		this.simulator = simulator;
+		this.listener = listener;
 	}
 
 	/*
@@ -32,16 +54,142 @@ public class SimulatorRunThread extends Thread
 	@Override
 	public void run()
 	{
+		if(canceled)
+		{
+			return;
+		}
+		worker = Thread.currentThread();
+		long cpuStart = ExperimentRunMetrics.getCurrentThreadCpuTime();
 		try
 		{
-			simulator.simulate();
+			if(workerPool != null && simulator instanceof IForkableSimulator)
+			{
+				simulateInWorker((IForkableSimulator) simulator);
+			}
+			else
+			{
+				simulator.simulate();
+			}
+		}
+		catch(GeppettoExecutionException | RuntimeException e)
+		{
+			// a simulator which fails is done as well, the experiment run must not wait for it
+			if(canceled)
+			{
+				// the simulator failed because it was stopped
+				return;
+			}
+			failed = true;
+			listener.externalProcessFailed("Error running the simulator " + simulator.getName() + " for experiment " + experiment.getId() + ". ", e);
 		}
-		catch(GeppettoExecutionException e)
+		finally
 		{
-			experiment.setStatus(ExperimentStatus.ERROR);
-			throw new RuntimeException(e);
+			long cpuEnd = ExperimentRunMetrics.getCurrentThreadCpuTime();
+			if(metrics != null && cpuStart >= 0 && cpuEnd >= 0)
+			{
+				metrics.addCpuTime(ExperimentRunMetrics.Phase.SIMULATE, (cpuEnd - cpuStart) / 1000000);
+			}
+			worker = null;
+			// the interrupt of a cancellation must not reach the next simulator using the same thread
+			Thread.interrupted();
 		}
 
 	}
 
+	/**
+	 * @param forkable
+	 * @throws GeppettoExecutionException
+	 */
+	private void simulateInWorker(IForkableSimulator forkable) throws GeppettoExecutionException
+	{
+		Serializable result;
+		try
+		{
+			result = workerPool.execute(forkable.createJob(), new IWorkerExecution()
+			{
+				@Override
+				public void started(ForkedWorker worker)
+				{
+					forkedWorker = worker;
+					if(canceled)
+					{
+						worker.destroy();
+					}
+				}
+
+				@Override
+				public void finished(ForkedWorker worker)
+				{
+					forkedWorker = null;
+				}
+			});
+		}
+		catch(IOException e)
+		{
+			throw new GeppettoExecutionException("The simulation worker died: " + e.getMessage());
+		}
+		catch(WorkerJobException e)
+		{
+			throw new GeppettoExecutionException(e);
+		}
+		catch(InterruptedException e)
+		{
+			throw new GeppettoExecutionException(e);
+		}
+		forkable.jobCompleted(result);
+	}
+
+	/**
+	 * Interrupts the simulator, it's up to the simulator to stop at the next step. A simulator still waiting for a thread will not start, a simulation
+	 * running in a worker process is stopped by killing the worker.
+	 */
+	public void cancel()
+	{
+		canceled = true;
+		Thread current = worker;
+		if(current != null)
+		{
+			current.interrupt();
+		}
+		ForkedWorker forked = forkedWorker;
+		if(forked != null)
+		{
+			forked.destroy();
+		}
+	}
+
+	/**
+	 * @param workerPool
+	 *            where the simulators which support it are executed, null to execute all of them in this JVM
+	 */
+	public void setWorkerPool(ForkedWorkerPool workerPool)
+	{
+		this.workerPool = workerPool;
+	}
+
+	/**
+	 * @return true if the simulator failed
+	 */
+	public boolean hasFailed()
+	{
+		return failed;
+	}
+
+	/**
+	 * @param metrics
+	 *            where the CPU time of the simulator is recorded
+	 */
+	public void setMetrics(ExperimentRunMetrics metrics)
+	{
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @return when the simulator was submitted to the executor
+	 */
+	public long getSubmittedAt()
+	{
+		return submittedAt;
+	}
+
 }
@@ -18,19 +18,34 @@ public class SimulatorRuntime
 	// This is the number of steps that were processed by this simulator and that have been
 	// sent to the client
 	private int _stepsConsumed = 0;
+	// milliseconds the simulator waited for the consumers to catch up
+	private long _pausedTime = 0;
+	// when the first step was processed
+	private long _startTime = 0;
+	// when the simulator started stepping
+	private long _steppingSince = 0;
+	// when the simulator last processed steps or sent a heartbeat
+	private long _lastProgress = 0;
+	// true once the simulator reported its progress, only those simulators can be found stalled
+	private boolean _reportsProgress = false;
 
 	/**
 	 * @param status
 	 */
-	public void setStatus(SimulatorRuntimeStatus status)
+	public synchronized void setStatus(SimulatorRuntimeStatus status)
 	{
+		if(status == SimulatorRuntimeStatus.STEPPING && _status != SimulatorRuntimeStatus.STEPPING)
+		{
+			_steppingSince = System.currentTimeMillis();
+			_lastProgress = _steppingSince;
+		}
 		_status = status;
 	}
 
 	/**
 	 * @return
 	 */
-	public SimulatorRuntimeStatus getStatus()
+	public synchronized SimulatorRuntimeStatus getStatus()
 	{
 		return _status;
 	}
@@ -59,10 +74,110 @@ public class SimulatorRuntime
 		_processedSteps++;
 	}
 
+	/**
+	 * @param steps
+	 */
+	public synchronized void addProcessedSteps(int steps)
+	{
+		if(_startTime == 0)
+		{
+			_startTime = System.currentTimeMillis();
+		}
+		_processedSteps += steps;
+		heartbeat();
+	}
+
+	/**
+	 * The simulator is alive and making progress even if it did not produce any step
+	 */
+	public synchronized void heartbeat()
+	{
+		_lastProgress = System.currentTimeMillis();
+		_reportsProgress = true;
+	}
+
+	/**
+	 * @param now
+	 * @param timeout
+	 *            milliseconds, 0 means no limit
+	 * @return true if the simulator has been stepping for longer than the timeout
+	 */
+	public synchronized boolean isOverdue(long now, long timeout)
+	{
+		return timeout > 0 && _status == SimulatorRuntimeStatus.STEPPING && now - _steppingSince > timeout;
+	}
+
+	/**
+	 * A simulator which never reported its progress is never considered stalled, it might just not follow the progress contract, e.g. because it
+	 * depends only on core whose ISimulator has no way to report progress
+	 * 
+	 * @param now
+	 * @param timeout
+	 *            milliseconds, 0 means no limit
+	 * @return true if the simulator is stepping and did not report any progress within the timeout
+	 */
+	public synchronized boolean isStalled(long now, long timeout)
+	{
+		return timeout > 0 && _reportsProgress && _status == SimulatorRuntimeStatus.STEPPING && now - _lastProgress > timeout;
+	}
+
+	/**
+	 * Waits until the steps can be processed without exceeding the maximum number of non consumed steps, i.e. until the simulator has enough credit.
+	 * The credit is given back as the consumers consume the steps.
+	 * 
+	 * @param steps
+	 *            the steps the simulator is about to process
+	 * @param maxNonConsumedSteps
+	 * @param maxPause
+	 *            the milliseconds after which the simulator proceeds anyway
+	 * @return true if the simulator got the credit, false if it waited maxPause
+	 * @throws InterruptedException
+	 */
+	public synchronized boolean awaitCredit(int steps, int maxNonConsumedSteps, long maxPause) throws InterruptedException
+	{
+		long start = System.currentTimeMillis();
+		long remaining = maxPause;
+		try
+		{
+			// a batch larger than the limit is let through once everything else was consumed
+			while(getNonConsumedSteps() > 0 && getNonConsumedSteps() + steps > maxNonConsumedSteps)
+			{
+				if(remaining <= 0)
+				{
+					return false;
+				}
+				wait(remaining);
+				remaining = maxPause - (System.currentTimeMillis() - start);
+			}
+			return true;
+		}
+		finally
+		{
+			_pausedTime += System.currentTimeMillis() - start;
+		}
+	}
+
+	/**
+	 * @return the milliseconds the simulator waited for the consumers
+	 */
+	public synchronized long getPausedTime()
+	{
+		return _pausedTime;
+	}
+
+	/**
+	 * @return the steps processed per second since the first one
+	 */
+	public synchronized double getThroughput()
+	{
+		long elapsed = System.currentTimeMillis() - _startTime;
+		return _startTime == 0 || elapsed == 0 ? 0 : _processedSteps * 1000d / elapsed;
+	}
+
 	/**
 	 * @return the number of steps which have been processed but not yet consumed
 	 */
-	public int getNonConsumedSteps()
+	public synchronized int getNonConsumedSteps()
 	{
 		return _processedSteps - _stepsConsumed;
 	}
@@ -78,17 +193,30 @@ public class SimulatorRuntime
 	/**
 	 * 
 	 */
-	public void incrementStepsConsumed()
+	public synchronized void incrementStepsConsumed()
 	{
 		_stepsConsumed++;
+		notifyAll();
+	}
+
+	/**
+	 * @param steps
+	 */
+	public synchronized void addStepsConsumed(int steps)
+	{
+		_stepsConsumed += steps;
+		notifyAll();
 	}
 
 	/**
 	 * Revert the simulator to the initial conditions
 	 */
-	public void revertToInitialConditions()
+	public synchronized void revertToInitialConditions()
 	{
 		_stepsConsumed = 0;
 		_processedSteps = 0;
+		_pausedTime = 0;
+		_startTime = 0;
+		notifyAll();
 	}
 }
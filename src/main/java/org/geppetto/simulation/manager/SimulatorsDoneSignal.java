@@ -0,0 +1,71 @@
+package org.geppetto.simulation.manager;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * What an experiment run waits on while its simulators execute. Every simulator signals once when it is done or failed, a simulator signalling
+ * more than once is counted once, and a failure of the experiment releases the run without waiting for the other simulators.
+ *
+ */
+public class SimulatorsDoneSignal
+{
+
+	private CountDownLatch latch;
+
+	// the simulators which already signalled, each one is counted only once
+	private Set<String> signalled = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/**
+	 * @param simulators
+	 *            the number of simulators the run waits for
+	 */
+	public SimulatorsDoneSignal(int simulators)
+	{
+		latch = new CountDownLatch(simulators);
+	}
+
+	/**
+	 * @param instancePath
+	 *            the instance the simulator is simulating
+	 */
+	public void simulatorDone(String instancePath)
+	{
+		if(signalled.add(instancePath))
+		{
+			latch.countDown();
+		}
+	}
+
+	/**
+	 * Releases the run, e.g. since one of the simulators failed
+	 */
+	public void abort()
+	{
+		while(latch.getCount() > 0)
+		{
+			latch.countDown();
+		}
+	}
+
+	/**
+	 * Waits until all the simulators signalled or the run was aborted
+	 *
+	 * @throws InterruptedException
+	 */
+	public void await() throws InterruptedException
+	{
+		latch.await();
+	}
+
+	/**
+	 * @return the number of simulators which did not signal yet, 0 once the run was aborted
+	 */
+	public long getPending()
+	{
+		return latch.getCount();
+	}
+
+}
@@ -0,0 +1,94 @@
+package org.geppetto.simulation.manager;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import org.geppetto.simulation.StepBatch;
+
+/**
+ * The steps of a running experiment which were not consumed yet. The buffer is bounded, when it is full the oldest steps are dropped so that a
+ * client which stopped consuming does not make the server hold the whole trace, the complete results are stored at the end of the run anyway.
+ * 
+ */
+public class StepBuffer
+{
+
+	private int capacity;
+
+	private Deque<StepBatch> batches = new ArrayDeque<StepBatch>();
+
+	private int bufferedSteps = 0;
+
+	private long droppedSteps = 0;
+
+	/**
+	 * @param capacity
+	 *            the maximum number of steps buffered
+	 */
+	public StepBuffer(int capacity)
+	{
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @param batch
+	 * @return the batches dropped to make room for this one
+	 */
+	public synchronized List<StepBatch> offer(StepBatch batch)
+	{
+		List<StepBatch> dropped = new ArrayList<StepBatch>();
+		batches.addLast(batch);
+		bufferedSteps += batch.getSteps();
+		while(bufferedSteps > capacity && batches.size() > 1)
+		{
+			StepBatch oldest = batches.removeFirst();
+			bufferedSteps -= oldest.getSteps();
+			droppedSteps += oldest.getSteps();
+			dropped.add(oldest);
+		}
+		return dropped;
+	}
+
+	/**
+	 * @return the buffered batches in the order they were offered, the buffer is empty afterwards
+	 */
+	public synchronized List<StepBatch> drain()
+	{
+		List<StepBatch> drained = new ArrayList<StepBatch>(batches);
+		batches.clear();
+		bufferedSteps = 0;
+		return drained;
+	}
+
+	/**
+	 * @return how many steps are buffered
+	 */
+	public synchronized int getBufferedSteps()
+	{
+		return bufferedSteps;
+	}
+
+	/**
+	 * @return how many steps were dropped because nobody consumed them in time
+	 */
+	public synchronized long getDroppedSteps()
+	{
+		return droppedSteps;
+	}
+
+	public synchronized int getCapacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * @param capacity
+	 */
+	public synchronized void setCapacity(int capacity)
+	{
+		this.capacity = capacity;
+	}
+
+}
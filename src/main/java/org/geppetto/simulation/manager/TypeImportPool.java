@@ -0,0 +1,74 @@
+package org.geppetto.simulation.manager;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.geppetto.simulation.AppConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.context.support.SpringBeanAutowiringSupport;
+
+/**
+ * The threads the types of the libraries of a model are imported on when a project is opened. They are shared by all the projects being
+ * opened, so that the imports never use more than the configured number of cores.
+ * 
+ */
+public class TypeImportPool
+{
+
+	private static TypeImportPool instance = null;
+
+	@Autowired(required = false)
+	private AppConfig appConfig;
+
+	private ThreadPoolExecutor executor;
+
+	/**
+	 * @return
+	 */
+	public static synchronized TypeImportPool getInstance()
+	{
+		if(instance == null)
+		{
+			instance = new TypeImportPool();
+		}
+		return instance;
+	}
+
+	/**
+	 * 
+	 */
+	private TypeImportPool()
+	{
+		SpringBeanAutowiringSupport.processInjectionBasedOnCurrentContext(this);
+		int parallelism = appConfig != null ? appConfig.getTypeImportParallelism() : 1;
+		if(parallelism > 1)
+		{
+			executor = new ThreadPoolExecutor(parallelism, parallelism, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+			{
+				private AtomicInteger threadCount = new AtomicInteger(0);
+
+				@Override
+				public Thread newThread(Runnable runnable)
+				{
+					Thread thread = new Thread(runnable, "TypeImport-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			executor.allowCoreThreadTimeOut(true);
+		}
+	}
+
+	/**
+	 * @return the executor the libraries are imported on, null if the types are imported one after the other as the model is traversed
+	 */
+	public ExecutorService getExecutor()
+	{
+		return executor;
+	}
+
+}
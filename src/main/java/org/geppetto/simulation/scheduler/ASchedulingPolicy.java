@@ -0,0 +1,44 @@
+package org.geppetto.simulation.scheduler;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Base class for the scheduling policies, keeps the weights of the users.
+ * 
+ */
+public abstract class ASchedulingPolicy implements IExperimentSchedulingPolicy
+{
+
+	public static final int DEFAULT_WEIGHT = 1;
+
+	private Map<String, Integer> weights = new ConcurrentHashMap<String, Integer>();
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.geppetto.simulation.scheduler.IExperimentSchedulingPolicy#setUserWeight(java.lang.String, int)
+	 */
+	@Override
+	public void setUserWeight(String login, int weight)
+	{
+		if(weight < 1)
+		{
+			throw new IllegalArgumentException("The weight of a user has to be at least 1, was " + weight);
+		}
+		weights.put(login, weight);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.geppetto.simulation.scheduler.IExperimentSchedulingPolicy#getUserWeight(java.lang.String)
+	 */
+	@Override
+	public int getUserWeight(String login)
+	{
+		Integer weight = weights.get(login);
+		return weight != null ? weight : DEFAULT_WEIGHT;
+	}
+
+}
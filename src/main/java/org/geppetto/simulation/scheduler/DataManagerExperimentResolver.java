@@ -0,0 +1,37 @@
+package org.geppetto.simulation.scheduler;
+
+import org.geppetto.core.data.DataManagerHelper;
+import org.geppetto.core.data.model.IExperiment;
+import org.geppetto.core.data.model.IGeppettoProject;
+
+/**
+ * Resolves experiments through the data manager.
+ * 
+ */
+public class DataManagerExperimentResolver implements IExperimentResolver
+{
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.geppetto.simulation.scheduler.IExperimentResolver#resolve(long, long)
+	 */
+	@Override
+	public IExperiment resolve(long projectId, long experimentId)
+	{
+		IGeppettoProject project = DataManagerHelper.getDataManager().getGeppettoProjectById(projectId);
+		if(project != null)
+		{
+			for(IExperiment experiment : project.getExperiments())
+			{
+				if(experiment.getId() == experimentId)
+				{
+					experiment.setParentProject(project);
+					return experiment;
+				}
+			}
+		}
+		return null;
+	}
+
+}
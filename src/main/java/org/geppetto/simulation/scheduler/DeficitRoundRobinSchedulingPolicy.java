@@ -0,0 +1,92 @@
+package org.geppetto.simulation.scheduler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deficit round robin across users. Every time a user is visited its deficit grows by its weight and each experiment started costs one, so a user
+ * with weight 3 starts up to three experiments in a row before the slot moves on to the next user. A user who has nothing ready to run loses its
+ * deficit and its place in the round.
+ * 
+ */
+public class DeficitRoundRobinSchedulingPolicy extends ASchedulingPolicy
+{
+
+	// the users in the order they are visited
+	private List<String> round = new ArrayList<String>();
+
+	private Map<String, Integer> deficits = new HashMap<String, Integer>();
+
+	private String currentUser;
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.geppetto.simulation.scheduler.IExperimentSchedulingPolicy#selectUser(java.util.List)
+	 */
+	@Override
+	public synchronized String selectUser(List<String> candidates)
+	{
+		if(candidates == null || candidates.isEmpty())
+		{
+			return null;
+		}
+		for(String candidate : candidates)
+		{
+			if(!round.contains(candidate))
+			{
+				round.add(candidate);
+			}
+		}
+
+		String selected = null;
+		// the user being served keeps the slot while it has deficit left
+		if(currentUser != null && candidates.contains(currentUser) && getDeficit(currentUser) >= 1)
+		{
+			selected = currentUser;
+		}
+		else
+		{
+			int start = round.indexOf(currentUser);
+			for(int i = 1; i <= round.size(); i++)
+			{
+				String user = round.get((start + i + round.size()) % round.size());
+				if(candidates.contains(user))
+				{
+					deficits.put(user, getDeficit(user) + getUserWeight(user));
+					selected = user;
+					break;
+				}
+			}
+		}
+		deficits.put(selected, getDeficit(selected) - 1);
+		currentUser = selected;
+
+		// users with nothing ready to run leave the round
+		Iterator<String> it = round.iterator();
+		while(it.hasNext())
+		{
+			String user = it.next();
+			if(!candidates.contains(user))
+			{
+				it.remove();
+				deficits.remove(user);
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * @param login
+	 * @return
+	 */
+	private int getDeficit(String login)
+	{
+		Integer deficit = deficits.get(login);
+		return deficit != null ? deficit : 0;
+	}
+
+}
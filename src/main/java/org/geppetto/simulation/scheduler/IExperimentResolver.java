@@ -0,0 +1,19 @@
+package org.geppetto.simulation.scheduler;
+
+import org.geppetto.core.data.model.IExperiment;
+
+/**
+ * Finds a persisted experiment given its identifiers, used to bring back experiments which were only stored by reference.
+ * 
+ */
+public interface IExperimentResolver
+{
+
+	/**
+	 * @param projectId
+	 * @param experimentId
+	 * @return the experiment with its parent project set, null if it does not exist anymore
+	 */
+	IExperiment resolve(long projectId, long experimentId);
+
+}
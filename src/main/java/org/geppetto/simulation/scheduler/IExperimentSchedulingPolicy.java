@@ -0,0 +1,32 @@
+package org.geppetto.simulation.scheduler;
+
+import java.util.List;
+
+/**
+ * A scheduling policy decides which user gets the next free simulation slot when more than one user has experiments waiting to run.
+ * 
+ */
+public interface IExperimentSchedulingPolicy
+{
+
+	/**
+	 * @param candidates
+	 *            the logins of the users which have at least one experiment ready to run
+	 * @return the login of the user whose experiment should start next, null if there are no candidates
+	 */
+	String selectUser(List<String> candidates);
+
+	/**
+	 * @param login
+	 * @param weight
+	 *            the share of the simulation slots this user is entitled to relative to the other users
+	 */
+	void setUserWeight(String login, int weight);
+
+	/**
+	 * @param login
+	 * @return the weight of the user, 1 if it was never set
+	 */
+	int getUserWeight(String login);
+
+}
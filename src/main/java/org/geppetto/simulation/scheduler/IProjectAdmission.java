@@ -0,0 +1,16 @@
+package org.geppetto.simulation.scheduler;
+
+/**
+ * Tells whether the experiments of a project can start now, used by the queues to look past the experiments of the projects which cannot.
+ * 
+ */
+public interface IProjectAdmission
+{
+
+	/**
+	 * @param projectId
+	 * @return false if no experiment of the project can start at the moment, e.g. because the project already runs as many experiments as allowed
+	 */
+	boolean canStart(long projectId);
+
+}
@@ -0,0 +1,21 @@
+package org.geppetto.simulation.scheduler;
+
+/**
+ * Plain round robin across users, one experiment per user per round regardless of the weights.
+ * 
+ */
+public class RoundRobinSchedulingPolicy extends DeficitRoundRobinSchedulingPolicy
+{
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.geppetto.simulation.scheduler.ASchedulingPolicy#getUserWeight(java.lang.String)
+	 */
+	@Override
+	public int getUserWeight(String login)
+	{
+		return DEFAULT_WEIGHT;
+	}
+
+}
@@ -0,0 +1,504 @@
+package org.geppetto.simulation.scheduler;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geppetto.core.data.model.IExperiment;
+
+/**
+ * A FIFO queue of experiments with no upper bound which keeps at most memoryCapacity experiments in memory. The experiments arriving when the memory
+ * window is full are appended by reference (project id, experiment id and queueing time) to a journal file and resolved again, in order, as the
+ * in-memory experiments leave the queue. The journal is truncated every time it is drained.
+ * 
+ * Experiments of volatile projects cannot be resolved once dropped and are always kept in memory. Iterating the queue only visits the in-memory
+ * window, i.e. the oldest experiments. When none of the experiments in memory can start, iterating the queue also brings to memory the oldest
+ * experiment in the journal whose project can, so that the experiments of a busy project do not hold back the others.
+ * 
+ * The position of every live journal entry is indexed in memory by experiment and by project, so that finding, removing and promoting a spilled
+ * experiment never scans the journal. The index holds a few numbers per entry, the experiments themselves stay on disk.
+ * 
+ * The experiments are matched by project id and experiment id, the instances resolved from the journal are not the ones queued.
+ * 
+ */
+public class SpillableExperimentQueue extends AbstractQueue<IExperiment>
+{
+
+	private static Log logger = LogFactory.getLog(SpillableExperimentQueue.class);
+
+	private int memoryCapacity;
+
+	private File journal;
+
+	private IExperimentResolver resolver;
+
+	private IProjectAdmission admission;
+
+	private ArrayDeque<IExperiment> memory = new ArrayDeque<IExperiment>();
+
+	// when each of the in-memory experiments was queued, by project id and experiment id
+	private Map<String, Long> queuedSince = new HashMap<String, Long>();
+
+	// the live journal entries, i.e. not read back nor removed yet, by position in the journal
+	private Map<Long, String> liveEntries = new HashMap<Long, String>();
+
+	// the positions of the live entries of each experiment, by project id and experiment id, oldest first
+	private Map<String, ArrayDeque<Long>> entriesByExperiment = new HashMap<String, ArrayDeque<Long>>();
+
+	// the positions of the live entries of each project, by project id
+	private Map<Long, TreeSet<Long>> entriesByProject = new HashMap<Long, TreeSet<Long>>();
+
+	// where the next journal entry to read starts
+	private long journalReadPosition = 0;
+
+	/**
+	 * @param memoryCapacity
+	 *            the maximum number of experiments kept in memory
+	 * @param journal
+	 *            the file used to store the experiments which do not fit in memory, its content is discarded
+	 * @param resolver
+	 *            used to resolve the experiments read back from the journal
+	 */
+	public SpillableExperimentQueue(int memoryCapacity, File journal, IExperimentResolver resolver)
+	{
+		this(memoryCapacity, journal, resolver, null);
+	}
+
+	/**
+	 * @param memoryCapacity
+	 *            the maximum number of experiments kept in memory, exceeded only to bring in the experiments which can start
+	 * @param journal
+	 *            the file used to store the experiments which do not fit in memory, its content is discarded
+	 * @param resolver
+	 *            used to resolve the experiments read back from the journal
+	 * @param admission
+	 *            tells which projects can start an experiment, null to read the journal in order only
+	 */
+	public SpillableExperimentQueue(int memoryCapacity, File journal, IExperimentResolver resolver, IProjectAdmission admission)
+	{
+		if(memoryCapacity < 1)
+		{
+			throw new IllegalArgumentException("The memory capacity of the queue has to be at least 1, was " + memoryCapacity);
+		}
+		this.memoryCapacity = memoryCapacity;
+		this.journal = journal;
+		this.resolver = resolver;
+		this.admission = admission;
+		journal.delete();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Queue#offer(java.lang.Object)
+	 */
+	@Override
+	public synchronized boolean offer(IExperiment experiment)
+	{
+		return offer(experiment, System.currentTimeMillis());
+	}
+
+	/**
+	 * @param experiment
+	 * @param queuedAt
+	 * @return
+	 */
+	private boolean offer(IExperiment experiment, long queuedAt)
+	{
+		if(experiment == null)
+		{
+			throw new NullPointerException();
+		}
+		if((liveEntries.isEmpty() && memory.size() < memoryCapacity) || experiment.getParentProject().isVolatile())
+		{
+			memory.add(experiment);
+			queuedSince.put(getReference(experiment), queuedAt);
+		}
+		else
+		{
+			long position = appendToJournal(getReference(experiment) + "," + queuedAt);
+			addLiveEntry(position, getReference(experiment));
+		}
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Queue#poll()
+	 */
+	@Override
+	public synchronized IExperiment poll()
+	{
+		IExperiment experiment = memory.poll();
+		if(experiment != null)
+		{
+			queuedSince.remove(getReference(experiment));
+			refill();
+		}
+		return experiment;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Queue#peek()
+	 */
+	@Override
+	public synchronized IExperiment peek()
+	{
+		refill();
+		return memory.peek();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.AbstractCollection#size()
+	 */
+	@Override
+	public synchronized int size()
+	{
+		return memory.size() + liveEntries.size();
+	}
+
+	/**
+	 * @return the number of experiments currently stored in the journal
+	 */
+	public synchronized int getSpilledCount()
+	{
+		return liveEntries.size();
+	}
+
+	/**
+	 * @param experiment
+	 * @return when the experiment was queued, null if it is not in the in-memory window
+	 */
+	public synchronized Long getQueuedSince(IExperiment experiment)
+	{
+		return queuedSince.get(getReference(experiment));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.AbstractCollection#contains(java.lang.Object)
+	 */
+	@Override
+	public synchronized boolean contains(Object o)
+	{
+		if(!(o instanceof IExperiment))
+		{
+			return false;
+		}
+		IExperiment experiment = (IExperiment) o;
+		return findInMemory(experiment) != null || entriesByExperiment.containsKey(getReference(experiment));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.AbstractCollection#remove(java.lang.Object)
+	 */
+	@Override
+	public synchronized boolean remove(Object o)
+	{
+		if(!(o instanceof IExperiment))
+		{
+			return false;
+		}
+		IExperiment experiment = (IExperiment) o;
+		IExperiment queued = findInMemory(experiment);
+		if(queued != null)
+		{
+			memory.remove(queued);
+			queuedSince.remove(getReference(queued));
+			refill();
+			return true;
+		}
+		ArrayDeque<Long> positions = entriesByExperiment.get(getReference(experiment));
+		if(positions != null)
+		{
+			removeLiveEntry(positions.peek());
+			if(liveEntries.isEmpty())
+			{
+				truncateJournal();
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.AbstractCollection#iterator()
+	 */
+	@Override
+	public synchronized Iterator<IExperiment> iterator()
+	{
+		refill();
+		if(admission != null && !liveEntries.isEmpty() && !canAnyStart())
+		{
+			promoteFromJournal();
+		}
+		// we iterate over a snapshot so that the queue can be modified meanwhile
+		final Iterator<IExperiment> snapshot = new ArrayList<IExperiment>(memory).iterator();
+		return new Iterator<IExperiment>()
+		{
+			private IExperiment current;
+
+			@Override
+			public boolean hasNext()
+			{
+				return snapshot.hasNext();
+			}
+
+			@Override
+			public IExperiment next()
+			{
+				current = snapshot.next();
+				return current;
+			}
+
+			@Override
+			public void remove()
+			{
+				SpillableExperimentQueue.this.remove(current);
+			}
+		};
+	}
+
+	/**
+	 * Moves experiments from the journal to memory until the memory window is full or the journal is drained
+	 */
+	private void refill()
+	{
+		if(liveEntries.isEmpty() || memory.size() >= memoryCapacity)
+		{
+			return;
+		}
+		try(RandomAccessFile reader = new RandomAccessFile(journal, "r"))
+		{
+			reader.seek(journalReadPosition);
+			String line;
+			while(!liveEntries.isEmpty() && memory.size() < memoryCapacity && (line = reader.readLine()) != null)
+			{
+				long position = journalReadPosition;
+				journalReadPosition = reader.getFilePointer();
+				if(liveEntries.containsKey(position))
+				{
+					// the entries removed or promoted while they were in the journal are not live anymore and are skipped
+					removeLiveEntry(position);
+					readBack(line);
+				}
+			}
+		}
+		catch(IOException e)
+		{
+			// the entries we could not read are lost, we don't want to keep a queue which is wrong about its size
+			logger.error("Unable to read the queue journal " + journal, e);
+			liveEntries.clear();
+		}
+		if(liveEntries.isEmpty())
+		{
+			truncateJournal();
+		}
+	}
+
+	/**
+	 * @return true if the project of one of the in-memory experiments can start an experiment
+	 */
+	private boolean canAnyStart()
+	{
+		for(IExperiment experiment : memory)
+		{
+			if(admission.canStart(experiment.getParentProject().getId()))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Brings to memory, past the capacity of the window, the oldest experiment in the journal whose project can start an experiment. Its entry is
+	 * no longer live and is skipped once read.
+	 */
+	private void promoteFromJournal()
+	{
+		while(!liveEntries.isEmpty())
+		{
+			Long oldest = null;
+			for(Map.Entry<Long, TreeSet<Long>> project : entriesByProject.entrySet())
+			{
+				Long first = project.getValue().first();
+				if((oldest == null || first < oldest) && admission.canStart(project.getKey()))
+				{
+					oldest = first;
+				}
+			}
+			if(oldest == null)
+			{
+				return;
+			}
+			removeLiveEntry(oldest);
+			try(RandomAccessFile reader = new RandomAccessFile(journal, "r"))
+			{
+				reader.seek(oldest);
+				if(readBack(reader.readLine()))
+				{
+					break;
+				}
+			}
+			catch(IOException e)
+			{
+				logger.error("Unable to read the queue journal " + journal, e);
+				break;
+			}
+		}
+		if(liveEntries.isEmpty())
+		{
+			truncateJournal();
+		}
+	}
+
+	/**
+	 * @param line
+	 *            the journal entry of an experiment
+	 * @return true if the experiment still exists and was brought to memory
+	 */
+	private boolean readBack(String line)
+	{
+		String[] entry = line.split(",");
+		IExperiment experiment = resolver.resolve(Long.parseLong(entry[0]), Long.parseLong(entry[1]));
+		if(experiment == null)
+		{
+			logger.warn("The queued experiment " + entry[1] + " of project " + entry[0] + " does not exist anymore");
+			return false;
+		}
+		memory.add(experiment);
+		queuedSince.put(getReference(experiment), Long.parseLong(entry[2]));
+		return true;
+	}
+
+	/**
+	 * @param experiment
+	 * @return the in-memory instance of the experiment, null if it's not in memory
+	 */
+	private IExperiment findInMemory(IExperiment experiment)
+	{
+		String reference = getReference(experiment);
+		for(IExperiment queued : memory)
+		{
+			if(getReference(queued).equals(reference))
+			{
+				return queued;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param position
+	 * @param reference
+	 */
+	private void addLiveEntry(long position, String reference)
+	{
+		liveEntries.put(position, reference);
+		ArrayDeque<Long> positions = entriesByExperiment.get(reference);
+		if(positions == null)
+		{
+			positions = new ArrayDeque<Long>();
+			entriesByExperiment.put(reference, positions);
+		}
+		positions.add(position);
+		long projectId = Long.parseLong(reference.substring(0, reference.indexOf(',')));
+		TreeSet<Long> projectPositions = entriesByProject.get(projectId);
+		if(projectPositions == null)
+		{
+			projectPositions = new TreeSet<Long>();
+			entriesByProject.put(projectId, projectPositions);
+		}
+		projectPositions.add(position);
+	}
+
+	/**
+	 * @param position
+	 */
+	private void removeLiveEntry(long position)
+	{
+		String reference = liveEntries.remove(position);
+		ArrayDeque<Long> positions = entriesByExperiment.get(reference);
+		positions.remove(position);
+		if(positions.isEmpty())
+		{
+			entriesByExperiment.remove(reference);
+		}
+		long projectId = Long.parseLong(reference.substring(0, reference.indexOf(',')));
+		TreeSet<Long> projectPositions = entriesByProject.get(projectId);
+		projectPositions.remove(position);
+		if(projectPositions.isEmpty())
+		{
+			entriesByProject.remove(projectId);
+		}
+	}
+
+	/**
+	 * @param experiment
+	 * @return the project id and the experiment id, as written in the journal
+	 */
+	private static String getReference(IExperiment experiment)
+	{
+		return experiment.getParentProject().getId() + "," + experiment.getId();
+	}
+
+	/**
+	 * @param entry
+	 * @return the position of the entry in the journal
+	 */
+	private long appendToJournal(String entry)
+	{
+		try
+		{
+			journal.getParentFile().mkdirs();
+			long position = journal.length();
+			try(BufferedWriter writer = Files.newBufferedWriter(journal.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND))
+			{
+				writer.write(entry);
+				writer.newLine();
+			}
+			return position;
+		}
+		catch(IOException e)
+		{
+			throw new IllegalStateException("Unable to write to the queue journal " + journal, e);
+		}
+	}
+
+	/**
+	 * 
+	 */
+	private void truncateJournal()
+	{
+		journal.delete();
+		journalReadPosition = 0;
+		liveEntries.clear();
+		entriesByExperiment.clear();
+		entriesByProject.clear();
+	}
+
+}
@@ -0,0 +1,62 @@
+package org.geppetto.simulation.scheduler;
+
+/**
+ * Keeps track of how long the experiments of a user waited in the queue before starting.
+ * 
+ */
+public class UserWaitStatistics
+{
+
+	private long startedExperiments = 0;
+
+	private long totalWait = 0;
+
+	private long maxWait = 0;
+
+	/**
+	 * @param wait
+	 *            the time in ms the experiment spent queued
+	 */
+	public synchronized void experimentStarted(long wait)
+	{
+		startedExperiments++;
+		totalWait += wait;
+		maxWait = Math.max(maxWait, wait);
+	}
+
+	/**
+	 * @return the number of experiments of this user which left the queue
+	 */
+	public synchronized long getStartedExperiments()
+	{
+		return startedExperiments;
+	}
+
+	/**
+	 * @return the average time in ms the experiments of this user spent queued
+	 */
+	public synchronized long getAverageWait()
+	{
+		return startedExperiments == 0 ? 0 : totalWait / startedExperiments;
+	}
+
+	/**
+	 * @return the longest time in ms an experiment of this user spent queued
+	 */
+	public synchronized long getMaxWait()
+	{
+		return maxWait;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public synchronized String toString()
+	{
+		return "started=" + startedExperiments + ", averageWait=" + getAverageWait() + "ms, maxWait=" + maxWait + "ms";
+	}
+
+}
@@ -0,0 +1,39 @@
+package org.geppetto.simulation.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Where the results of the experiments are persisted. The keys are relative paths, e.g. projects/1/experiment/2/rawRecording.zip
+ * 
+ */
+public interface IResultsStorage
+{
+
+	/**
+	 * @param file
+	 *            a local file
+	 * @param key
+	 * @return the URL the file can be retrieved from
+	 * @throws IOException
+	 */
+	URL store(File file, String key) throws IOException;
+
+	/**
+	 * The content is stored under the key only once the stream is committed, a stream closed without being committed leaves the key untouched
+	 * 
+	 * @param key
+	 * @return the stream to write the content to
+	 * @throws IOException
+	 */
+	StorageOutputStream openStream(String key) throws IOException;
+
+	/**
+	 * @param key
+	 * @return the URL of the content stored with this key
+	 * @throws IOException
+	 */
+	URL getURL(String key) throws IOException;
+
+}
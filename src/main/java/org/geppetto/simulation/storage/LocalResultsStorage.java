@@ -0,0 +1,103 @@
+package org.geppetto.simulation.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Keeps the results in a folder of the local file system. Used when Geppetto runs without a persistence bundle and in place of S3 in the tests.
+ * 
+ */
+public class LocalResultsStorage implements IResultsStorage
+{
+
+	private File folder;
+
+	private boolean referenceFiles;
+
+	/**
+	 * @param folder
+	 *            the folder the keys are resolved against
+	 * @param referenceFiles
+	 *            if true the stored files are left where they are and referenced, otherwise they are copied to the folder
+	 */
+	public LocalResultsStorage(File folder, boolean referenceFiles)
+	{
+		this.folder = folder;
+		this.referenceFiles = referenceFiles;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.geppetto.simulation.storage.IResultsStorage#store(java.io.File, java.lang.String)
+	 */
+	@Override
+	public URL store(File file, String key) throws IOException
+	{
+		if(referenceFiles)
+		{
+			return file.toURI().toURL();
+		}
+		File target = getFile(key);
+		Files.copy(file.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		return target.toURI().toURL();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.geppetto.simulation.storage.IResultsStorage#openStream(java.lang.String)
+	 */
+	@Override
+	public StorageOutputStream openStream(String key) throws IOException
+	{
+		final File target = getFile(key);
+		final File partial = new File(target.getParentFile(), target.getName() + ".partial");
+		return new StorageOutputStream(new BufferedOutputStream(new FileOutputStream(partial)))
+		{
+			@Override
+			protected void store() throws IOException
+			{
+				Files.move(partial.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+
+			@Override
+			protected void discard()
+			{
+				partial.delete();
+			}
+		};
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.geppetto.simulation.storage.IResultsStorage#getURL(java.lang.String)
+	 */
+	@Override
+	public URL getURL(String key) throws IOException
+	{
+		return new File(folder, key).toURI().toURL();
+	}
+
+	/**
+	 * @param key
+	 * @return the file for the key, its folders are created
+	 * @throws IOException
+	 */
+	private File getFile(String key) throws IOException
+	{
+		File file = new File(folder, key);
+		if(!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs())
+		{
+			throw new IOException("Cannot create the folder " + file.getParentFile());
+		}
+		return file;
+	}
+
+}
@@ -0,0 +1,235 @@
+package org.geppetto.simulation.storage;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Persists the results of a simulator in a single pass. The files which are stored as they are start uploading on the executor straight away, while
+ * the files which are archived are compressed directly into the stream of the storage, and the archive is stored only once it is complete. How
+ * much local I/O this saves depends on the storage: the local storage writes the archive in place, while S3ResultsStorage still spools it to a
+ * temporary file before uploading it since S3Manager only uploads whole files.
+ * 
+ */
+public class ResultsPipeline
+{
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private IResultsStorage storage;
+
+	private ExecutorService executor;
+
+	private List<Future<URL>> pending = new ArrayList<Future<URL>>();
+
+	private long bytesZipped = 0;
+
+	private long bytesArchived = 0;
+
+	private AtomicLong bytesStored = new AtomicLong(0);
+
+	/**
+	 * @param storage
+	 * @param executor
+	 *            where the files are uploaded, if null they are uploaded by the caller
+	 */
+	public ResultsPipeline(IResultsStorage storage, ExecutorService executor)
+	{
+		this.storage = storage;
+		this.executor = executor;
+	}
+
+	/**
+	 * @param file
+	 * @param key
+	 * @return the URL of the stored file, once the upload is over
+	 */
+	public Future<URL> store(final File file, final String key)
+	{
+		Callable<URL> upload = new Callable<URL>()
+		{
+			@Override
+			public URL call() throws Exception
+			{
+				long length = file.length();
+				URL url = storage.store(file, key);
+				bytesStored.addAndGet(length);
+				return url;
+			}
+		};
+		Future<URL> future;
+		if(executor != null)
+		{
+			future = executor.submit(upload);
+		}
+		else
+		{
+			FutureTask<URL> task = new FutureTask<URL>(upload);
+			task.run();
+			future = task;
+		}
+		pending.add(future);
+		return future;
+	}
+
+	/**
+	 * @param files
+	 * @param key
+	 * @return the URL of the archive
+	 * @throws IOException
+	 *             if the archive could not be written or stored, nothing is then stored under the key
+	 */
+	public URL zip(List<File> files, String key) throws IOException
+	{
+		byte[] buffer = new byte[BUFFER_SIZE];
+		StorageOutputStream stored = storage.openStream(key);
+		CountingOutputStream archive = new CountingOutputStream(stored);
+		long zipped = 0;
+		// closing the zip closes the storage stream, which discards the archive unless it was committed
+		try(ZipOutputStream zip = new ZipOutputStream(archive))
+		{
+			for(File file : files)
+			{
+				zip.putNextEntry(new ZipEntry(file.getName()));
+				try(InputStream in = new FileInputStream(file))
+				{
+					zipped += copy(in, zip, buffer);
+				}
+				zip.closeEntry();
+			}
+			zip.finish();
+			stored.commit();
+		}
+		bytesZipped += zipped;
+		bytesArchived += archive.getCount();
+		return storage.getURL(key);
+	}
+
+	/**
+	 * Waits for the uploads started by this pipeline
+	 * 
+	 * @throws IOException
+	 *             if any of them failed
+	 * @throws InterruptedException
+	 */
+	public void await() throws IOException, InterruptedException
+	{
+		try
+		{
+			for(Future<URL> upload : pending)
+			{
+				upload.get();
+			}
+		}
+		catch(ExecutionException e)
+		{
+			cancel();
+			if(e.getCause() instanceof IOException)
+			{
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Stops the uploads which did not finish yet
+	 */
+	public void cancel()
+	{
+		for(Future<URL> upload : pending)
+		{
+			upload.cancel(true);
+		}
+	}
+
+	/**
+	 * @return the bytes of the files archived so far
+	 */
+	public long getBytesZipped()
+	{
+		return bytesZipped;
+	}
+
+	/**
+	 * @return the bytes of the archives written so far
+	 */
+	public long getBytesArchived()
+	{
+		return bytesArchived;
+	}
+
+	/**
+	 * @return the bytes of the files stored as they are whose upload succeeded so far
+	 */
+	public long getBytesStored()
+	{
+		return bytesStored.get();
+	}
+
+	/**
+	 * @param in
+	 * @param out
+	 * @param buffer
+	 * @return the bytes copied
+	 * @throws IOException
+	 */
+	private long copy(InputStream in, OutputStream out, byte[] buffer) throws IOException
+	{
+		long copied = 0;
+		int read;
+		while((read = in.read(buffer)) != -1)
+		{
+			out.write(buffer, 0, read);
+			copied += read;
+		}
+		return copied;
+	}
+
+	/**
+	 * Counts the bytes written to the storage
+	 */
+	private static class CountingOutputStream extends FilterOutputStream
+	{
+		private long count = 0;
+
+		private CountingOutputStream(OutputStream out)
+		{
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			out.write(b, off, len);
+			count += len;
+		}
+
+		private long getCount()
+		{
+			return count;
+		}
+	}
+
+}
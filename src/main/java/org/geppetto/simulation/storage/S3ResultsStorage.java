@@ -0,0 +1,67 @@
+package org.geppetto.simulation.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+
+import org.geppetto.core.s3.S3Manager;
+
+/**
+ * Keeps the results in the S3 bucket of Geppetto. S3Manager only uploads whole files, the streamed content is therefore spooled to a temporary
+ * file which is uploaded when the stream is committed and deleted when it is closed. Streaming to S3 thus still writes the content locally once.
+ * 
+ */
+public class S3ResultsStorage implements IResultsStorage
+{
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.geppetto.simulation.storage.IResultsStorage#store(java.io.File, java.lang.String)
+	 */
+	@Override
+	public URL store(File file, String key) throws IOException
+	{
+		S3Manager.getInstance().saveFileToS3(file, key);
+		return getURL(key);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.geppetto.simulation.storage.IResultsStorage#openStream(java.lang.String)
+	 */
+	@Override
+	public StorageOutputStream openStream(final String key) throws IOException
+	{
+		final File spool = File.createTempFile("geppettoResults", ".tmp");
+		return new StorageOutputStream(new BufferedOutputStream(new FileOutputStream(spool)))
+		{
+			@Override
+			protected void store() throws IOException
+			{
+				S3Manager.getInstance().saveFileToS3(spool, key);
+			}
+
+			@Override
+			protected void discard()
+			{
+				spool.delete();
+			}
+		};
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.geppetto.simulation.storage.IResultsStorage#getURL(java.lang.String)
+	 */
+	@Override
+	public URL getURL(String key) throws IOException
+	{
+		return S3Manager.getInstance().getURL(key);
+	}
+
+}
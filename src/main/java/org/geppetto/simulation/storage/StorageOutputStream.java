@@ -0,0 +1,95 @@
+package org.geppetto.simulation.storage;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The stream the content of a key is written to. The content is stored under the key only once commit is called, closing the stream without
+ * committing it, e.g. when writing the content failed halfway, discards what was written and leaves the key untouched.
+ * 
+ */
+public abstract class StorageOutputStream extends FilterOutputStream
+{
+
+	private boolean closed = false;
+
+	/**
+	 * @param out
+	 *            where the content is written until it is committed
+	 */
+	protected StorageOutputStream(OutputStream out)
+	{
+		super(out);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.io.FilterOutputStream#write(byte[], int, int)
+	 */
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException
+	{
+		out.write(b, off, len);
+	}
+
+	/**
+	 * Stores the content written so far under the key and closes the stream
+	 * 
+	 * @throws IOException
+	 *             if the content could not be stored, it is then discarded
+	 */
+	public void commit() throws IOException
+	{
+		if(closed)
+		{
+			throw new IOException("The stream was already closed");
+		}
+		closed = true;
+		try
+		{
+			super.close();
+			store();
+		}
+		finally
+		{
+			discard();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.io.FilterOutputStream#close()
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if(!closed)
+		{
+			closed = true;
+			try
+			{
+				super.close();
+			}
+			finally
+			{
+				discard();
+			}
+		}
+	}
+
+	/**
+	 * Stores the content, the stream it was written to is already closed
+	 * 
+	 * @throws IOException
+	 */
+	protected abstract void store() throws IOException;
+
+	/**
+	 * Removes whatever is left of the content which was written, called once the stream is closed whether it was committed or not
+	 */
+	protected abstract void discard();
+
+}
@@ -0,0 +1,59 @@
+package org.geppetto.simulation.utilities;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a batch of tasks with at most a given number of them at the same time, on a pool which lives as long as the batch
+ *
+ */
+public class ParallelTasks
+{
+
+	/**
+	 * Runs all the tasks and waits for them. With a parallelism of 1 the tasks run one after the other on the calling thread and the first failure
+	 * stops the batch, otherwise all the tasks run and the failure of the first one in the list is thrown.
+	 *
+	 * @param tasks
+	 * @param parallelism
+	 *            the maximum number of tasks running at the same time
+	 * @throws Exception
+	 *             the exception thrown by a task
+	 */
+	public static void runAll(List<? extends Callable<Void>> tasks, int parallelism) throws Exception
+	{
+		int threads = Math.min(parallelism, tasks.size());
+		if(threads <= 1)
+		{
+			for(Callable<Void> task : tasks)
+			{
+				task.call();
+			}
+			return;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try
+		{
+			for(Future<Void> result : executor.invokeAll(tasks))
+			{
+				try
+				{
+					result.get();
+				}
+				catch(ExecutionException e)
+				{
+					throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+				}
+			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+}
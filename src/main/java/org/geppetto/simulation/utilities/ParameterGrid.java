@@ -0,0 +1,81 @@
+package org.geppetto.simulation.utilities;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The points of a parameter sweep, i.e. every combination of the values given for each parameter.
+ * 
+ */
+public class ParameterGrid
+{
+
+	/**
+	 * @param grid
+	 *            the values to try for each parameter path
+	 * @return the points of the grid, the values of the last parameter change first
+	 */
+	public static List<Map<String, String>> expand(Map<String, List<String>> grid)
+	{
+		if(grid == null || grid.isEmpty())
+		{
+			throw new IllegalArgumentException("A parameter sweep needs at least one parameter");
+		}
+		List<Map<String, String>> points = new ArrayList<Map<String, String>>();
+		points.add(new LinkedHashMap<String, String>());
+		for(Map.Entry<String, List<String>> parameter : grid.entrySet())
+		{
+			if(parameter.getValue() == null || parameter.getValue().isEmpty())
+			{
+				throw new IllegalArgumentException("No values given for the parameter " + parameter.getKey());
+			}
+			List<Map<String, String>> expanded = new ArrayList<Map<String, String>>(points.size() * parameter.getValue().size());
+			for(Map<String, String> point : points)
+			{
+				for(String value : parameter.getValue())
+				{
+					Map<String, String> newPoint = new LinkedHashMap<String, String>(point);
+					newPoint.put(parameter.getKey(), value);
+					expanded.add(newPoint);
+				}
+			}
+			points = expanded;
+		}
+		return points;
+	}
+
+	/**
+	 * @param point
+	 * @return the parameters of the point as path=value pairs separated by commas, in the order of the grid
+	 */
+	public static String format(Map<String, String> point)
+	{
+		StringBuilder formatted = new StringBuilder();
+		for(Map.Entry<String, String> parameter : point.entrySet())
+		{
+			if(formatted.length() > 0)
+			{
+				formatted.append(", ");
+			}
+			formatted.append(parameter.getKey()).append('=').append(parameter.getValue());
+		}
+		return formatted.toString();
+	}
+
+	/**
+	 * @param grid
+	 * @return the number of points of the grid
+	 */
+	public static long size(Map<String, List<String>> grid)
+	{
+		long size = 1;
+		for(List<String> values : grid.values())
+		{
+			size *= values != null ? values.size() : 0;
+		}
+		return size;
+	}
+
+}
@@ -4,8 +4,13 @@ package org.geppetto.simulation.visitor;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.geppetto.core.features.IDefaultViewCustomiserFeature;
 import org.geppetto.core.model.GeppettoModelAccess;
@@ -20,6 +25,7 @@ import org.geppetto.model.types.Type;
 import org.geppetto.model.types.util.TypesSwitch;
 import org.geppetto.model.util.GeppettoVisitingException;
 import org.geppetto.model.variables.VariablesPackage;
+import org.geppetto.simulation.IConcurrentTypeImport;
 
 import com.google.gson.JsonObject;
 
@@ -38,6 +44,9 @@ public class ImportTypesVisitor extends TypesSwitch<Object>
 	private boolean gatherDefaultView = false;
 	private String baseURL;
 	private boolean forceResolve = true;
+	// when set the library types are only collected during the traversal and imported by importCollectedTypes
+	private ExecutorService importExecutor;
+	private List<CollectedImport> collectedImports = new ArrayList<CollectedImport>();
 
 	@Override
 	public Object caseImportType(ImportType type)
@@ -58,6 +67,11 @@ public class ImportTypesVisitor extends TypesSwitch<Object>
 					{
 						url = URLReader.getURL(type.getUrl(), baseURL);
 					}
+					if(importExecutor != null)
+					{
+						collectedImports.add(new CollectedImport(type, library, url));
+						return super.caseImportType(type);
+					}
 					importedType = modelInterpreter.importType(url, type.getId(), library, geppettoModelAccess);
 
 					if(this.gatherDefaultView && modelInterpreter.isSupported(GeppettoFeature.DEFAULT_VIEW_CUSTOMISER_FEATURE))
@@ -115,6 +129,102 @@ public class ImportTypesVisitor extends TypesSwitch<Object>
 		this.setForceResolve(resolve);
 	}
 
+	/**
+	 * The types of different libraries are imported concurrently on the executor, the types of a library one after the other since a model
+	 * interpreter serves a single library. Only the libraries whose interpreter implements IConcurrentTypeImport go to the executor, the others
+	 * are imported on the calling thread before them. The imported types replace the import types on the calling thread, in the order of the
+	 * traversal.
+	 * 
+	 * @param importExecutor
+	 *            null to import every type as it is visited
+	 */
+	public void setImportExecutor(ExecutorService importExecutor)
+	{
+		this.importExecutor = importExecutor;
+	}
+
+	/**
+	 * Imports the types collected during the traversal when an import executor is set
+	 * 
+	 * @throws GeppettoVisitingException
+	 */
+	public void importCollectedTypes() throws GeppettoVisitingException
+	{
+		Map<GeppettoLibrary, List<CollectedImport>> libraries = new LinkedHashMap<GeppettoLibrary, List<CollectedImport>>();
+		for(CollectedImport collected : collectedImports)
+		{
+			List<CollectedImport> libraryImports = libraries.get(collected.library);
+			if(libraryImports == null)
+			{
+				libraryImports = new ArrayList<CollectedImport>();
+				libraries.put(collected.library, libraryImports);
+			}
+			libraryImports.add(collected);
+		}
+		List<Callable<Void>> concurrentImports = new ArrayList<Callable<Void>>();
+		for(Map.Entry<GeppettoLibrary, List<CollectedImport>> entry : libraries.entrySet())
+		{
+			IModelInterpreter modelInterpreter = modelInterpreters.get(entry.getKey());
+			Callable<Void> libraryImport = new LibraryImport(modelInterpreter, entry.getValue());
+			if(modelInterpreter instanceof IConcurrentTypeImport && ((IConcurrentTypeImport) modelInterpreter).supportsConcurrentImport())
+			{
+				concurrentImports.add(libraryImport);
+			}
+			else
+			{
+				// it might change the model, nothing else is importing meanwhile
+				try
+				{
+					libraryImport.call();
+				}
+				catch(Exception e)
+				{
+					throw new GeppettoVisitingException(e);
+				}
+			}
+		}
+		List<Future<?>> imports = new ArrayList<Future<?>>();
+		try
+		{
+			for(Callable<Void> libraryImport : concurrentImports)
+			{
+				imports.add(importExecutor.submit(libraryImport));
+			}
+			for(Future<?> libraryImport : imports)
+			{
+				libraryImport.get();
+			}
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new GeppettoVisitingException(e);
+		}
+		catch(ExecutionException e)
+		{
+			throw new GeppettoVisitingException(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+		}
+		finally
+		{
+			for(Future<?> libraryImport : imports)
+			{
+				libraryImport.cancel(true);
+			}
+		}
+		// the import types are only replaced here, in the same order as a sequential import
+		for(CollectedImport collected : collectedImports)
+		{
+			IModelInterpreter modelInterpreter = modelInterpreters.get(collected.library);
+			if(this.gatherDefaultView && modelInterpreter.isSupported(GeppettoFeature.DEFAULT_VIEW_CUSTOMISER_FEATURE))
+			{
+				viewCustomisations.add(((IDefaultViewCustomiserFeature) modelInterpreter.getFeature(GeppettoFeature.DEFAULT_VIEW_CUSTOMISER_FEATURE))
+						.getDefaultViewCustomisation(collected.importedType));
+			}
+			geppettoModelAccess.swapType(collected.type, collected.importedType, collected.library);
+		}
+		collectedImports.clear();
+	}
+
 	/**
 	 * @return
 	 */
@@ -140,4 +250,47 @@ public class ImportTypesVisitor extends TypesSwitch<Object>
 		return viewCustomisations;
 	}
 
+	/**
+	 * Imports the types of a library one after the other
+	 */
+	private class LibraryImport implements Callable<Void>
+	{
+		private IModelInterpreter modelInterpreter;
+		private List<CollectedImport> libraryImports;
+
+		private LibraryImport(IModelInterpreter modelInterpreter, List<CollectedImport> libraryImports)
+		{
+			this.modelInterpreter = modelInterpreter;
+			this.libraryImports = libraryImports;
+		}
+
+		@Override
+		public Void call() throws Exception
+		{
+			for(CollectedImport collected : libraryImports)
+			{
+				collected.importedType = modelInterpreter.importType(collected.url, collected.type.getId(), collected.library, geppettoModelAccess);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * An import type found in a library and the type which replaces it
+	 */
+	private static class CollectedImport
+	{
+		private ImportType type;
+		private GeppettoLibrary library;
+		private URL url;
+		private Type importedType;
+
+		private CollectedImport(ImportType type, GeppettoLibrary library, URL url)
+		{
+			this.type = type;
+			this.library = library;
+			this.url = url;
+		}
+	}
+
 }
@@ -0,0 +1,90 @@
+package org.geppetto.simulation.worker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A worker process executing one job at a time
+ * 
+ */
+public class ForkedWorker
+{
+
+	private Process process;
+
+	private DataOutputStream out;
+
+	private DataInputStream in;
+
+	/**
+	 * @param command
+	 *            the command line starting the worker JVM
+	 * @throws IOException
+	 */
+	public ForkedWorker(List<String> command) throws IOException
+	{
+		ProcessBuilder builder = new ProcessBuilder(command);
+		// the output of the jobs ends up in the log of the server
+		builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+		process = builder.start();
+		out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+		in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+	}
+
+	/**
+	 * @param job
+	 * @return the result of the job, its classes are resolved with the class loader of the job
+	 * @throws IOException
+	 *             if the worker died, e.g. it ran out of memory or it was destroyed
+	 * @throws WorkerJobException
+	 *             if the job failed
+	 */
+	public synchronized Serializable execute(ISimulationJob job) throws IOException, WorkerJobException
+	{
+		WorkerProtocol.write(out, job);
+		WorkerResponse response;
+		try
+		{
+			response = (WorkerResponse) WorkerProtocol.read(in, job.getClass().getClassLoader());
+		}
+		catch(ClassNotFoundException e)
+		{
+			throw new WorkerJobException(e);
+		}
+		if(response.getError() != null)
+		{
+			throw new WorkerJobException(response.getError());
+		}
+		return response.getResult();
+	}
+
+	/**
+	 * @return true if the process is still running
+	 */
+	public boolean isAlive()
+	{
+		try
+		{
+			process.exitValue();
+			return false;
+		}
+		catch(IllegalThreadStateException e)
+		{
+			return true;
+		}
+	}
+
+	/**
+	 * Kills the worker, a job it is executing fails with an IOException
+	 */
+	public void destroy()
+	{
+		process.destroy();
+	}
+
+}
@@ -0,0 +1,215 @@
+package org.geppetto.simulation.worker;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A pool of worker JVMs, each one with its own heap, so that a heavy simulation cannot exhaust the memory of the server. The workers are started
+ * as they are needed, a worker which dies, e.g. because it ran out of memory, is replaced by a new one.
+ * 
+ */
+public class ForkedWorkerPool
+{
+
+	private static Log logger = LogFactory.getLog(ForkedWorkerPool.class);
+
+	private int size;
+
+	private List<String> command = new ArrayList<String>();
+
+	private LinkedBlockingQueue<ForkedWorker> idle = new LinkedBlockingQueue<ForkedWorker>();
+
+	private List<ForkedWorker> workers = new ArrayList<ForkedWorker>();
+
+	private AtomicLong restarts = new AtomicLong(0);
+
+	private volatile boolean closed = false;
+
+	/**
+	 * @param size
+	 *            the maximum number of worker processes
+	 * @param heap
+	 *            the maximum heap of each worker, e.g. 2g, null for the JVM default
+	 * @param classpath
+	 *            the classpath of the workers, it needs this bundle, the jobs and their results. In OSGi the classpath of the server JVM is only the
+	 *            one of the launcher, so it has to be given.
+	 */
+	public ForkedWorkerPool(int size, String heap, String classpath)
+	{
+		if(classpath == null || classpath.isEmpty())
+		{
+			throw new IllegalArgumentException("The classpath of the simulation workers is required");
+		}
+		this.size = size;
+		command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath());
+		if(heap != null && !heap.isEmpty())
+		{
+			command.add("-Xmx" + heap);
+		}
+		command.add("-cp");
+		command.add(classpath);
+		command.add(WorkerMain.class.getName());
+	}
+
+	/**
+	 * Executes the job on a free worker, waiting for one if they are all busy
+	 * 
+	 * @param job
+	 * @param execution
+	 *            tells which worker is executing the job so that it can be stopped, can be null
+	 * @return the result of the job
+	 * @throws IOException
+	 *             if the worker died while executing the job
+	 * @throws WorkerJobException
+	 *             if the job failed
+	 * @throws InterruptedException
+	 */
+	public Serializable execute(ISimulationJob job, IWorkerExecution execution) throws IOException, WorkerJobException, InterruptedException
+	{
+		ForkedWorker worker = acquire();
+		boolean broken = false;
+		try
+		{
+			if(execution != null)
+			{
+				execution.started(worker);
+			}
+			return worker.execute(job);
+		}
+		catch(IOException e)
+		{
+			// the protocol with this worker is lost, whatever its state
+			broken = true;
+			worker.destroy();
+			throw e;
+		}
+		finally
+		{
+			if(execution != null)
+			{
+				execution.finished(worker);
+			}
+			release(worker, broken);
+		}
+	}
+
+	/**
+	 * Stops all the workers
+	 */
+	public void close()
+	{
+		closed = true;
+		synchronized(workers)
+		{
+			for(ForkedWorker worker : workers)
+			{
+				worker.destroy();
+			}
+			workers.clear();
+		}
+		idle.clear();
+	}
+
+	/**
+	 * @return how many workers were replaced because they died
+	 */
+	public long getRestarts()
+	{
+		return restarts.get();
+	}
+
+	/**
+	 * @return how many worker processes are running or starting
+	 */
+	public int getWorkers()
+	{
+		synchronized(workers)
+		{
+			return workers.size();
+		}
+	}
+
+	/**
+	 * @return
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	private ForkedWorker acquire() throws IOException, InterruptedException
+	{
+		if(closed)
+		{
+			throw new IOException("The worker pool is closed");
+		}
+		while(true)
+		{
+			ForkedWorker worker = idle.poll();
+			if(worker != null)
+			{
+				return worker;
+			}
+			synchronized(workers)
+			{
+				if(workers.size() < size)
+				{
+					worker = new ForkedWorker(command);
+					workers.add(worker);
+					return worker;
+				}
+			}
+			// a worker which could not be restarted leaves room for a new one, it is checked again after a while
+			worker = idle.poll(1, TimeUnit.SECONDS);
+			if(worker != null)
+			{
+				return worker;
+			}
+			if(closed)
+			{
+				throw new IOException("The worker pool is closed");
+			}
+		}
+	}
+
+	/**
+	 * @param worker
+	 * @param broken
+	 *            true if the worker cannot be used anymore
+	 */
+	private void release(ForkedWorker worker, boolean broken)
+	{
+		if((!broken && worker.isAlive()) || closed)
+		{
+			if(!closed)
+			{
+				idle.offer(worker);
+			}
+			return;
+		}
+		synchronized(workers)
+		{
+			workers.remove(worker);
+			restarts.incrementAndGet();
+			logger.warn("A simulation worker died, starting a new one");
+			try
+			{
+				ForkedWorker replacement = new ForkedWorker(command);
+				workers.add(replacement);
+				idle.offer(replacement);
+			}
+			catch(IOException e)
+			{
+				// the next job will try to start it again
+				logger.error("Unable to start a simulation worker", e);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,19 @@
+package org.geppetto.simulation.worker;
+
+import java.io.Serializable;
+
+/**
+ * Work which is executed in a worker process. The job and its result are serialized between the server and the worker, so both need to be
+ * self-contained.
+ * 
+ */
+public interface ISimulationJob extends Serializable
+{
+
+	/**
+	 * @return the result sent back to the server
+	 * @throws Exception
+	 */
+	Serializable call() throws Exception;
+
+}
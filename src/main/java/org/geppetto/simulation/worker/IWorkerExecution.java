@@ -0,0 +1,21 @@
+package org.geppetto.simulation.worker;
+
+/**
+ * Follows the execution of a job, e.g. to destroy the worker if the job is cancelled
+ * 
+ */
+public interface IWorkerExecution
+{
+
+	/**
+	 * @param worker
+	 *            the worker the job was sent to
+	 */
+	void started(ForkedWorker worker);
+
+	/**
+	 * @param worker
+	 */
+	void finished(ForkedWorker worker);
+
+}
@@ -0,0 +1,20 @@
+package org.geppetto.simulation.worker;
+
+/**
+ * A job failed in the worker process, the cause is the exception the job threw
+ * 
+ */
+public class WorkerJobException extends Exception
+{
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * @param cause
+	 */
+	public WorkerJobException(Throwable cause)
+	{
+		super(cause);
+	}
+
+}
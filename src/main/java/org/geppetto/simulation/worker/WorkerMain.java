@@ -0,0 +1,53 @@
+package org.geppetto.simulation.worker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * The entry point of a worker process. The jobs are read from the standard input and their results written to the standard output, one at a
+ * time. The worker exits when the server closes its input, which also happens if the server dies.
+ * 
+ */
+public class WorkerMain
+{
+
+	public static void main(String[] args) throws IOException
+	{
+		// the standard output carries the protocol, whatever the jobs print goes to the standard error
+		PrintStream protocol = System.out;
+		System.setOut(System.err);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(protocol));
+		DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+		while(true)
+		{
+			WorkerResponse response;
+			try
+			{
+				response = new WorkerResponse(((ISimulationJob) WorkerProtocol.read(in, null)).call(), null);
+			}
+			catch(EOFException e)
+			{
+				return;
+			}
+			catch(Exception e)
+			{
+				response = new WorkerResponse(null, e);
+			}
+			try
+			{
+				WorkerProtocol.write(out, response);
+			}
+			catch(IOException e)
+			{
+				// e.g. the result or the error is not serializable
+				WorkerProtocol.write(out, new WorkerResponse(null, new IOException("The response of the job could not be sent: " + e)));
+			}
+		}
+	}
+
+}
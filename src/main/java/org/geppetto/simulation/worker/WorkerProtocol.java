@@ -0,0 +1,89 @@
+package org.geppetto.simulation.worker;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+
+/**
+ * The messages between the server and a worker process, each one is a serialized object preceded by its length. An object which cannot be
+ * serialized fails before anything is written, so the stream stays usable.
+ * 
+ */
+public class WorkerProtocol
+{
+
+	/**
+	 * @param out
+	 * @param message
+	 * @throws IOException
+	 */
+	public static void write(DataOutputStream out, Object message) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(ObjectOutputStream objects = new ObjectOutputStream(bytes))
+		{
+			objects.writeObject(message);
+		}
+		out.writeInt(bytes.size());
+		bytes.writeTo(out);
+		out.flush();
+	}
+
+	/**
+	 * @param in
+	 * @param classLoader
+	 *            where the classes of the message are looked up first, e.g. the one of the bundle of the simulator whose job returned it, null for
+	 *            the classpath of this class
+	 * @return the next message
+	 * @throws IOException
+	 *             also when the other side closed the stream
+	 * @throws ClassNotFoundException
+	 */
+	public static Object read(DataInputStream in, ClassLoader classLoader) throws IOException, ClassNotFoundException
+	{
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		try(ObjectInputStream objects = new MessageInputStream(new ByteArrayInputStream(bytes), classLoader))
+		{
+			return objects.readObject();
+		}
+	}
+
+	/**
+	 * Resolves the classes with the given class loader, the default one of ObjectInputStream only sees the classes of this bundle
+	 */
+	private static class MessageInputStream extends ObjectInputStream
+	{
+		private ClassLoader classLoader;
+
+		private MessageInputStream(InputStream in, ClassLoader classLoader) throws IOException
+		{
+			super(in);
+			this.classLoader = classLoader;
+		}
+
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException
+		{
+			if(classLoader != null)
+			{
+				try
+				{
+					return Class.forName(desc.getName(), false, classLoader);
+				}
+				catch(ClassNotFoundException e)
+				{
+					// e.g. WorkerResponse, which the simulator bundle might not import
+				}
+			}
+			return super.resolveClass(desc);
+		}
+	}
+
+}
@@ -0,0 +1,39 @@
+package org.geppetto.simulation.worker;
+
+import java.io.Serializable;
+
+/**
+ * What a worker process sends back for a job
+ * 
+ */
+public class WorkerResponse implements Serializable
+{
+
+	private static final long serialVersionUID = 1L;
+
+	private Serializable result;
+
+	private Exception error;
+
+	/**
+	 * @param result
+	 * @param error
+	 *            null if the job succeeded
+	 */
+	public WorkerResponse(Serializable result, Exception error)
+	{
+		this.result = result;
+		this.error = error;
+	}
+
+	public Serializable getResult()
+	{
+		return result;
+	}
+
+	public Exception getError()
+	{
+		return error;
+	}
+
+}
@@ -0,0 +1,98 @@
+package org.geppetto.simulation.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.geppetto.core.common.GeppettoExecutionException;
+import org.geppetto.simulation.ICheckpointableSimulator;
+import org.geppetto.simulation.manager.CheckpointStore;
+import org.junit.Test;
+
+public class CheckpointStoreTest
+{
+
+	private static class CountingSimulator implements ICheckpointableSimulator
+	{
+		private int step = 0;
+
+		@Override
+		public boolean supportsCheckpoints()
+		{
+			return true;
+		}
+
+		@Override
+		public void checkpoint(File folder) throws GeppettoExecutionException
+		{
+			try
+			{
+				Files.write(new File(folder, "state").toPath(), Integer.toString(step).getBytes(StandardCharsets.UTF_8));
+			}
+			catch(IOException e)
+			{
+				throw new GeppettoExecutionException(e);
+			}
+		}
+
+		@Override
+		public void resume(File folder) throws GeppettoExecutionException
+		{
+			try
+			{
+				step = Integer.parseInt(new String(Files.readAllBytes(new File(folder, "state").toPath()), StandardCharsets.UTF_8));
+			}
+			catch(IOException e)
+			{
+				throw new GeppettoExecutionException(e);
+			}
+		}
+	}
+
+	@Test
+	public void testResumeFromLastCheckpoint() throws Exception
+	{
+		File folder = new File(Files.createTempDirectory("checkpoints").toFile(), "checkpoint");
+		CheckpointStore store = new CheckpointStore(folder);
+		CountingSimulator simulator = new CountingSimulator();
+		assertFalse(store.resume(simulator));
+
+		simulator.step = 10;
+		store.write(simulator);
+		simulator.step = 20;
+		store.write(simulator);
+		assertTrue(store.exists());
+
+		CountingSimulator restarted = new CountingSimulator();
+		assertTrue(store.resume(restarted));
+		assertEquals(20, restarted.step);
+
+		store.clear();
+		assertFalse(store.exists());
+		assertFalse(store.resume(new CountingSimulator()));
+	}
+
+	@Test
+	public void testResumeFromPreviousCheckpoint() throws Exception
+	{
+		File parent = Files.createTempDirectory("checkpoints").toFile();
+		File folder = new File(parent, "checkpoint");
+		CheckpointStore store = new CheckpointStore(folder);
+		CountingSimulator simulator = new CountingSimulator();
+		simulator.step = 10;
+		store.write(simulator);
+
+		// the server stopped after the checkpoint was moved aside and before the new one replaced it
+		Files.move(folder.toPath(), new File(parent, "checkpoint.previous").toPath());
+
+		CountingSimulator restarted = new CountingSimulator();
+		assertTrue(store.resume(restarted));
+		assertEquals(10, restarted.step);
+	}
+
+}
@@ -0,0 +1,132 @@
+package org.geppetto.simulation.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geppetto.simulation.cluster.ClusterCoordinator;
+import org.geppetto.simulation.cluster.ClusterNode;
+import org.geppetto.simulation.cluster.ICoordinatorListener;
+import org.geppetto.simulation.cluster.IExperimentRunner;
+import org.geppetto.simulation.cluster.IRunCallback;
+import org.geppetto.simulation.cluster.LoopbackTransport;
+import org.geppetto.simulation.cluster.RunAssignment;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ClusterCoordinatorTest
+{
+
+	private LoopbackTransport transport;
+
+	private ClusterCoordinator coordinator;
+
+	private List<RunAssignment> finished = new ArrayList<RunAssignment>();
+
+	@Before
+	public void setUp()
+	{
+		transport = new LoopbackTransport();
+		coordinator = new ClusterCoordinator(transport);
+		coordinator.setListener(new ICoordinatorListener()
+		{
+			@Override
+			public void runFinished(RunAssignment assignment, boolean completed)
+			{
+				finished.add(assignment);
+			}
+
+			@Override
+			public void capacityAvailable()
+			{
+			}
+		});
+	}
+
+	@After
+	public void tearDown()
+	{
+		transport.close();
+	}
+
+	@Test
+	public void testRunsAssignedByFreeCapacity() throws InterruptedException
+	{
+		HeldRunner small = new HeldRunner();
+		HeldRunner large = new HeldRunner();
+		new ClusterNode("small", 1, transport, small).join();
+		new ClusterNode("large", 2, transport, large).join();
+		assertTrue(transport.flush(1000));
+		for(int i = 1; i <= 4; i++)
+		{
+			coordinator.submit(new RunAssignment(1, i, "user"));
+		}
+		assertTrue(transport.flush(1000));
+		assertEquals(2, large.runs.size());
+		assertEquals(1, small.runs.size());
+		assertEquals(1, coordinator.getPendingRuns());
+		assertFalse(coordinator.hasFreeCapacity());
+
+		small.finish(0);
+		assertTrue(transport.flush(1000));
+		assertTrue(transport.flush(1000));
+		assertEquals(1, finished.size());
+		assertEquals(2, small.runs.size());
+		assertEquals(4, small.runs.get(1).getExperimentId());
+		assertEquals(0, coordinator.getPendingRuns());
+	}
+
+	@Test
+	public void testRunsOfLostNodeReassigned() throws InterruptedException
+	{
+		HeldRunner first = new HeldRunner();
+		HeldRunner second = new HeldRunner();
+		new ClusterNode("first", 1, transport, first).join();
+		assertTrue(transport.flush(1000));
+		coordinator.submit(new RunAssignment(1, 1, "user"));
+		coordinator.submit(new RunAssignment(1, 2, "user"));
+		assertTrue(transport.flush(1000));
+		assertEquals(1, first.runs.size());
+
+		transport.disconnect("first");
+		new ClusterNode("second", 1, transport, second).join();
+		assertTrue(transport.flush(1000));
+		assertTrue(transport.flush(1000));
+		// the lost run goes ahead of the one which was waiting
+		assertEquals(1, second.runs.size());
+		assertEquals(1, second.runs.get(0).getExperimentId());
+		assertEquals(1, coordinator.getPendingRuns());
+
+		// a late report from the lost node is ignored
+		first.finish(0);
+		assertTrue(transport.flush(1000));
+		assertEquals(0, finished.size());
+	}
+
+	/**
+	 * Keeps the runs going until the test finishes them
+	 */
+	private static class HeldRunner implements IExperimentRunner
+	{
+		private List<RunAssignment> runs = new ArrayList<RunAssignment>();
+
+		private List<IRunCallback> callbacks = new ArrayList<IRunCallback>();
+
+		@Override
+		public synchronized void run(RunAssignment assignment, IRunCallback callback)
+		{
+			runs.add(assignment);
+			callbacks.add(callback);
+		}
+
+		private synchronized void finish(int run)
+		{
+			callbacks.get(run).finished(true);
+		}
+	}
+
+}
@@ -0,0 +1,161 @@
+package org.geppetto.simulation.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.geppetto.core.data.model.IAspectConfiguration;
+import org.geppetto.core.services.registry.ServicesRegistry;
+import org.geppetto.model.DomainModel;
+import org.geppetto.model.GeppettoFactory;
+import org.geppetto.model.ModelFormat;
+import org.geppetto.simulation.conversion.ConversionCache;
+import org.junit.Test;
+
+public class ConversionCacheTest
+{
+
+	private static final String CONVERSION = "org.geppetto.TestConversion";
+
+	private ModelFormat outputFormat = ServicesRegistry.registerModelFormat("CONVERSION_CACHE_TEST_FORMAT");
+
+	@Test
+	public void testKeyStability()
+	{
+		ConversionCache cache = new ConversionCache(1024, null, 0);
+		Map<String, String> parameters = new LinkedHashMap<String, String>();
+		parameters.put("a.b", "1");
+		parameters.put("a.c", "2");
+		Map<String, String> reordered = new LinkedHashMap<String, String>();
+		reordered.put("a.c", "2");
+		reordered.put("a.b", "1");
+		String key = cache.getKey(model("cell"), outputFormat, aspect(parameters), CONVERSION);
+		assertNotNull(key);
+		// equal inputs give the same key, whatever the instances and the order of the parameters
+		assertEquals(key, cache.getKey(model("cell"), outputFormat, aspect(reordered), CONVERSION));
+		parameters.put("a.c", "3");
+		assertNotEquals(key, cache.getKey(model("cell"), outputFormat, aspect(parameters), CONVERSION));
+		assertNotEquals(key, cache.getKey(model("another cell"), outputFormat, aspect(reordered), CONVERSION));
+		assertNotEquals(key, cache.getKey(model("cell"), outputFormat, aspect(reordered), "org.geppetto.AnotherConversion"));
+		// a model which cannot be hashed cannot be cached
+		assertNull(cache.getKey(model(new Object()), outputFormat, aspect(reordered), CONVERSION));
+	}
+
+	@Test
+	public void testHitsAndMisses()
+	{
+		// room for two of the models below, two bytes per character
+		ConversionCache cache = new ConversionCache(64, null, 0);
+		String first = key(cache, "first");
+		String second = key(cache, "second");
+		String third = key(cache, "third");
+		assertNull(cache.get(first));
+		assertEquals(1, cache.getMisses());
+		DomainModel converted = model("converted first");
+		cache.put(first, converted);
+		DomainModel cached = cache.get(first);
+		assertEquals(1, cache.getHits());
+		assertNotSame(converted, cached);
+		assertEquals("converted first", cached.getDomainModel());
+		cache.put(second, model("converted second"));
+		cache.put(third, model("converted third"));
+		// only the two most recently used are kept
+		assertEquals(62, cache.getMemoryUsed());
+		assertNull(cache.get(first));
+		assertEquals(2, cache.getMisses());
+		assertNotNull(cache.get(third));
+		assertEquals(2, cache.getHits());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testContentNotShared()
+	{
+		ConversionCache cache = new ConversionCache(1024, null, 0);
+		String key = key(cache, "cell");
+		List<String> content = new ArrayList<String>(Arrays.asList("soma"));
+		cache.put(key, model(content));
+		content.add("changed after the put");
+		List<String> cached = (List<String>) cache.get(key).getDomainModel();
+		assertEquals(Arrays.asList("soma"), cached);
+		cached.add("changed by an experiment");
+		assertEquals(Arrays.asList("soma"), cache.get(key).getDomainModel());
+	}
+
+	@Test
+	public void testDiskTier() throws IOException
+	{
+		File folder = Files.createTempDirectory("conversionCache").toFile();
+		ConversionCache cache = new ConversionCache(1024, folder, Long.MAX_VALUE);
+		String key = key(cache, "cell");
+		cache.put(key, model("converted cell"));
+		assertEquals(1, folder.listFiles().length);
+		// e.g. after a restart
+		ConversionCache restarted = new ConversionCache(1024, folder, Long.MAX_VALUE);
+		assertEquals("converted cell", restarted.get(key).getDomainModel());
+		assertEquals(1, restarted.getDiskHits());
+		// once read the model is in memory
+		restarted.get(key);
+		assertEquals(1, restarted.getHits());
+		// a corrupted entry is a miss and it is deleted
+		String corrupted = key(cache, "corrupted");
+		File entry = new File(folder, corrupted);
+		Files.write(entry.toPath(), "not a model".getBytes(StandardCharsets.UTF_8));
+		assertNull(restarted.get(corrupted));
+		assertEquals(1, restarted.getMisses());
+		assertFalse(entry.exists());
+	}
+
+	@Test
+	public void testDiskTierBounded() throws IOException
+	{
+		File folder = Files.createTempDirectory("conversionCache").toFile();
+		ConversionCache cache = new ConversionCache(1024, folder, Long.MAX_VALUE);
+		String first = key(cache, "first");
+		cache.put(first, model("converted first"));
+		File firstEntry = new File(folder, first);
+		firstEntry.setLastModified(System.currentTimeMillis() - 60000);
+		long size = cache.getDiskUsed();
+		assertEquals(firstEntry.length(), size);
+		// e.g. after a restart with a lower budget, there is room for one entry only
+		ConversionCache restarted = new ConversionCache(1024, folder, size);
+		assertEquals(size, restarted.getDiskUsed());
+		String second = key(cache, "second");
+		restarted.put(second, model("converted other"));
+		// the least recently used entry goes
+		assertFalse(firstEntry.exists());
+		assertEquals(1, folder.listFiles().length);
+		assertEquals(size, restarted.getDiskUsed());
+	}
+
+	private String key(ConversionCache cache, String content)
+	{
+		return cache.getKey(model(content), outputFormat, aspect(new LinkedHashMap<String, String>()), CONVERSION);
+	}
+
+	private IAspectConfiguration aspect(Map<String, String> parameters)
+	{
+		return ExperimentProxies.createAspectConfiguration("network.cell", parameters);
+	}
+
+	private DomainModel model(Object content)
+	{
+		DomainModel model = GeppettoFactory.eINSTANCE.createDomainModel();
+		model.setDomainModel(content);
+		return model;
+	}
+
+}
@@ -0,0 +1,102 @@
+package org.geppetto.simulation.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.geppetto.core.conversion.IConversion;
+import org.geppetto.core.services.registry.ServicesRegistry;
+import org.geppetto.model.ModelFormat;
+import org.geppetto.simulation.conversion.ConversionPlanner;
+import org.geppetto.simulation.conversion.ConversionStep;
+import org.geppetto.simulation.conversion.IConversionGraph;
+import org.junit.Test;
+
+public class ConversionPlannerTest
+{
+
+	private ModelFormat a = ServicesRegistry.registerModelFormat("PLANNER_A");
+
+	private ModelFormat b = ServicesRegistry.registerModelFormat("PLANNER_B");
+
+	private ModelFormat c = ServicesRegistry.registerModelFormat("PLANNER_C");
+
+	private ModelFormat d = ServicesRegistry.registerModelFormat("PLANNER_D");
+
+	private ConversionStep direct = new ConversionStep(createConversion(), a, c);
+
+	private ConversionStep first = new ConversionStep(createConversion(), a, b);
+
+	private ConversionStep second = new ConversionStep(createConversion(), b, c);
+
+	private List<ConversionStep> registered = new ArrayList<ConversionStep>(Arrays.asList(direct, first, second));
+
+	private ConversionPlanner planner = new ConversionPlanner(new IConversionGraph()
+	{
+		@Override
+		public List<ConversionStep> getSteps()
+		{
+			return new ArrayList<ConversionStep>(registered);
+		}
+	});
+
+	@Test
+	public void testFewestStepsWithoutTimings()
+	{
+		assertEquals(Arrays.asList(direct), planner.plan(Arrays.asList(a), Arrays.asList(c)));
+		assertEquals(Arrays.asList(first), planner.plan(Arrays.asList(a), Arrays.asList(b, d)));
+		assertNull(planner.plan(Arrays.asList(a), Arrays.asList(d)));
+	}
+
+	@Test
+	public void testFastestPathAfterTimings()
+	{
+		planner.recordTiming(direct, 10000);
+		planner.recordTiming(first, 10);
+		planner.recordTiming(second, 10);
+		assertEquals(Arrays.asList(first, second), planner.plan(Arrays.asList(a), Arrays.asList(c)));
+		assertEquals(Arrays.asList(direct), planner.plan(Arrays.asList(a), Arrays.asList(c), Collections.singleton(second.getKey())));
+	}
+
+	@Test
+	public void testPlanDroppedWhenServicesChange()
+	{
+		assertEquals(Arrays.asList(direct), planner.plan(Arrays.asList(a), Arrays.asList(c)));
+		// the service of the direct conversion was unregistered, e.g. its bundle stopped
+		registered.remove(direct);
+		assertEquals(Arrays.asList(first, second), planner.plan(Arrays.asList(a), Arrays.asList(c)));
+		// and registered again by a new instance
+		ConversionStep restarted = new ConversionStep(createConversion(), a, c);
+		registered.add(restarted);
+		assertSame(restarted, planner.plan(Arrays.asList(a), Arrays.asList(c)).get(0));
+	}
+
+	private IConversion createConversion()
+	{
+		return (IConversion) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { IConversion.class }, new InvocationHandler()
+		{
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+			{
+				if(method.getName().equals("equals"))
+				{
+					return proxy == args[0];
+				}
+				if(method.getName().equals("hashCode"))
+				{
+					return System.identityHashCode(proxy);
+				}
+				return null;
+			}
+		});
+	}
+
+}
@@ -0,0 +1,145 @@
+package org.geppetto.simulation.test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.geppetto.core.data.model.IAspectConfiguration;
+import org.geppetto.core.data.model.IExperiment;
+import org.geppetto.core.data.model.IGeppettoProject;
+import org.geppetto.core.data.model.IParameter;
+
+/**
+ * Lightweight experiments for the tests which do not need a data manager
+ *
+ */
+public class ExperimentProxies
+{
+
+	/**
+	 * @param projectId
+	 * @param experimentId
+	 * @param isVolatile
+	 * @return an experiment which only knows its id and its parent project
+	 */
+	public static IExperiment createExperiment(long projectId, long experimentId, boolean isVolatile)
+	{
+		return createExperiment(projectId, experimentId, isVolatile, null);
+	}
+
+	/**
+	 * @param projectId
+	 * @param experimentId
+	 * @param isVolatile
+	 * @param aspectConfigurations
+	 * @return an experiment which only knows its id, its parent project and its aspect configurations
+	 */
+	public static IExperiment createExperiment(final long projectId, final long experimentId, final boolean isVolatile, final List<IAspectConfiguration> aspectConfigurations)
+	{
+		final IGeppettoProject project = (IGeppettoProject) Proxy.newProxyInstance(IGeppettoProject.class.getClassLoader(), new Class<?>[] { IGeppettoProject.class }, new InvocationHandler()
+		{
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args)
+			{
+				switch(method.getName())
+				{
+					case "getId":
+						return projectId;
+					case "isVolatile":
+						return isVolatile;
+					default:
+						return identity(proxy, method, args);
+				}
+			}
+		});
+		return (IExperiment) Proxy.newProxyInstance(IExperiment.class.getClassLoader(), new Class<?>[] { IExperiment.class }, new InvocationHandler()
+		{
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args)
+			{
+				switch(method.getName())
+				{
+					case "getId":
+						return experimentId;
+					case "getParentProject":
+						return project;
+					case "getAspectConfigurations":
+						if(aspectConfigurations != null)
+						{
+							return aspectConfigurations;
+						}
+						return identity(proxy, method, args);
+					default:
+						return identity(proxy, method, args);
+				}
+			}
+		});
+	}
+
+	/**
+	 * @param instance
+	 * @param parameters
+	 *            the values of the model parameters, by variable
+	 * @return an aspect configuration without a simulator configuration nor watched variables
+	 */
+	public static IAspectConfiguration createAspectConfiguration(final String instance, Map<String, String> parameters)
+	{
+		final List<IParameter> modelParameters = new ArrayList<IParameter>();
+		for(final Map.Entry<String, String> parameter : parameters.entrySet())
+		{
+			modelParameters.add((IParameter) Proxy.newProxyInstance(IParameter.class.getClassLoader(), new Class<?>[] { IParameter.class }, new InvocationHandler()
+			{
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args)
+				{
+					switch(method.getName())
+					{
+						case "getVariable":
+							return parameter.getKey();
+						case "getValue":
+							return parameter.getValue();
+						default:
+							return identity(proxy, method, args);
+					}
+				}
+			}));
+		}
+		return (IAspectConfiguration) Proxy.newProxyInstance(IAspectConfiguration.class.getClassLoader(), new Class<?>[] { IAspectConfiguration.class }, new InvocationHandler()
+		{
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args)
+			{
+				switch(method.getName())
+				{
+					case "getInstance":
+						return instance;
+					case "getModelParameter":
+						return modelParameters;
+					case "getSimulatorConfiguration":
+					case "getWatchedVariables":
+						return null;
+					default:
+						return identity(proxy, method, args);
+				}
+			}
+		});
+	}
+
+	private static Object identity(Object proxy, Method method, Object[] args)
+	{
+		switch(method.getName())
+		{
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return "proxy" + System.identityHashCode(proxy);
+			default:
+				throw new UnsupportedOperationException(method.getName());
+		}
+	}
+}
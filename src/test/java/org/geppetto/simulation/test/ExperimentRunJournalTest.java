@@ -0,0 +1,87 @@
+package org.geppetto.simulation.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.geppetto.core.data.model.IExperiment;
+import org.geppetto.simulation.manager.ExperimentRunJournal;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExperimentRunJournalTest
+{
+
+	private File file;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		file = new File(Files.createTempDirectory("runs").toFile(), "runs.journal");
+	}
+
+	@Test
+	public void testActiveEntriesSurviveReopening() throws IOException
+	{
+		ExperimentRunJournal journal = new ExperimentRunJournal(file);
+		Assert.assertFalse(journal.existed());
+		journal.open();
+		IExperiment queued = ExperimentProxies.createExperiment(1, 1, false);
+		IExperiment running = ExperimentProxies.createExperiment(1, 2, false);
+		IExperiment done = ExperimentProxies.createExperiment(2, 3, false);
+		journal.experimentQueued("guest", queued);
+		journal.experimentQueued("guest", running);
+		journal.experimentRunning(null, running);
+		journal.experimentQueued("other", done);
+		journal.experimentDone(done);
+		journal.experimentQueued("guest", ExperimentProxies.createExperiment(3, 4, true));
+		journal.close();
+
+		journal = new ExperimentRunJournal(file);
+		Assert.assertTrue(journal.existed());
+		List<ExperimentRunJournal.Entry> entries = journal.getActiveEntries();
+		Assert.assertEquals(2, entries.size());
+		Assert.assertEquals(1, entries.get(0).getExperimentId());
+		Assert.assertFalse(entries.get(0).isRunning());
+		Assert.assertEquals(2, entries.get(1).getExperimentId());
+		Assert.assertTrue(entries.get(1).isRunning());
+		// the login is kept when the experiment starts running
+		Assert.assertEquals("guest", entries.get(1).getLogin());
+		// reopening compacts the journal
+		Assert.assertEquals(2, Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).size());
+		journal.close();
+	}
+
+	@Test
+	public void testNewJournalWrittenOnlyOnceOpened() throws IOException
+	{
+		ExperimentRunJournal journal = new ExperimentRunJournal(file);
+		// e.g. the experiments found by the full scan
+		journal.experimentQueued("guest", ExperimentProxies.createExperiment(1, 1, false));
+		journal.experimentQueued("guest", ExperimentProxies.createExperiment(1, 2, false));
+		Assert.assertFalse(file.exists());
+		journal.close();
+		// a restart before the scan completed finds no journal and scans again
+		Assert.assertFalse(file.exists());
+		journal = new ExperimentRunJournal(file);
+		journal.experimentQueued("guest", ExperimentProxies.createExperiment(1, 1, false));
+		journal.open();
+		Assert.assertEquals(1, Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).size());
+		journal.experimentQueued("guest", ExperimentProxies.createExperiment(1, 2, false));
+		Assert.assertEquals(2, Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).size());
+		journal.close();
+	}
+
+	@Test
+	public void testUnknownExperimentCanBeDropped() throws IOException
+	{
+		ExperimentRunJournal journal = new ExperimentRunJournal(file);
+		journal.experimentQueued("guest", ExperimentProxies.createExperiment(1, 1, false));
+		journal.experimentDone(1, 1);
+		Assert.assertTrue(journal.getActiveEntries().isEmpty());
+		journal.close();
+	}
+}
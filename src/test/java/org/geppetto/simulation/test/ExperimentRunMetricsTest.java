@@ -0,0 +1,58 @@
+package org.geppetto.simulation.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.geppetto.simulation.manager.ExperimentRunMetrics;
+import org.geppetto.simulation.manager.ExperimentRunMetrics.Measurement;
+import org.geppetto.simulation.manager.ExperimentRunMetrics.Phase;
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+public class ExperimentRunMetricsTest
+{
+
+	@Test
+	public void testPhases() throws InterruptedException
+	{
+		ExperimentRunMetrics metrics = new ExperimentRunMetrics(1, 2);
+		metrics.record(Phase.QUEUE_WAIT, 100);
+		Measurement conversion = metrics.start(Phase.CONVERSION);
+		Thread.sleep(20);
+		conversion.end();
+		metrics.addBytes(Phase.ZIP, 1000, 400);
+
+		assertEquals(100, metrics.getPhase(Phase.QUEUE_WAIT).getWallTime());
+		assertTrue(metrics.getPhase(Phase.CONVERSION).getWallTime() >= 20);
+		assertTrue(metrics.getPhase(Phase.CONVERSION).getPeakHeap() > 0);
+		assertEquals(0, metrics.getPhase(Phase.SIMULATE).getWallTime());
+
+		JsonObject json = new JsonParser().parse(metrics.toJson()).getAsJsonObject();
+		assertEquals(2, json.get("experimentId").getAsLong());
+		JsonObject zip = json.getAsJsonObject("phases").getAsJsonObject("zip");
+		assertEquals(1000, zip.get("bytesRead").getAsLong());
+		assertEquals(400, zip.get("bytesWritten").getAsLong());
+	}
+
+	@Test
+	public void testHeapSampledDuringPhase() throws InterruptedException
+	{
+		ExperimentRunMetrics metrics = new ExperimentRunMetrics(1, 2);
+		System.gc();
+		long start = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+		Measurement conversion = metrics.start(Phase.CONVERSION);
+		// allocated and dropped between the start and the end of the measurement
+		byte[] buffer = new byte[64 * 1024 * 1024];
+		buffer[0] = 1;
+		Thread.sleep(ExperimentRunMetrics.HEAP_SAMPLE_INTERVAL * 3);
+		buffer = null;
+		System.gc();
+		long end = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+		conversion.end();
+		assertTrue(metrics.getPhase(Phase.CONVERSION).getPeakHeap() > Math.max(start, end) + 32 * 1024 * 1024);
+		ExperimentRunMetrics.stopHeapSampler();
+	}
+
+}
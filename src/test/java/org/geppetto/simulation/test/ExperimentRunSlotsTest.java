@@ -0,0 +1,77 @@
+package org.geppetto.simulation.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.geppetto.simulation.manager.ExperimentRunSlots;
+import org.junit.Test;
+
+public class ExperimentRunSlotsTest
+{
+
+	@Test
+	public void testAdmission()
+	{
+		ExperimentRunSlots slots = new ExperimentRunSlots(2);
+		assertTrue(slots.hasFree(0));
+		assertEquals(1, slots.acquire());
+		assertTrue(slots.hasFree(0));
+		assertEquals(2, slots.acquire());
+		assertFalse(slots.hasFree(0));
+		// the runs dispatched elsewhere do not take a slot of this server
+		assertTrue(slots.hasFree(1));
+		slots.release();
+		assertTrue(slots.hasFree(0));
+		assertEquals(1, slots.getRunning());
+		assertEquals(2, slots.getPeak());
+	}
+
+	@Test
+	public void testLoweredCapacity()
+	{
+		ExperimentRunSlots slots = new ExperimentRunSlots(3);
+		slots.acquire();
+		slots.acquire();
+		slots.acquire();
+		slots.setCapacity(1);
+		// the experiments already running are not stopped
+		assertEquals(3, slots.getRunning());
+		assertEquals(1, slots.getWorkers());
+		assertFalse(slots.hasFree(0));
+		slots.release();
+		assertFalse(slots.hasFree(0));
+		slots.release();
+		// nothing starts until the running ones drop below the new capacity
+		assertFalse(slots.hasFree(0));
+		slots.release();
+		assertTrue(slots.hasFree(0));
+		slots.setCapacity(2);
+		slots.acquire();
+		assertTrue(slots.hasFree(0));
+	}
+
+	@Test
+	public void testAbandonedRunKeepsItsWorker()
+	{
+		ExperimentRunSlots slots = new ExperimentRunSlots(1);
+		slots.acquire();
+		assertFalse(slots.hasFree(0));
+		slots.abandon();
+		// the slot is given back but the worker is still busy
+		assertTrue(slots.hasFree(0));
+		assertEquals(0, slots.getRunning());
+		assertEquals(1, slots.getAbandoned());
+		assertEquals(2, slots.getWorkers());
+		slots.abandonedTerminated();
+		assertEquals(0, slots.getAbandoned());
+		assertEquals(1, slots.getWorkers());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidCapacity()
+	{
+		new ExperimentRunSlots(2).setCapacity(0);
+	}
+
+}
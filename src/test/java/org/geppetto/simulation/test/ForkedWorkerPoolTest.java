@@ -0,0 +1,140 @@
+package org.geppetto.simulation.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.geppetto.simulation.worker.ForkedWorkerPool;
+import org.geppetto.simulation.worker.ISimulationJob;
+import org.geppetto.simulation.worker.WorkerJobException;
+import org.geppetto.simulation.worker.WorkerProtocol;
+import org.junit.Test;
+
+public class ForkedWorkerPoolTest
+{
+
+	public static class ProcessJob implements ISimulationJob
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public Serializable call() throws Exception
+		{
+			return ManagementFactory.getRuntimeMXBean().getName();
+		}
+	}
+
+	public static class FailingJob implements ISimulationJob
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public Serializable call() throws Exception
+		{
+			throw new IllegalStateException("simulation failed");
+		}
+	}
+
+	public static class CrashingJob implements ISimulationJob
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public Serializable call() throws Exception
+		{
+			System.exit(3);
+			return null;
+		}
+	}
+
+	@Test
+	public void testJobsRunInWorkers() throws Exception
+	{
+		ForkedWorkerPool pool = new ForkedWorkerPool(1, "64m", System.getProperty("java.class.path"));
+		try
+		{
+			String worker = (String) pool.execute(new ProcessJob(), null);
+			assertTrue(!worker.equals(ManagementFactory.getRuntimeMXBean().getName()));
+			// the same worker executes the next job
+			assertEquals(worker, pool.execute(new ProcessJob(), null));
+			try
+			{
+				pool.execute(new FailingJob(), null);
+				fail("The job failed");
+			}
+			catch(WorkerJobException e)
+			{
+				assertEquals("simulation failed", e.getCause().getMessage());
+			}
+			assertEquals(worker, pool.execute(new ProcessJob(), null));
+			assertEquals(0, pool.getRestarts());
+		}
+		finally
+		{
+			pool.close();
+		}
+	}
+
+	@Test
+	public void testCrashedWorkerRestarted() throws Exception
+	{
+		ForkedWorkerPool pool = new ForkedWorkerPool(1, "64m", System.getProperty("java.class.path"));
+		try
+		{
+			String worker = (String) pool.execute(new ProcessJob(), null);
+			try
+			{
+				pool.execute(new CrashingJob(), null);
+				fail("The worker died");
+			}
+			catch(IOException e)
+			{
+				// expected
+			}
+			assertEquals(1, pool.getRestarts());
+			assertTrue(!worker.equals(pool.execute(new ProcessJob(), null)));
+		}
+		finally
+		{
+			pool.close();
+		}
+	}
+
+	@Test
+	public void testMessageClassesResolvedWithClassLoader() throws Exception
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		WorkerProtocol.write(new DataOutputStream(bytes), new ProcessJob());
+		final Set<String> requested = new HashSet<String>();
+		// stands for the class loader of the bundle of a simulator
+		ClassLoader classLoader = new ClassLoader(getClass().getClassLoader())
+		{
+			@Override
+			protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException
+			{
+				requested.add(name);
+				return super.loadClass(name, resolve);
+			}
+		};
+		Object message = WorkerProtocol.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), classLoader);
+		assertTrue(message instanceof ProcessJob);
+		assertTrue(requested.contains(ProcessJob.class.getName()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testClasspathRequired()
+	{
+		new ForkedWorkerPool(1, "64m", "");
+	}
+
+}
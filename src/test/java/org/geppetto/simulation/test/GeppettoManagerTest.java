@@ -6,6 +6,7 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -73,6 +74,7 @@ public class GeppettoManagerTest
 	private static IGeppettoProject geppettoProject;
 	private static RuntimeProject runtimeProject;
 	private static IExperiment addedExperiment;
+	private static RuntimeProject heldRuntimeProject;
 
 	/**
 	 * @throws java.lang.Exception
@@ -409,12 +411,15 @@ public class GeppettoManagerTest
 	 * @throws GeppettoAccessException
 	 */
 	@Test
-	public void test16RunExperiment() throws GeppettoExecutionException, InterruptedException, GeppettoAccessException
+	public void test16RunExperiment() throws GeppettoExecutionException, InterruptedException, GeppettoAccessException, MalformedURLException,
+			GeppettoInitializationException
 	{
 		Assert.assertEquals(1, addedExperiment.getAspectConfigurations().size());
 		IAspectConfiguration ac = addedExperiment.getAspectConfigurations().get(0);
 		Assert.assertEquals("testVar(testType)", ac.getInstance());
 		Assert.assertNotNull(ac.getSimulatorConfiguration());
+		// the experiment is dispatched as soon as it is queued, holding the only run slot of the project keeps it queued until test20
+		heldRuntimeProject = ExperimentRunManager.getInstance().getRuntimeProjectPool().acquire(geppettoProject, addedExperiment);
 		manager.runExperiment("1", addedExperiment);
 		Assert.assertEquals(3, addedExperiment.getAspectConfigurations().get(0).getWatchedVariables().size());
 	}
@@ -465,13 +470,15 @@ public class GeppettoManagerTest
 	public void test20RunExperimentAgain() throws GeppettoExecutionException, InterruptedException, GeppettoAccessException
 	{
 		Assert.assertNotNull(ExperimentRunManager.getInstance());
+		// the project can run an experiment again
+		ExperimentRunManager.getInstance().getRuntimeProjectPool().release(geppettoProject, heldRuntimeProject);
 		Assert.assertEquals(1, addedExperiment.getAspectConfigurations().size());
 		IAspectConfiguration ac = addedExperiment.getAspectConfigurations().get(0);
 		Assert.assertEquals("testVar(testType)", ac.getInstance());
 		Assert.assertNotNull(ac.getSimulatorConfiguration());
 		manager.runExperiment("1", addedExperiment);
 		Assert.assertEquals(3, addedExperiment.getAspectConfigurations().get(0).getWatchedVariables().size());
-		Thread.sleep(3000);
+		waitForRunToFinish(addedExperiment, 10000);
 	}
 
 	/**
@@ -486,6 +493,57 @@ public class GeppettoManagerTest
 		Assert.assertEquals(ExperimentStatus.COMPLETED, status.get(1).getStatus());
 	}
 
+	/**
+	 * Test method for {@link org.geppetto.simulation.manager.GeppettoManager#cancelExperimentRun(java.lang.String, org.geppetto.core.data.model.IExperiment)}
+	 * when the run does not stop.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void test21bCancelRunningExperiment() throws Exception
+	{
+		ExperimentRunManager experimentRunManager = ExperimentRunManager.getInstance();
+		long gracePeriod = experimentRunManager.getCancellationGracePeriod();
+		experimentRunManager.setCancellationGracePeriod(2000);
+		IExperiment experiment = manager.newExperiment("3", geppettoProject);
+		experiment.getAspectConfigurations().get(0).getSimulatorConfiguration().setSimulatorId("testSimulator");
+		TestSimulatorService.holdInitialization();
+		try
+		{
+			manager.runExperiment("1", experiment);
+			Assert.assertTrue(TestSimulatorService.awaitInitialization(10000));
+			Assert.assertEquals(ExperimentStatus.RUNNING, experiment.getStatus());
+			Assert.assertEquals(1, experimentRunManager.getRunningExperimentsCount());
+			Assert.assertEquals(1, experimentRunManager.getRuntimeProjectPool().getLeasedCount(geppettoProject));
+
+			manager.cancelExperimentRun("1", experiment);
+			// the simulator ignores the cancellation, the run keeps its slot and its project until the grace period expires
+			Assert.assertEquals(1, experimentRunManager.getRunningExperimentsCount());
+			Assert.assertEquals(1, experimentRunManager.getRuntimeProjectPool().getLeasedCount(geppettoProject));
+			long deadline = System.currentTimeMillis() + 10000;
+			while(experimentRunManager.getRunningExperimentsCount() > 0 && System.currentTimeMillis() < deadline)
+			{
+				Thread.sleep(50);
+			}
+			Assert.assertEquals(0, experimentRunManager.getRunningExperimentsCount());
+			Assert.assertEquals(0, experimentRunManager.getRuntimeProjectPool().getLeasedCount(geppettoProject));
+			Assert.assertEquals(1, experimentRunManager.getAbandonedRunsCount());
+		}
+		finally
+		{
+			TestSimulatorService.releaseInitialization();
+			experimentRunManager.setCancellationGracePeriod(gracePeriod);
+		}
+		// once the simulator gives up the abandoned run terminates
+		long deadline = System.currentTimeMillis() + 10000;
+		while(experimentRunManager.getAbandonedRunsCount() > 0 && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(50);
+		}
+		Assert.assertEquals(0, experimentRunManager.getAbandonedRunsCount());
+		manager.deleteExperiment("1", experiment);
+	}
+
 	/**
 	 * Test method for {@link org.geppetto.simulation.manager.GeppettoManager#playExperiment(java.lang.String, org.geppetto.core.data.model.IExperiment)}.
 	 * 
@@ -734,4 +792,24 @@ public class GeppettoManagerTest
 		rawResult.delete();
 	}
 
+	/**
+	 * Waits until the experiment is neither queued nor running
+	 * 
+	 * @param experiment
+	 * @param timeout
+	 * @throws InterruptedException
+	 */
+	private static void waitForRunToFinish(IExperiment experiment, long timeout) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + timeout;
+		while((experiment.getStatus().equals(ExperimentStatus.QUEUED) || experiment.getStatus().equals(ExperimentStatus.RUNNING)) && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(50);
+		}
+		if(experiment.getStatus().equals(ExperimentStatus.QUEUED) || experiment.getStatus().equals(ExperimentStatus.RUNNING))
+		{
+			Assert.fail("The experiment " + experiment.getId() + " is still " + experiment.getStatus() + " after " + timeout + " ms");
+		}
+	}
+
 }
@@ -0,0 +1,162 @@
+package org.geppetto.simulation.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.geppetto.core.manager.SharedLibraryManager;
+import org.geppetto.core.model.GeppettoModelAccess;
+import org.geppetto.core.model.IModelInterpreter;
+import org.geppetto.core.model.ModelInterpreterException;
+import org.geppetto.model.GeppettoFactory;
+import org.geppetto.model.GeppettoLibrary;
+import org.geppetto.model.GeppettoModel;
+import org.geppetto.model.types.CompositeType;
+import org.geppetto.model.types.ImportType;
+import org.geppetto.model.types.Type;
+import org.geppetto.model.types.TypesFactory;
+import org.geppetto.model.util.GeppettoModelTraversal;
+import org.geppetto.simulation.IConcurrentTypeImport;
+import org.geppetto.simulation.visitor.ImportTypesVisitor;
+import org.junit.Test;
+
+public class ImportTypesVisitorTest
+{
+
+	/**
+	 * Imports only once another import is running at the same time
+	 */
+	public static class OverlappingModelInterpreter extends TestModelInterpreterService implements IConcurrentTypeImport
+	{
+		private CyclicBarrier overlap;
+
+		public OverlappingModelInterpreter(CyclicBarrier overlap)
+		{
+			this.overlap = overlap;
+		}
+
+		@Override
+		public boolean supportsConcurrentImport()
+		{
+			return true;
+		}
+
+		@Override
+		public Type importType(URL url, String typeName, GeppettoLibrary library, GeppettoModelAccess commonLibraryAccess) throws ModelInterpreterException
+		{
+			try
+			{
+				overlap.await(10, TimeUnit.SECONDS);
+			}
+			catch(Exception e)
+			{
+				// no other library was imported at the same time
+				throw new ModelInterpreterException(e);
+			}
+			return super.importType(url, typeName, library, commonLibraryAccess);
+		}
+	}
+
+	/**
+	 * Remembers the thread it imported on
+	 */
+	public static class SequentialModelInterpreter extends TestModelInterpreterService
+	{
+		private Thread importThread;
+
+		@Override
+		public Type importType(URL url, String typeName, GeppettoLibrary library, GeppettoModelAccess commonLibraryAccess) throws ModelInterpreterException
+		{
+			importThread = Thread.currentThread();
+			return super.importType(url, typeName, library, commonLibraryAccess);
+		}
+	}
+
+	@Test
+	public void testLibrariesImportedConcurrently() throws Exception
+	{
+		GeppettoModel model = GeppettoFactory.eINSTANCE.createGeppettoModel();
+		Map<GeppettoLibrary, IModelInterpreter> interpreters = new HashMap<GeppettoLibrary, IModelInterpreter>();
+		// every import waits for another one, the imports fail unless they run two by two
+		CyclicBarrier overlap = new CyclicBarrier(2);
+		for(int i = 0; i < 4; i++)
+		{
+			interpreters.put(addLibrary(model, i), new OverlappingModelInterpreter(overlap));
+		}
+		model.getLibraries().add(EcoreUtil.copy(SharedLibraryManager.getSharedCommonLibrary()));
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try
+		{
+			ImportTypesVisitor importTypesVisitor = new ImportTypesVisitor(interpreters, new GeppettoModelAccess(model), false, null);
+			importTypesVisitor.setImportExecutor(executor);
+			GeppettoModelTraversal.apply(model, importTypesVisitor);
+			// nothing changes until the collected types are imported
+			assertTrue(model.getLibraries().get(0).getTypes().get(0) instanceof ImportType);
+			importTypesVisitor.importCollectedTypes();
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+		for(int i = 0; i < 4; i++)
+		{
+			GeppettoLibrary library = model.getLibraries().get(i);
+			assertEquals(1, library.getTypes().size());
+			assertTrue(library.getTypes().get(0) instanceof CompositeType);
+		}
+	}
+
+	@Test
+	public void testInterpretersNotSupportingItImportedOnCallingThread() throws Exception
+	{
+		GeppettoModel model = GeppettoFactory.eINSTANCE.createGeppettoModel();
+		Map<GeppettoLibrary, IModelInterpreter> interpreters = new HashMap<GeppettoLibrary, IModelInterpreter>();
+		SequentialModelInterpreter first = new SequentialModelInterpreter();
+		SequentialModelInterpreter second = new SequentialModelInterpreter();
+		interpreters.put(addLibrary(model, 0), first);
+		interpreters.put(addLibrary(model, 1), second);
+		model.getLibraries().add(EcoreUtil.copy(SharedLibraryManager.getSharedCommonLibrary()));
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try
+		{
+			ImportTypesVisitor importTypesVisitor = new ImportTypesVisitor(interpreters, new GeppettoModelAccess(model), false, null);
+			importTypesVisitor.setImportExecutor(executor);
+			GeppettoModelTraversal.apply(model, importTypesVisitor);
+			importTypesVisitor.importCollectedTypes();
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+		assertEquals(Thread.currentThread(), first.importThread);
+		assertEquals(Thread.currentThread(), second.importThread);
+		assertTrue(model.getLibraries().get(1).getTypes().get(0) instanceof CompositeType);
+	}
+
+	/**
+	 * @param model
+	 * @param i
+	 * @return a library with one type to import
+	 */
+	private GeppettoLibrary addLibrary(GeppettoModel model, int i)
+	{
+		GeppettoLibrary library = GeppettoFactory.eINSTANCE.createGeppettoLibrary();
+		library.setId("library" + i);
+		ImportType importType = TypesFactory.eINSTANCE.createImportType();
+		importType.setId("imported" + i);
+		library.getTypes().add(importType);
+		model.getLibraries().add(library);
+		return library;
+	}
+
+}
@@ -0,0 +1,134 @@
+package org.geppetto.simulation.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.geppetto.simulation.utilities.ParallelTasks;
+import org.junit.Test;
+
+public class ParallelTasksTest
+{
+
+	private AtomicInteger running = new AtomicInteger(0);
+
+	private AtomicInteger peak = new AtomicInteger(0);
+
+	private AtomicInteger completed = new AtomicInteger(0);
+
+	@Test
+	public void testSequentialOnTheCallingThread() throws Exception
+	{
+		final Thread caller = Thread.currentThread();
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for(int i = 0; i < 3; i++)
+		{
+			tasks.add(new Callable<Void>()
+			{
+				@Override
+				public Void call()
+				{
+					assertSame(caller, Thread.currentThread());
+					completed.incrementAndGet();
+					return null;
+				}
+			});
+		}
+		ParallelTasks.runAll(tasks, 1);
+		assertEquals(3, completed.get());
+	}
+
+	@Test
+	public void testBoundedParallelism() throws Exception
+	{
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for(int i = 0; i < 6; i++)
+		{
+			tasks.add(task(null));
+		}
+		ParallelTasks.runAll(tasks, 2);
+		assertEquals(6, completed.get());
+		assertEquals(2, peak.get());
+	}
+
+	@Test
+	public void testFailure() throws Exception
+	{
+		IOException failure = new IOException("Conversion failed");
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		tasks.add(task(null));
+		tasks.add(task(failure));
+		tasks.add(task(null));
+		try
+		{
+			ParallelTasks.runAll(tasks, 3);
+			fail("The failure of a task was not thrown");
+		}
+		catch(IOException e)
+		{
+			assertSame(failure, e);
+		}
+		// the other tasks are not stopped
+		assertEquals(2, completed.get());
+	}
+
+	@Test
+	public void testSequentialFailureStopsTheBatch() throws Exception
+	{
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		tasks.add(task(new IOException("Conversion failed")));
+		tasks.add(task(null));
+		try
+		{
+			ParallelTasks.runAll(tasks, 1);
+			fail("The failure of a task was not thrown");
+		}
+		catch(IOException e)
+		{
+			assertEquals(0, completed.get());
+		}
+	}
+
+	/**
+	 * @param failure
+	 *            thrown by the task, null for a task which completes
+	 * @return a task which takes a while, so that the tasks overlap
+	 */
+	private Callable<Void> task(final Exception failure)
+	{
+		return new Callable<Void>()
+		{
+			@Override
+			public Void call() throws Exception
+			{
+				int now = running.incrementAndGet();
+				int highest = peak.get();
+				while(now > highest && !peak.compareAndSet(highest, now))
+				{
+					highest = peak.get();
+				}
+				try
+				{
+					Thread.sleep(50);
+					if(failure != null)
+					{
+						throw failure;
+					}
+					completed.incrementAndGet();
+					return null;
+				}
+				finally
+				{
+					running.decrementAndGet();
+				}
+			}
+		};
+	}
+
+}
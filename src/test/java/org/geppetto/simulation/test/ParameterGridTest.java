@@ -0,0 +1,48 @@
+package org.geppetto.simulation.test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.geppetto.simulation.utilities.ParameterGrid;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ParameterGridTest
+{
+
+	@Test
+	public void testExpand()
+	{
+		Map<String, List<String>> grid = new LinkedHashMap<String, List<String>>();
+		grid.put("a", Arrays.asList("1", "2"));
+		grid.put("b", Arrays.asList("x", "y", "z"));
+		List<Map<String, String>> points = ParameterGrid.expand(grid);
+		Assert.assertEquals(6, points.size());
+		Assert.assertEquals(6, ParameterGrid.size(grid));
+		Assert.assertEquals("1", points.get(0).get("a"));
+		Assert.assertEquals("x", points.get(0).get("b"));
+		Assert.assertEquals("1", points.get(2).get("a"));
+		Assert.assertEquals("z", points.get(2).get("b"));
+		Assert.assertEquals("2", points.get(5).get("a"));
+		Assert.assertEquals("z", points.get(5).get("b"));
+	}
+
+	@Test
+	public void testFormat()
+	{
+		Map<String, List<String>> grid = new LinkedHashMap<String, List<String>>();
+		grid.put("cell.a", Arrays.asList("1"));
+		grid.put("cell.b", Arrays.asList("2"));
+		Assert.assertEquals("cell.a=1, cell.b=2", ParameterGrid.format(ParameterGrid.expand(grid).get(0)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParameterWithoutValues()
+	{
+		Map<String, List<String>> grid = new LinkedHashMap<String, List<String>>();
+		grid.put("a", Arrays.<String> asList());
+		ParameterGrid.expand(grid);
+	}
+}
@@ -0,0 +1,113 @@
+package org.geppetto.simulation.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.geppetto.simulation.storage.LocalResultsStorage;
+import org.geppetto.simulation.storage.ResultsPipeline;
+import org.junit.Test;
+
+public class ResultsPipelineTest
+{
+
+	@Test
+	public void testStoreAndZip() throws Exception
+	{
+		File source = Files.createTempDirectory("resultsSource").toFile();
+		File target = Files.createTempDirectory("resultsTarget").toFile();
+		File recording = write(source, "results.h5", "recording");
+		File raw1 = write(source, "raw1.dat", "first");
+		File raw2 = write(source, "raw2.dat", "second");
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try
+		{
+			ResultsPipeline pipeline = new ResultsPipeline(new LocalResultsStorage(target, false), executor);
+			Future<URL> stored = pipeline.store(recording, "projects/1/experiment/2/results.h5");
+			URL zipped = pipeline.zip(Arrays.asList(raw1, raw2), "projects/1/experiment/2/rawRecording.zip");
+			pipeline.await();
+
+			File storedRecording = new File(stored.get().toURI());
+			assertEquals(new File(target, "projects/1/experiment/2/results.h5").getCanonicalFile(), storedRecording.getCanonicalFile());
+			assertEquals("recording", new String(Files.readAllBytes(storedRecording.toPath()), StandardCharsets.UTF_8));
+
+			Map<String, String> entries = new HashMap<String, String>();
+			try(ZipInputStream zip = new ZipInputStream(zipped.openStream()))
+			{
+				ZipEntry entry;
+				while((entry = zip.getNextEntry()) != null)
+				{
+					byte[] buffer = new byte[64];
+					int read = zip.read(buffer);
+					entries.put(entry.getName(), new String(buffer, 0, Math.max(read, 0), StandardCharsets.UTF_8));
+				}
+			}
+			assertEquals(2, entries.size());
+			assertEquals("first", entries.get("raw1.dat"));
+			assertEquals("second", entries.get("raw2.dat"));
+
+			assertEquals(11, pipeline.getBytesZipped());
+			assertEquals(new File(zipped.toURI()).length(), pipeline.getBytesArchived());
+			assertEquals(9, pipeline.getBytesStored());
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testReferencedFilesAreNotCopied() throws Exception
+	{
+		File source = Files.createTempDirectory("resultsSource").toFile();
+		File recording = write(source, "results.h5", "recording");
+		ResultsPipeline pipeline = new ResultsPipeline(new LocalResultsStorage(source, true), null);
+		Future<URL> stored = pipeline.store(recording, "elsewhere/results.h5");
+		assertTrue(stored.isDone());
+		assertEquals(recording.toURI().toURL(), stored.get());
+	}
+
+	@Test
+	public void testFailedZipNotStored() throws Exception
+	{
+		File source = Files.createTempDirectory("resultsSource").toFile();
+		File target = Files.createTempDirectory("resultsTarget").toFile();
+		File raw = write(source, "raw1.dat", "first");
+		ResultsPipeline pipeline = new ResultsPipeline(new LocalResultsStorage(target, false), null);
+		try
+		{
+			pipeline.zip(Arrays.asList(raw, new File(source, "missing.dat")), "rawRecording.zip");
+			fail("The archive of a missing file was stored");
+		}
+		catch(IOException e)
+		{
+			// expected, the file cannot be read
+		}
+		// neither the truncated archive nor what was written of it are left
+		assertEquals(0, target.listFiles().length);
+		assertEquals(0, pipeline.getBytesArchived());
+	}
+
+	private File write(File folder, String name, String content) throws IOException
+	{
+		File file = new File(folder, name);
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+}
@@ -0,0 +1,190 @@
+package org.geppetto.simulation.test;
+
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.geppetto.core.beans.PathConfiguration;
+import org.geppetto.core.data.DataManagerHelper;
+import org.geppetto.core.data.DefaultGeppettoDataManager;
+import org.geppetto.core.data.model.IAspectConfiguration;
+import org.geppetto.core.data.model.IExperiment;
+import org.geppetto.core.data.model.IGeppettoProject;
+import org.geppetto.core.data.model.local.LocalGeppettoProject;
+import org.geppetto.core.manager.Scope;
+import org.geppetto.core.services.registry.ApplicationListenerBean;
+import org.geppetto.simulation.manager.GeppettoManager;
+import org.geppetto.simulation.manager.RuntimeProject;
+import org.geppetto.simulation.manager.RuntimeProjectPool;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.web.context.support.GenericWebApplicationContext;
+
+/**
+ * Loads the runtime projects of the GeppettoManagerTest project through a RuntimeProjectPool
+ *
+ */
+public class RuntimeProjectPoolTest
+{
+
+	private static final String PARAMETER = "testVar(testType).p1(Parameter)";
+
+	private static final long MEMORY_BUDGET = 1024L * 1024L * 1024L;
+
+	private static IGeppettoProject geppettoProject;
+
+	private RuntimeProjectPool pool;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUp() throws Exception
+	{
+		GenericWebApplicationContext context = new GenericWebApplicationContext();
+		BeanDefinition modelInterpreterBeanDefinition = new RootBeanDefinition(TestModelInterpreterService.class);
+		BeanDefinition simulatorBeanDefinition = new RootBeanDefinition(TestSimulatorService.class);
+		context.registerBeanDefinition("testModelInterpreter", modelInterpreterBeanDefinition);
+		context.registerBeanDefinition("scopedTarget.testModelInterpreter", modelInterpreterBeanDefinition);
+		context.registerBeanDefinition("testSimulator", simulatorBeanDefinition);
+		context.registerBeanDefinition("scopedTarget.testSimulator", simulatorBeanDefinition);
+		ContextRefreshedEvent event = new ContextRefreshedEvent(context);
+		ApplicationListenerBean listener = new ApplicationListenerBean();
+		context.refresh();
+		listener.onApplicationEvent(event);
+		DataManagerHelper.setDataManager(new DefaultGeppettoDataManager());
+		InputStreamReader inputStreamReader = new InputStreamReader(RuntimeProjectPoolTest.class.getResourceAsStream("/test/geppettoManagerTest.json"));
+		geppettoProject = DataManagerHelper.getDataManager().getProjectFromJson(TestUtilities.getGson(), inputStreamReader, null);
+		((LocalGeppettoProject) geppettoProject).setPublic(true);
+	}
+
+	@Before
+	public void createPool()
+	{
+		pool = new RuntimeProjectPool(new GeppettoManager(Scope.RUN), MEMORY_BUDGET, Long.MAX_VALUE);
+	}
+
+	@After
+	public void closePool() throws Exception
+	{
+		pool.close(geppettoProject);
+	}
+
+	@Test
+	public void testConcurrentLeases() throws Exception
+	{
+		RuntimeProject first = pool.acquire(geppettoProject, null);
+		RuntimeProject second = pool.acquire(geppettoProject, null);
+		// every experiment running gets its own copy of the model
+		Assert.assertNotSame(first, second);
+		Assert.assertNotSame(first.getGeppettoModel(), second.getGeppettoModel());
+		Assert.assertEquals(2, pool.getLeasedCount(geppettoProject));
+		Assert.assertEquals(2, pool.getLeasedCount(geppettoProject.getId()));
+		Assert.assertEquals(2, pool.getMisses());
+		pool.release(geppettoProject, first);
+		Assert.assertEquals(1, pool.getLeasedCount(geppettoProject));
+		pool.discard(geppettoProject);
+		Assert.assertEquals(0, pool.getLeasedCount(geppettoProject));
+		// a discarded runtime project is not kept
+		Assert.assertEquals(1, pool.getIdleCount());
+		second.release();
+	}
+
+	@Test
+	public void testReuse() throws Exception
+	{
+		RuntimeProject runtimeProject = pool.acquire(geppettoProject, null);
+		pool.release(geppettoProject, runtimeProject);
+		Assert.assertEquals(1, pool.getIdleCount());
+		Assert.assertTrue(pool.getIdleMemory() > 0);
+		Assert.assertSame(runtimeProject, pool.acquire(geppettoProject, null));
+		Assert.assertEquals(1, pool.getHits());
+		Assert.assertEquals(1, pool.getMisses());
+		Assert.assertEquals(0, pool.getIdleCount());
+		Assert.assertEquals(0, pool.getIdleMemory());
+		pool.release(geppettoProject, runtimeProject);
+	}
+
+	@Test
+	public void testModifiedParametersReuse() throws Exception
+	{
+		RuntimeProject modified = pool.acquire(geppettoProject, null);
+		RuntimeProject unmodified = pool.acquire(geppettoProject, null);
+		modified.parameterModified(PARAMETER);
+		pool.release(geppettoProject, unmodified);
+		pool.release(geppettoProject, modified);
+		// the most recently used one carries a parameter the experiment would not set again
+		Assert.assertSame(unmodified, pool.acquire(geppettoProject, createExperiment(new HashMap<String, String>())));
+		// an experiment which sets the same parameter overwrites it
+		Assert.assertSame(modified, pool.acquire(geppettoProject, createExperiment(Collections.singletonMap(PARAMETER, "0.3"))));
+		Assert.assertEquals(2, pool.getHits());
+		pool.release(geppettoProject, unmodified);
+		pool.release(geppettoProject, modified);
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEvicted() throws Exception
+	{
+		RuntimeProject first = pool.acquire(geppettoProject, null);
+		RuntimeProject second = pool.acquire(geppettoProject, null);
+		pool.release(geppettoProject, first);
+		long size = pool.getIdleMemory();
+		pool.setMemoryBudget(size);
+		Assert.assertEquals(1, pool.getIdleCount());
+		pool.release(geppettoProject, second);
+		// only one fits in the budget, the least recently used goes
+		Assert.assertEquals(1, pool.getIdleCount());
+		Assert.assertEquals(size, pool.getIdleMemory());
+		Assert.assertSame(second, pool.acquire(geppettoProject, null));
+		pool.release(geppettoProject, second);
+	}
+
+	@Test
+	public void testExpiredEvicted() throws Exception
+	{
+		RuntimeProject runtimeProject = pool.acquire(geppettoProject, null);
+		pool.release(geppettoProject, runtimeProject);
+		pool.evictExpired();
+		Assert.assertEquals(1, pool.getIdleCount());
+		pool.setTimeToLive(0);
+		Thread.sleep(10);
+		pool.evictExpired();
+		Assert.assertEquals(0, pool.getIdleCount());
+		Assert.assertEquals(0, pool.getIdleMemory());
+		Assert.assertNotSame(runtimeProject, pool.acquire(geppettoProject, null));
+		Assert.assertEquals(2, pool.getMisses());
+		pool.discard(geppettoProject);
+	}
+
+	@Test
+	public void testTemporaryFilesDeletedOnClose() throws Exception
+	{
+		File folder = new File(PathConfiguration.getProjectTmpPath(Scope.RUN, geppettoProject.getId()));
+		folder.mkdirs();
+		RuntimeProject leased = pool.acquire(geppettoProject, null);
+		pool.release(geppettoProject, pool.acquire(geppettoProject, null));
+		pool.close(geppettoProject);
+		// an experiment of the project is still running
+		Assert.assertEquals(0, pool.getIdleCount());
+		Assert.assertTrue(folder.exists());
+		pool.release(geppettoProject, leased);
+		pool.close(geppettoProject);
+		Assert.assertEquals(0, pool.getIdleCount());
+		Assert.assertFalse(folder.exists());
+	}
+
+	private IExperiment createExperiment(Map<String, String> parameters)
+	{
+		IAspectConfiguration aspectConfiguration = ExperimentProxies.createAspectConfiguration("testVar(testType)", parameters);
+		return ExperimentProxies.createExperiment(geppettoProject.getId(), 1, false, Collections.singletonList(aspectConfiguration));
+	}
+
+}
@@ -0,0 +1,61 @@
+package org.geppetto.simulation.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.geppetto.simulation.scheduler.DeficitRoundRobinSchedulingPolicy;
+import org.geppetto.simulation.scheduler.IExperimentSchedulingPolicy;
+import org.geppetto.simulation.scheduler.RoundRobinSchedulingPolicy;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SchedulingPolicyTest
+{
+
+	@Test
+	public void testRoundRobin()
+	{
+		IExperimentSchedulingPolicy policy = new RoundRobinSchedulingPolicy();
+		policy.setUserWeight("power", 5);
+		List<String> candidates = Arrays.asList("power", "interactive");
+		Assert.assertEquals(Arrays.asList("power", "interactive", "power", "interactive"), select(policy, candidates, 4));
+	}
+
+	@Test
+	public void testDeficitRoundRobinWeights()
+	{
+		IExperimentSchedulingPolicy policy = new DeficitRoundRobinSchedulingPolicy();
+		policy.setUserWeight("power", 2);
+		List<String> candidates = Arrays.asList("power", "interactive");
+		Assert.assertEquals(Arrays.asList("power", "power", "interactive", "power", "power", "interactive"), select(policy, candidates, 6));
+	}
+
+	@Test
+	public void testNewUserIsServedInTheNextRound()
+	{
+		IExperimentSchedulingPolicy policy = new DeficitRoundRobinSchedulingPolicy();
+		policy.setUserWeight("power", 3);
+		Assert.assertEquals("power", policy.selectUser(Arrays.asList("power")));
+		// a user who was not waiting before joins the round as soon as the power user has used its quantum
+		Assert.assertEquals(Arrays.asList("power", "power", "interactive"), select(policy, Arrays.asList("power", "interactive"), 3));
+	}
+
+	@Test
+	public void testNoCandidates()
+	{
+		IExperimentSchedulingPolicy policy = new DeficitRoundRobinSchedulingPolicy();
+		Assert.assertNull(policy.selectUser(new ArrayList<String>()));
+		Assert.assertEquals(1, policy.getUserWeight("unknown"));
+	}
+
+	private List<String> select(IExperimentSchedulingPolicy policy, List<String> candidates, int times)
+	{
+		List<String> selected = new ArrayList<String>();
+		for(int i = 0; i < times; i++)
+		{
+			selected.add(policy.selectUser(candidates));
+		}
+		return selected;
+	}
+}
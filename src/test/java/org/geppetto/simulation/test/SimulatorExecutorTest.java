@@ -0,0 +1,186 @@
+package org.geppetto.simulation.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.geppetto.core.data.model.IExperiment;
+import org.geppetto.core.simulation.ISimulatorCallbackListener;
+import org.geppetto.core.simulator.ISimulator;
+import org.geppetto.simulation.manager.SimulatorExecutor;
+import org.geppetto.simulation.manager.SimulatorRunThread;
+import org.junit.After;
+import org.junit.Test;
+
+public class SimulatorExecutorTest
+{
+
+	private static final long TIMEOUT = 5000;
+
+	private IExperiment experiment = ExperimentProxies.createExperiment(1, 1, false);
+
+	private AtomicInteger failures = new AtomicInteger(0);
+
+	private SimulatorExecutor executor;
+
+	@After
+	public void shutdown()
+	{
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testQueue() throws InterruptedException
+	{
+		executor = new SimulatorExecutor(1);
+		CountDownLatch gate = new CountDownLatch(1);
+		for(int i = 0; i < 3; i++)
+		{
+			executor.execute(createRun(gate, false));
+		}
+		waitFor(new Condition()
+		{
+			@Override
+			public boolean holds()
+			{
+				return executor.getActiveCount() == 1;
+			}
+		});
+		// the simulators submitted while the only thread is busy wait for it
+		assertEquals(2, executor.getQueueDepth());
+		Thread.sleep(100);
+		gate.countDown();
+		waitFor(new Condition()
+		{
+			@Override
+			public boolean holds()
+			{
+				return executor.getCompletedTaskCount() == 3;
+			}
+		});
+		assertEquals(0, executor.getQueueDepth());
+		assertEquals(0, executor.getFailedCount());
+		// two out of three waited at least 100 ms
+		assertTrue(executor.getAverageWaitTime() >= 60);
+	}
+
+	@Test
+	public void testFailures() throws InterruptedException
+	{
+		executor = new SimulatorExecutor(2);
+		CountDownLatch gate = new CountDownLatch(0);
+		executor.execute(createRun(gate, true));
+		executor.execute(createRun(gate, false));
+		waitFor(new Condition()
+		{
+			@Override
+			public boolean holds()
+			{
+				return executor.getCompletedTaskCount() == 2;
+			}
+		});
+		assertEquals(1, executor.getFailedCount());
+		// the experiment is told by the simulator run itself
+		assertEquals(1, failures.get());
+	}
+
+	@Test
+	public void testSetThreads() throws InterruptedException
+	{
+		executor = new SimulatorExecutor(1);
+		CountDownLatch gate = new CountDownLatch(1);
+		for(int i = 0; i < 3; i++)
+		{
+			executor.execute(createRun(gate, false));
+		}
+		executor.setThreads(3);
+		waitFor(new Condition()
+		{
+			@Override
+			public boolean holds()
+			{
+				// the new threads count as active before they took their first simulator
+				return executor.getActiveCount() == 3 && executor.getQueueDepth() == 0;
+			}
+		});
+		executor.setThreads(1);
+		assertEquals(1, executor.getMaximumPoolSize());
+		assertEquals(1, executor.getCorePoolSize());
+		gate.countDown();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidThreads()
+	{
+		executor = new SimulatorExecutor(1);
+		executor.setThreads(0);
+	}
+
+	/**
+	 * @param gate
+	 *            the simulator returns once the gate is open
+	 * @param fail
+	 * @return
+	 */
+	private SimulatorRunThread createRun(final CountDownLatch gate, final boolean fail)
+	{
+		ISimulator simulator = (ISimulator) Proxy.newProxyInstance(ISimulator.class.getClassLoader(), new Class<?>[] { ISimulator.class }, new InvocationHandler()
+		{
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws InterruptedException
+			{
+				switch(method.getName())
+				{
+					case "simulate":
+						gate.await();
+						if(fail)
+						{
+							throw new IllegalStateException("Simulation failed");
+						}
+						return null;
+					case "getName":
+						return "testSimulator";
+					default:
+						throw new UnsupportedOperationException(method.getName());
+				}
+			}
+		});
+		ISimulatorCallbackListener listener = (ISimulatorCallbackListener) Proxy.newProxyInstance(ISimulatorCallbackListener.class.getClassLoader(),
+				new Class<?>[] { ISimulatorCallbackListener.class }, new InvocationHandler()
+				{
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args)
+					{
+						if(method.getName().equals("externalProcessFailed"))
+						{
+							failures.incrementAndGet();
+							return null;
+						}
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+		return new SimulatorRunThread(experiment, simulator, listener);
+	}
+
+	private interface Condition
+	{
+		boolean holds();
+	}
+
+	private void waitFor(Condition condition) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while(!condition.holds())
+		{
+			assertTrue("Timed out waiting for the simulators", System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+	}
+
+}
@@ -0,0 +1,75 @@
+package org.geppetto.simulation.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.geppetto.simulation.SimulatorRuntimeStatus;
+import org.geppetto.simulation.manager.SimulatorRuntime;
+import org.junit.Test;
+
+public class SimulatorRuntimeTest
+{
+
+	@Test
+	public void testCreditAvailable() throws InterruptedException
+	{
+		SimulatorRuntime runtime = new SimulatorRuntime();
+		assertTrue(runtime.awaitCredit(20, 10, 0));
+		runtime.addProcessedSteps(5);
+		assertTrue(runtime.awaitCredit(5, 10, 0));
+	}
+
+	@Test
+	public void testPausedUntilConsumed() throws InterruptedException
+	{
+		final SimulatorRuntime runtime = new SimulatorRuntime();
+		runtime.addProcessedSteps(10);
+		assertFalse(runtime.awaitCredit(5, 10, 50));
+		assertTrue(runtime.getPausedTime() >= 50);
+
+		Thread consumer = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					Thread.sleep(50);
+				}
+				catch(InterruptedException e)
+				{
+					return;
+				}
+				runtime.addStepsConsumed(10);
+			}
+		};
+		consumer.start();
+		assertTrue(runtime.awaitCredit(5, 10, 10000));
+		assertEquals(0, runtime.getNonConsumedSteps());
+		consumer.join();
+	}
+
+	@Test
+	public void testOverdueAndStalled()
+	{
+		SimulatorRuntime runtime = new SimulatorRuntime();
+		long now = System.currentTimeMillis();
+		assertFalse(runtime.isOverdue(now + 1000, 10));
+
+		runtime.setStatus(SimulatorRuntimeStatus.STEPPING);
+		assertFalse(runtime.isOverdue(now + 1000, 0));
+		assertTrue(runtime.isOverdue(now + 1000, 10));
+		// without any report of progress a simulator is not known to be stalled
+		assertFalse(runtime.isStalled(now + 1000, 10));
+
+		runtime.heartbeat();
+		assertFalse(runtime.isStalled(System.currentTimeMillis(), 10));
+		assertTrue(runtime.isStalled(System.currentTimeMillis() + 1000, 10));
+
+		runtime.setStatus(SimulatorRuntimeStatus.DONE);
+		assertFalse(runtime.isOverdue(now + 1000, 10));
+		assertFalse(runtime.isStalled(System.currentTimeMillis() + 1000, 10));
+	}
+
+}
@@ -0,0 +1,80 @@
+package org.geppetto.simulation.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.geppetto.simulation.manager.SimulatorsDoneSignal;
+import org.junit.Test;
+
+public class SimulatorsDoneSignalTest
+{
+
+	@Test
+	public void testEverySimulatorCountedOnce() throws InterruptedException
+	{
+		SimulatorsDoneSignal signal = new SimulatorsDoneSignal(2);
+		CountDownLatch released = await(signal);
+		signal.simulatorDone("network.cell1");
+		// e.g. a simulator which reports the end of its steps and then fails
+		signal.simulatorDone("network.cell1");
+		assertEquals(1, signal.getPending());
+		assertFalse(released.await(100, TimeUnit.MILLISECONDS));
+		signal.simulatorDone("network.cell2");
+		assertTrue(released.await(5, TimeUnit.SECONDS));
+		assertEquals(0, signal.getPending());
+	}
+
+	@Test
+	public void testAbortReleasesTheRun() throws InterruptedException
+	{
+		SimulatorsDoneSignal signal = new SimulatorsDoneSignal(3);
+		CountDownLatch released = await(signal);
+		signal.simulatorDone("network.cell1");
+		signal.abort();
+		assertTrue(released.await(5, TimeUnit.SECONDS));
+		assertEquals(0, signal.getPending());
+		// the simulators still running might signal later
+		signal.simulatorDone("network.cell2");
+		assertEquals(0, signal.getPending());
+	}
+
+	@Test
+	public void testNoSimulators() throws InterruptedException
+	{
+		SimulatorsDoneSignal signal = new SimulatorsDoneSignal(0);
+		assertTrue(await(signal).await(5, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * @param signal
+	 * @return counted down once the run waiting on the signal is released
+	 */
+	private CountDownLatch await(final SimulatorsDoneSignal signal)
+	{
+		final CountDownLatch released = new CountDownLatch(1);
+		Thread run = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					signal.await();
+					released.countDown();
+				}
+				catch(InterruptedException e)
+				{
+					// the test fails waiting for the release
+				}
+			}
+		});
+		run.setDaemon(true);
+		run.start();
+		return released;
+	}
+
+}
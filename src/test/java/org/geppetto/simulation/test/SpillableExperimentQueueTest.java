@@ -0,0 +1,227 @@
+package org.geppetto.simulation.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.geppetto.core.data.model.IExperiment;
+import org.geppetto.simulation.scheduler.IExperimentResolver;
+import org.geppetto.simulation.scheduler.IProjectAdmission;
+import org.geppetto.simulation.scheduler.SpillableExperimentQueue;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SpillableExperimentQueueTest
+{
+
+	private Map<Long, IExperiment> experiments = new HashMap<Long, IExperiment>();
+
+	private File journal;
+
+	private SpillableExperimentQueue queue;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		journal = new File(Files.createTempDirectory("queue").toFile(), "test.journal");
+		queue = new SpillableExperimentQueue(2, journal, new IExperimentResolver()
+		{
+			@Override
+			public IExperiment resolve(long projectId, long experimentId)
+			{
+				return experiments.get(experimentId);
+			}
+		});
+		for(long i = 1; i <= 5; i++)
+		{
+			experiments.put(i, ExperimentProxies.createExperiment(1, i, false));
+		}
+	}
+
+	@Test
+	public void testSpillAndRefillInOrder()
+	{
+		for(long i = 1; i <= 5; i++)
+		{
+			queue.add(experiments.get(i));
+		}
+		Assert.assertEquals(5, queue.size());
+		Assert.assertEquals(3, queue.getSpilledCount());
+		Assert.assertTrue(journal.exists());
+		for(long i = 1; i <= 5; i++)
+		{
+			Assert.assertEquals(i, queue.poll().getId());
+		}
+		Assert.assertNull(queue.poll());
+		Assert.assertEquals(0, queue.size());
+		// the journal is truncated once drained
+		Assert.assertFalse(journal.exists());
+	}
+
+	@Test
+	public void testRemoveSpilledExperiment()
+	{
+		for(long i = 1; i <= 5; i++)
+		{
+			queue.add(experiments.get(i));
+		}
+		Assert.assertTrue(queue.contains(experiments.get(4L)));
+		Assert.assertTrue(queue.remove(experiments.get(4L)));
+		Assert.assertFalse(queue.contains(experiments.get(4L)));
+		Assert.assertEquals(4, queue.size());
+		Assert.assertEquals(1, queue.poll().getId());
+		Assert.assertEquals(2, queue.poll().getId());
+		Assert.assertEquals(3, queue.poll().getId());
+		Assert.assertEquals(5, queue.poll().getId());
+		Assert.assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	public void testCancelSpilledExperiment() throws IOException
+	{
+		// like the data managers, the resolver returns new instances every time
+		queue = new SpillableExperimentQueue(2, new File(Files.createTempDirectory("queue").toFile(), "test.journal"), new IExperimentResolver()
+		{
+			@Override
+			public IExperiment resolve(long projectId, long experimentId)
+			{
+				return ExperimentProxies.createExperiment(projectId, experimentId, false);
+			}
+		});
+		for(long i = 1; i <= 5; i++)
+		{
+			queue.add(experiments.get(i));
+		}
+		// cancelled through the instance which was queued, while it is in the journal
+		Assert.assertTrue(queue.remove(experiments.get(4L)));
+		Assert.assertFalse(queue.contains(experiments.get(4L)));
+		Assert.assertEquals(1, queue.poll().getId());
+		Assert.assertEquals(2, queue.poll().getId());
+		// experiment 3 was read back from the journal as a new instance
+		Assert.assertNotSame(experiments.get(3L), queue.peek());
+		Assert.assertTrue(queue.contains(experiments.get(3L)));
+		Assert.assertNotNull(queue.getQueuedSince(experiments.get(3L)));
+		Assert.assertTrue(queue.remove(experiments.get(3L)));
+		Assert.assertFalse(queue.contains(experiments.get(3L)));
+		Assert.assertEquals(5, queue.poll().getId());
+		Assert.assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	public void testBlockedProjectDoesNotHoldBackSpilledExperiments() throws IOException
+	{
+		queue = new SpillableExperimentQueue(2, new File(Files.createTempDirectory("queue").toFile(), "test.journal"), new IExperimentResolver()
+		{
+			@Override
+			public IExperiment resolve(long projectId, long experimentId)
+			{
+				return experiments.get(experimentId);
+			}
+		}, new IProjectAdmission()
+		{
+			@Override
+			public boolean canStart(long projectId)
+			{
+				// project 1 is running as many experiments as it can
+				return projectId != 1;
+			}
+		});
+		experiments.put(6L, ExperimentProxies.createExperiment(2, 6, false));
+		for(long i = 1; i <= 3; i++)
+		{
+			queue.add(experiments.get(i));
+		}
+		queue.add(experiments.get(6L));
+		Assert.assertEquals(2, queue.getSpilledCount());
+		List<Long> visited = new ArrayList<Long>();
+		for(IExperiment experiment : queue)
+		{
+			visited.add(experiment.getId());
+		}
+		Assert.assertEquals(Arrays.asList(1L, 2L, 6L), visited);
+		Assert.assertEquals(1, queue.getSpilledCount());
+		Assert.assertTrue(queue.remove(experiments.get(6L)));
+		// the others keep their order
+		Assert.assertEquals(1, queue.poll().getId());
+		Assert.assertEquals(2, queue.poll().getId());
+		Assert.assertEquals(3, queue.poll().getId());
+		Assert.assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	public void testExperimentQueuedTwice()
+	{
+		for(long i = 1; i <= 3; i++)
+		{
+			queue.add(experiments.get(i));
+		}
+		queue.add(experiments.get(3L));
+		Assert.assertEquals(2, queue.getSpilledCount());
+		// the first entry goes, the second one stays
+		Assert.assertTrue(queue.remove(experiments.get(3L)));
+		Assert.assertTrue(queue.contains(experiments.get(3L)));
+		Assert.assertEquals(1, queue.getSpilledCount());
+		Assert.assertEquals(1, queue.poll().getId());
+		Assert.assertEquals(2, queue.poll().getId());
+		Assert.assertEquals(3, queue.poll().getId());
+		Assert.assertTrue(queue.isEmpty());
+		Assert.assertFalse(journal.exists());
+	}
+
+	@Test
+	public void testSpilledExperimentsFoundWithoutReadingTheJournal()
+	{
+		for(long i = 1; i <= 5; i++)
+		{
+			queue.add(experiments.get(i));
+		}
+		// the journal is moved away, the queue can only use its index
+		File moved = new File(journal.getParentFile(), "moved.journal");
+		Assert.assertTrue(journal.renameTo(moved));
+		Assert.assertTrue(queue.contains(experiments.get(5L)));
+		Assert.assertTrue(queue.remove(experiments.get(5L)));
+		Assert.assertFalse(queue.contains(experiments.get(5L)));
+		Assert.assertEquals(2, queue.getSpilledCount());
+		Assert.assertTrue(moved.renameTo(journal));
+		for(long i = 1; i <= 4; i++)
+		{
+			Assert.assertEquals(i, queue.poll().getId());
+		}
+		Assert.assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	public void testIteratorVisitsTheMemoryWindow()
+	{
+		for(long i = 1; i <= 5; i++)
+		{
+			queue.add(experiments.get(i));
+		}
+		int visited = 0;
+		Iterator<IExperiment> it = queue.iterator();
+		while(it.hasNext())
+		{
+			it.next();
+			visited++;
+		}
+		Assert.assertEquals(2, visited);
+		Assert.assertNotNull(queue.getQueuedSince(experiments.get(1L)));
+	}
+
+	@Test
+	public void testVolatileExperimentsStayInMemory()
+	{
+		queue.add(experiments.get(1L));
+		queue.add(experiments.get(2L));
+		queue.add(ExperimentProxies.createExperiment(2, 6, true));
+		Assert.assertEquals(3, queue.size());
+		Assert.assertEquals(0, queue.getSpilledCount());
+	}
+}
@@ -0,0 +1,49 @@
+package org.geppetto.simulation.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.geppetto.simulation.StepBatch;
+import org.geppetto.simulation.manager.StepBuffer;
+import org.junit.Test;
+
+public class StepBufferTest
+{
+
+	@Test
+	public void testDrainInOrder()
+	{
+		StepBuffer buffer = new StepBuffer(10);
+		buffer.offer(batch(0, 3));
+		buffer.offer(batch(3, 3));
+		assertEquals(6, buffer.getBufferedSteps());
+		List<StepBatch> batches = buffer.drain();
+		assertEquals(2, batches.size());
+		assertEquals(0, batches.get(0).getFirstStep());
+		assertEquals(3, batches.get(1).getFirstStep());
+		assertEquals(0, buffer.getBufferedSteps());
+		assertEquals(0, buffer.drain().size());
+	}
+
+	@Test
+	public void testOldestStepsDroppedWhenFull()
+	{
+		StepBuffer buffer = new StepBuffer(5);
+		buffer.offer(batch(0, 3));
+		buffer.offer(batch(3, 3));
+		buffer.offer(batch(6, 2));
+		assertEquals(5, buffer.getBufferedSteps());
+		assertEquals(3, buffer.getDroppedSteps());
+		List<StepBatch> batches = buffer.drain();
+		assertEquals(3, batches.get(0).getFirstStep());
+		assertEquals(6, batches.get(1).getFirstStep());
+	}
+
+	private StepBatch batch(int firstStep, int steps)
+	{
+		return new StepBatch("network.neuron", firstStep, Collections.singletonMap("network.neuron.v", new double[steps]));
+	}
+
+}
@@ -7,6 +7,8 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.geppetto.core.common.GeppettoExecutionException;
 import org.geppetto.core.common.GeppettoInitializationException;
@@ -29,6 +31,38 @@ import org.junit.Assert;
 public class TestSimulatorService extends ASimulator
 {
 
+	// the tests which need a simulator that does not stop when it is cancelled close the gate
+	private static volatile CountDownLatch initializationGate = new CountDownLatch(0);
+
+	private static volatile CountDownLatch initializing = new CountDownLatch(1);
+
+	/**
+	 * The simulators initialized from now on wait, ignoring interruptions, until releaseInitialization is called
+	 */
+	public static void holdInitialization()
+	{
+		initializing = new CountDownLatch(1);
+		initializationGate = new CountDownLatch(1);
+	}
+
+	/**
+	 * 
+	 */
+	public static void releaseInitialization()
+	{
+		initializationGate.countDown();
+	}
+
+	/**
+	 * @param timeout
+	 * @return true if a simulator started its initialization within the timeout
+	 * @throws InterruptedException
+	 */
+	public static boolean awaitInitialization(long timeout) throws InterruptedException
+	{
+		return initializing.await(timeout, TimeUnit.MILLISECONDS);
+	}
+
 	@Override
 	public void initialize(DomainModel model, IAspectConfiguration aspectConfiguration, ExperimentState experimentState, ISimulatorCallbackListener listener, GeppettoModelAccess modelAccess) throws GeppettoInitializationException,
 			GeppettoExecutionException
@@ -38,6 +72,24 @@ public class TestSimulatorService extends ASimulator
 		Assert.assertNotNull(experimentState);
 		Assert.assertNotNull(listener);
 		Assert.assertNotNull(modelAccess);
+		initializing.countDown();
+		boolean interrupted = false;
+		while(true)
+		{
+			try
+			{
+				initializationGate.await();
+				break;
+			}
+			catch(InterruptedException e)
+			{
+				interrupted = true;
+			}
+		}
+		if(interrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
 	}
 
 	/*